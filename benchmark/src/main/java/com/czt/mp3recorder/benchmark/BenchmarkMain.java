@@ -0,0 +1,114 @@
+package com.czt.mp3recorder.benchmark;
+
+import com.czt.mp3recorder.RecorderConfig;
+import com.czt.mp3recorder.util.LameLibrary;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks with the GC profiler and prints, next to JMH's own report,
+ * the numbers encoder changes are judged by: ns per mp3 frame, realtime factor,
+ * bytes allocated per second and, where the benchmark counts its output, the mp3 bit rate.
+ * <p>
+ * Takes the usual JMH command line, e.g. {@code JniCallBenchmark -p chunkSize=4608}.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+        String library = System.getProperty(LameLibrary.PATH_PROPERTY);
+        if (library != null) {
+            // 基准测试在子进程中运行,传递主机库的路径
+            options.jvmArgsAppend("-D" + LameLibrary.PATH_PROPERTY + "=" + library);
+        }
+        Collection<RunResult> results = new Runner(options.build()).run();
+        printSummary(results);
+    }
+
+    private static void printSummary(Collection<RunResult> results) {
+        System.out.println();
+        System.out.println(String.format("%-70s %14s %14s %12s %14s %10s",
+                "Benchmark", "ns/op", "ns/frame", "realtime", "alloc B/s", "out kbps"));
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            Result<?> primary = result.getPrimaryResult();
+            double nsPerOp = primary.getScore() * nanosPer(params.getTimeUnit());
+            double[] audio = audioPerOp(params);
+            double framesPerOp = audio[0];
+            double secondsPerOp = audio[1];
+            Double allocPerOp = allocatedBytesPerOp(result);
+            Double mp3BytesPerOp = counterRatio(result, "mp3Bytes", "clips");
+            System.out.println(String.format("%-70s %14.0f %14s %12s %14s %10s",
+                    name(params), nsPerOp,
+                    framesPerOp > 0 ? String.format("%.0f", nsPerOp / framesPerOp) : "-",
+                    secondsPerOp > 0 ? String.format("%.1fx", secondsPerOp * 1e9 / nsPerOp) : "-",
+                    allocPerOp != null ? String.format("%.0f", allocPerOp * 1e9 / nsPerOp) : "-",
+                    mp3BytesPerOp != null && secondsPerOp > 0
+                            ? String.format("%.1f", mp3BytesPerOp * 8 / secondsPerOp / 1000) : "-"));
+        }
+    }
+
+    private static double nanosPer(TimeUnit unit) {
+        return unit.toNanos(1);
+    }
+
+    /**
+     * @return mp3 frames and seconds of audio encoded by one operation, zeros if it encodes none
+     */
+    private static double[] audioPerOp(BenchmarkParams params) {
+        String chunkSize = params.getParam("chunkSize");
+        if (chunkSize != null && !params.getBenchmark().contains("Handoff")) {
+            int samples = Integer.parseInt(chunkSize);
+            return new double[]{(double) samples / PcmFixtures.FRAME_SIZE, (double) samples / PcmFixtures.SAMPLE_RATE};
+        }
+        String seconds = params.getParam("seconds");
+        String preset = params.getParam("preset");
+        if (seconds != null && preset != null) {
+            int sampleRate = RecorderConfig.preset(preset).getSampleRate();
+            int frameSize = sampleRate >= 32000 ? 1152 : 576;
+            double duration = Integer.parseInt(seconds);
+            return new double[]{duration * sampleRate / frameSize, duration};
+        }
+        return new double[]{0, 0};
+    }
+
+    private static Double allocatedBytesPerOp(RunResult result) {
+        for (String label : result.getSecondaryResults().keySet()) {
+            if (label.endsWith("gc.alloc.rate.norm")) {
+                return result.getSecondaryResults().get(label).getScore();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return ratio of two {@code @AuxCounters} results, null if the benchmark has none
+     */
+    private static Double counterRatio(RunResult result, String numerator, String denominator) {
+        Result<?> top = result.getSecondaryResults().get(numerator);
+        Result<?> bottom = result.getSecondaryResults().get(denominator);
+        if (top == null || bottom == null || bottom.getScore() == 0) {
+            return null;
+        }
+        return top.getScore() / bottom.getScore();
+    }
+
+    private static String name(BenchmarkParams params) {
+        StringBuilder name = new StringBuilder(params.getBenchmark().replace("com.czt.mp3recorder.benchmark.", ""));
+        for (String key : params.getParamsKeys()) {
+            name.append(' ').append(key).append('=').append(params.getParam(key));
+        }
+        return name.toString();
+    }
+}
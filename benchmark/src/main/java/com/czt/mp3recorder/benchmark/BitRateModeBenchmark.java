@@ -0,0 +1,106 @@
+package com.czt.mp3recorder.benchmark;
+
+import com.czt.mp3recorder.RecorderConfig;
+import com.czt.mp3recorder.util.Mp3Encoder;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode CPU and output size of CBR, ABR and VBR on the speech fixture: one operation
+ * encodes {@link #seconds} of speech with pauses, the mp3 bytes are counted alongside
+ * so {@link BenchmarkMain} can report the resulting bit rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BitRateModeBenchmark {
+    /**
+     * 100ms per encode call, as a recording would deliver it
+     */
+    private static final int CHUNK_SAMPLES = 1600;
+
+    /**
+     * cbrN, abrN (mean N kbps) or vN (VBR quality N)
+     */
+    @Param({"cbr32", "abr24", "v5", "v7", "v9"})
+    public String mode;
+
+    @Param({"speech"})
+    public String preset;
+
+    @Param({"10"})
+    public int seconds;
+
+    private Mp3Encoder mEncoder;
+    private short[] mSignal;
+    private short[] mChunk;
+    private byte[] mMp3;
+
+    /**
+     * Counted per iteration; mp3Bytes / clips is the size of one encoded clip.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Output {
+        public long mp3Bytes;
+        public long clips;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            mp3Bytes = 0;
+            clips = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RecorderConfig config = RecorderConfig.preset(preset);
+        Mp3Encoder.Builder builder = config.newEncoderBuilder(config.getSampleRate(), 1);
+        int value = Integer.parseInt(mode.replaceAll("[a-z]", ""));
+        if (mode.startsWith("cbr")) {
+            builder.setVbrMode(Mp3Encoder.VBR_OFF).setBitRate(value);
+        } else if (mode.startsWith("abr")) {
+            builder.setVbrMode(Mp3Encoder.VBR_ABR).setBitRate(value);
+        } else {
+            builder.setVbrMode(Mp3Encoder.VBR_MTRH).setVbrQuality(value);
+        }
+        mEncoder = builder.build();
+        mSignal = PcmFixtures.speech(config.getSampleRate() * seconds, config.getSampleRate());
+        mChunk = new short[CHUNK_SAMPLES];
+        mMp3 = PcmFixtures.mp3Buffer(CHUNK_SAMPLES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mEncoder.close();
+    }
+
+    @Benchmark
+    public void encode(Output output) {
+        long bytes = 0;
+        for (int position = 0; position + CHUNK_SAMPLES <= mSignal.length; position += CHUNK_SAMPLES) {
+            System.arraycopy(mSignal, position, mChunk, 0, CHUNK_SAMPLES);
+            bytes += mEncoder.encodeMono(mChunk, CHUNK_SAMPLES, mMp3);
+        }
+        output.mp3Bytes += bytes;
+        output.clips++;
+    }
+}
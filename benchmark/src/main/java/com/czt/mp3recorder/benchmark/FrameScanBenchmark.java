@@ -0,0 +1,98 @@
+package com.czt.mp3recorder.benchmark;
+
+import com.czt.mp3recorder.RecorderConfig;
+import com.czt.mp3recorder.util.Mp3Encoder;
+import com.czt.mp3recorder.util.Mp3FrameScanner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scan time of {@link Mp3FrameScanner} over a long VBR recording: {@link #hours} of the
+ * speech fixture encoded with the speech-vbr preset, repeated, with the file in the page
+ * cache. This is the cost of showing a duration or building a seek index for an existing file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameScanBenchmark {
+    private static final int CLIP_SECONDS = 10;
+
+    @Param({"1", "5"})
+    public int hours;
+
+    /**
+     * walk: every frame with offsets, count: every frame without offsets, tag: Xing tag only
+     */
+    @Param({"walk", "count", "tag"})
+    public String mode;
+
+    private File mFile;
+    private RandomAccessFile mIn;
+    private Mp3FrameScanner mScanner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        RecorderConfig config = RecorderConfig.SPEECH_VBR;
+        Mp3Encoder encoder = config.newEncoderBuilder(config.getSampleRate(), 1)
+                .setDisableReservoir(true).setWriteLameTag(true).build();
+        short[] pcm = PcmFixtures.speech(config.getSampleRate() * CLIP_SECONDS, config.getSampleRate());
+        byte[] mp3 = PcmFixtures.mp3Buffer(pcm.length);
+        ByteArrayOutputStream clip = new ByteArrayOutputStream();
+        clip.write(mp3, 0, encoder.encodeMono(pcm, pcm.length, mp3));
+        clip.write(mp3, 0, encoder.flush(mp3));
+        int tag = encoder.getLameTagFrame(mp3);
+        encoder.close();
+        byte[] frames = clip.toByteArray();
+
+        // 标签帧之后的音频帧重复到指定时长;没有比特储备,帧之间互不依赖
+        mFile = File.createTempFile("scan", ".mp3");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(mp3, 0, tag);
+            for (int i = 0; i < hours * 3600 / CLIP_SECONDS; i++) {
+                out.write(frames, tag, frames.length - tag);
+            }
+        } finally {
+            out.close();
+        }
+        mIn = new RandomAccessFile(mFile, "r");
+        mScanner = new Mp3FrameScanner()
+                .setCollectOffsets("walk".equals(mode))
+                .setTrustInfoTag("tag".equals(mode));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mIn.close();
+        mFile.delete();
+    }
+
+    @Benchmark
+    public long scan() throws IOException {
+        FileChannel channel = mIn.getChannel();
+        return mScanner.scan(channel).getFrameCount();
+    }
+}
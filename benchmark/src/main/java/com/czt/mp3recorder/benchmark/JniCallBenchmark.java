@@ -0,0 +1,75 @@
+package com.czt.mp3recorder.benchmark;
+
+import com.czt.mp3recorder.util.Mp3Encoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ways of handing one mono chunk to LAME: the same array as both channels
+ * (what the recorder originally did), a single pinned array, and direct buffers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JniCallBenchmark {
+    @Param({"1152", "4608", "16384"})
+    public int chunkSize;
+
+    @Param({"7"})
+    public int quality;
+
+    private Mp3Encoder mEncoder;
+    private short[] mPcm;
+    private byte[] mMp3;
+    private ByteBuffer mDirectPcm;
+    private ByteBuffer mDirectMp3;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mEncoder = new Mp3Encoder(PcmFixtures.SAMPLE_RATE, 1, PcmFixtures.SAMPLE_RATE, 32, quality);
+        mPcm = PcmFixtures.toneOverNoise(chunkSize, 1);
+        mMp3 = PcmFixtures.mp3Buffer(chunkSize);
+        mDirectPcm = ByteBuffer.allocateDirect(chunkSize * 2).order(ByteOrder.nativeOrder());
+        mDirectPcm.asShortBuffer().put(mPcm);
+        mDirectMp3 = ByteBuffer.allocateDirect(mMp3.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mEncoder.close();
+    }
+
+    @Benchmark
+    public int arrayBothChannels() {
+        return mEncoder.encode(mPcm, mPcm, chunkSize, mMp3);
+    }
+
+    @Benchmark
+    public int arrayMono() {
+        return mEncoder.encodeMono(mPcm, chunkSize, mMp3);
+    }
+
+    @Benchmark
+    public int directBuffer() {
+        return mEncoder.encodeDirect(mDirectPcm, chunkSize, mDirectMp3);
+    }
+}
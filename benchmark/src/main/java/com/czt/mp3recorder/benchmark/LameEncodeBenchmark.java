@@ -0,0 +1,80 @@
+package com.czt.mp3recorder.benchmark;
+
+import com.czt.mp3recorder.util.LameUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LameUtil#encode} of one mono chunk, across LAME quality, bit rate and chunk size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LameEncodeBenchmark {
+    /**
+     * 10秒的输入循环使用
+     */
+    private static final int SIGNAL_FRAMES = PcmFixtures.SAMPLE_RATE * 10;
+
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"})
+    public int quality;
+
+    @Param({"32", "128", "320"})
+    public int bitRate;
+
+    /**
+     * samples per channel passed to one encode call
+     */
+    @Param({"1152", "4608", "16384"})
+    public int chunkSize;
+
+    private short[] mSignal;
+    private short[] mChunk;
+    private byte[] mMp3;
+    private int mPosition;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LameUtil.init(PcmFixtures.SAMPLE_RATE, 1, PcmFixtures.SAMPLE_RATE, bitRate, quality);
+        mSignal = PcmFixtures.toneOverNoise(SIGNAL_FRAMES, 1);
+        mChunk = new short[chunkSize];
+        mMp3 = PcmFixtures.mp3Buffer(chunkSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        LameUtil.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void nextChunk() {
+        // 拷贝不计入测量,编码的始终是新数据
+        if (mPosition + chunkSize > mSignal.length) {
+            mPosition = 0;
+        }
+        System.arraycopy(mSignal, mPosition, mChunk, 0, chunkSize);
+        mPosition += chunkSize;
+    }
+
+    @Benchmark
+    public int encode() {
+        return LameUtil.encode(mChunk, mChunk, chunkSize, mMp3);
+    }
+}
@@ -0,0 +1,74 @@
+package com.czt.mp3recorder.benchmark;
+
+import java.util.Random;
+
+/**
+ * Test signals for the benchmarks: a tone over noise, so that LAME's psychoacoustic
+ * model and quantization do realistic work instead of encoding silence.
+ */
+final class PcmFixtures {
+    static final int SAMPLE_RATE = 44100;
+    static final int FRAME_SIZE = 1152;
+
+    private PcmFixtures() {
+    }
+
+    /**
+     * @param frames   samples per channel
+     * @param channels 1, or 2 for interleaved stereo
+     */
+    static short[] toneOverNoise(int frames, int channels) {
+        Random random = new Random(42);
+        short[] pcm = new short[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            // 扫频音加噪声,避免每块数据完全相同
+            double t = (double) i / SAMPLE_RATE;
+            double tone = Math.sin(2 * Math.PI * (220 + 80 * Math.sin(2 * Math.PI * 0.5 * t)) * t);
+            for (int c = 0; c < channels; c++) {
+                pcm[i * channels + c] = (short) (8000 * tone + 1500 * random.nextGaussian());
+            }
+        }
+        return pcm;
+    }
+
+    /**
+     * Speech-like mono signal: voiced syllables (a gliding pitch with two formants) about
+     * four per second, in phrases of two seconds separated by one second of quiet room noise.
+     *
+     * @param frames     samples
+     * @param sampleRate sample rate in Hz
+     */
+    static short[] speech(int frames, int sampleRate) {
+        Random random = new Random(42);
+        short[] pcm = new short[frames];
+        double phase = 0;
+        for (int i = 0; i < frames; i++) {
+            double t = (double) i / sampleRate;
+            double inPhrase = t % 3.0;
+            double sample = 30 * random.nextGaussian();// 停顿处只有底噪
+            if (inPhrase < 2.0) {
+                int syllable = (int) (t * 4);
+                double envelope = Math.pow(Math.sin(Math.PI * (t * 4 - syllable)), 2);
+                double f0 = 120 + 30 * Math.sin(2 * Math.PI * 0.7 * t);
+                phase += 2 * Math.PI * f0 / sampleRate;
+                // 每个音节换一组共振峰,近似不同的元音
+                double formant1 = 500 + 300 * ((syllable * 7) % 5) / 4.0;
+                double formant2 = 1200 + 900 * ((syllable * 3) % 4) / 3.0;
+                double voiced = 0;
+                for (int k = 1; k * f0 < sampleRate / 2 && k <= 30; k++) {
+                    double f = k * f0;
+                    double gain = Math.exp(-Math.pow((f - formant1) / 200, 2))
+                            + 0.5 * Math.exp(-Math.pow((f - formant2) / 300, 2)) + 0.02;
+                    voiced += gain / k * Math.sin(k * phase);
+                }
+                sample += envelope * (6000 * voiced + 300 * random.nextGaussian());
+            }
+            pcm[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+        }
+        return pcm;
+    }
+
+    static byte[] mp3Buffer(int samplesPerChannel) {
+        return new byte[(int) (7200 + samplesPerChannel * 1.25)];
+    }
+}
@@ -0,0 +1,73 @@
+package com.czt.mp3recorder.benchmark;
+
+import com.czt.mp3recorder.MP3Recorder;
+import com.czt.mp3recorder.RecorderConfig;
+import com.czt.mp3recorder.SyntheticPcmSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole recording: synthetic source, capture thread, queue, encoder thread and file,
+ * run as fast as the encoder allows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    @Param({"speech-low-cpu", "speech-vbr", "default", "music-hq"})
+    public String preset;
+
+    @Param({"false", "true"})
+    public boolean directBuffers;
+
+    /**
+     * seconds of audio recorded per operation
+     */
+    @Param({"10"})
+    public int seconds;
+
+    private RecorderConfig mConfig;
+    private File mFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mConfig = RecorderConfig.preset(preset).buildUpon().setDirectBuffers(directBuffers).build();
+        mFile = File.createTempFile("pipeline", ".mp3");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (!mFile.delete()) {
+            mFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public long record() throws IOException, InterruptedException {
+        SyntheticPcmSource source = new SyntheticPcmSource(mConfig.getSampleRate(), mConfig.getChannelCount(),
+                440, 0.3, 0.05, (long) mConfig.getSampleRate() * seconds, false);
+        MP3Recorder recorder = new MP3Recorder(mFile, source, mConfig);
+        recorder.startRecording();
+        recorder.waitForCompletion();
+        return mFile.length();
+    }
+}
@@ -0,0 +1,116 @@
+package com.czt.mp3recorder.benchmark;
+
+import com.czt.mp3recorder.PcmChunk;
+import com.czt.mp3recorder.PcmChunkPool;
+import com.czt.mp3recorder.SpscQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The capture thread to encoder thread handoff of DataEncodeThread, without the
+ * encoding: the capture side takes a pooled chunk and queues it, the encoder side
+ * polls it and gives it back to the pool. An ArrayBlockingQueue of the same
+ * capacity is the baseline.
+ * <p>
+ * A side that finds the queue full or empty returns at once, so the scores are
+ * the cost per attempt on each side.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueHandoffBenchmark {
+    private static final int CAPACITY = 32;
+    private static final int CHUNK_SIZE = 2048;
+
+    @State(Scope.Group)
+    public static class Spsc {
+        SpscQueue<PcmChunk> queue;
+        PcmChunkPool pool;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            queue = new SpscQueue<>(CAPACITY);
+            pool = new PcmChunkPool(CAPACITY, CHUNK_SIZE);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Blocking {
+        ArrayBlockingQueue<PcmChunk> queue;
+        ArrayBlockingQueue<PcmChunk> free;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            queue = new ArrayBlockingQueue<>(CAPACITY);
+            free = new ArrayBlockingQueue<>(CAPACITY);
+            PcmChunkPool pool = new PcmChunkPool(CAPACITY, CHUNK_SIZE);
+            for (int i = 0; i < CAPACITY; i++) {
+                free.offer(pool.obtain());
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public boolean spscCapture(Spsc state) {
+        if (state.queue.size() >= CAPACITY) {
+            return false;
+        }
+        PcmChunk chunk = state.pool.obtain();
+        chunk.setReadSize(CHUNK_SIZE);
+        return state.queue.offer(chunk);
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public boolean spscEncode(Spsc state) {
+        PcmChunk chunk = state.queue.poll();
+        if (chunk == null) {
+            return false;
+        }
+        state.pool.recycle(chunk);
+        return true;
+    }
+
+    @Benchmark
+    @Group("blocking")
+    @GroupThreads(1)
+    public boolean blockingCapture(Blocking state) {
+        PcmChunk chunk = state.free.poll();
+        if (chunk == null) {
+            return false;
+        }
+        chunk.setReadSize(CHUNK_SIZE);
+        return state.queue.offer(chunk);
+    }
+
+    @Benchmark
+    @Group("blocking")
+    @GroupThreads(1)
+    public boolean blockingEncode(Blocking state) {
+        PcmChunk chunk = state.queue.poll();
+        if (chunk == null) {
+            return false;
+        }
+        return state.free.offer(chunk);
+    }
+}
@@ -0,0 +1,98 @@
+package com.czt.mp3recorder.benchmark;
+
+import com.czt.mp3recorder.BatchTranscoder;
+import com.czt.mp3recorder.RecorderConfig;
+import com.czt.mp3recorder.SegmentParallelTranscoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time of {@link SegmentParallelTranscoder} for one file of {@link #seconds} of audio,
+ * cut into {@link #segmentCount} segments and encoded on one thread per processor.
+ * segmentCount=1 is the serial encode the others are compared with; every further segment
+ * also encodes {@link #overlapFrames} frames that are thrown away.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SegmentParallelBenchmark {
+    @Param({"1", "2", "4", "8"})
+    public int segmentCount;
+
+    @Param({"64"})
+    public int overlapFrames;
+
+    @Param({"speech", "music-hq"})
+    public String preset;
+
+    @Param({"120"})
+    public int seconds;
+
+    private SegmentParallelTranscoder mTranscoder;
+    private BatchTranscoder.Job mJob;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        RecorderConfig config = RecorderConfig.preset(preset);
+        int sampleRate = config.getSampleRate();
+        int channels = config.getChannelCount();
+        short[] pcm = channels == 1 ? PcmFixtures.speech(sampleRate * seconds, sampleRate)
+                : PcmFixtures.toneOverNoise(sampleRate * seconds, channels);
+        File input = File.createTempFile("segment-benchmark", ".pcm");
+        input.deleteOnExit();
+        ByteBuffer bytes = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(pcm);
+        FileOutputStream out = new FileOutputStream(input);
+        try {
+            out.write(bytes.array());
+        } finally {
+            out.close();
+        }
+        File output = File.createTempFile("segment-benchmark", ".mp3");
+        output.deleteOnExit();
+        mJob = BatchTranscoder.Job.raw(input, output, sampleRate, channels);
+
+        int frameSize = sampleRate >= 32000 ? 1152 : 576;
+        int mp3Frames = (sampleRate * seconds + frameSize - 1) / frameSize;
+        mTranscoder = new SegmentParallelTranscoder(config);
+        mTranscoder.setSegmentFrames((mp3Frames + segmentCount - 1) / segmentCount);
+        mTranscoder.setOverlapFrames(overlapFrames);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mJob.getInput().delete();
+        mJob.getOutput().delete();
+    }
+
+    @Benchmark
+    public long transcode() throws InterruptedException {
+        BatchTranscoder.Result result = mTranscoder.transcode(mJob, null);
+        if (!result.isSuccessful()) {
+            throw new IllegalStateException(result.toString());
+        }
+        return result.getBytesWritten();
+    }
+}
@@ -0,0 +1,287 @@
+package com.czt.mp3recorder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs another sink on its own thread behind a bounded buffer, so a slow output (a
+ * network stream, a stalled disk) can never hold up the encoder.
+ * <p>
+ * {@link #write(ByteBuffer)} copies the frames into pooled blocks and returns at once;
+ * writes that arrive while the sink is busy are coalesced into one block. When every block
+ * is taken the {@link OverflowPolicy} decides what is given up. Dropping always happens in
+ * whole writes, so the sink still only sees whole frames. Like {@link Mp3FileWriter} this
+ * is a single producer stage: write and close from one thread.
+ */
+public class AsyncSink implements EncodedSink {
+    /**
+     * What to do when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * drop the frames that do not fit and keep what is buffered, a gap in the output
+         */
+        DROP_NEWEST,
+        /**
+         * drop everything buffered as well, so the sink catches up with live audio
+         */
+        DROP_BACKLOG,
+        /**
+         * close the sink and stop feeding it
+         */
+        DISCONNECT
+    }
+
+    public static final int DEFAULT_BLOCK_SIZE = 16 * 1024;
+    public static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 5000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final EncodedSink mSink;
+    private final OverflowPolicy mPolicy;
+    private final long mCloseTimeoutMillis;
+    private final Thread mThread;
+    /**
+     * 编码线程与写线程之间传递的块
+     */
+    private final BlockHandoff mBlocks;
+    // producer side
+    private ByteBuffer mCurrent;
+    private boolean mStarted;
+    private volatile long mDroppedBytes;
+    private volatile int mOverflowCount;
+    // shared
+    private volatile boolean mClosing;
+    private volatile boolean mSkipBacklog;
+    private volatile boolean mDisconnected;
+    private volatile IOException mError;
+    // written by the sink thread only
+    private volatile long mWrittenBytes;
+    private volatile long mDiscardedBytes;
+
+    /**
+     * @param sink        the slow sink, closed with this one
+     * @param bufferBytes most bytes buffered for it, rounded up to whole blocks
+     * @param policy      what to give up when the buffer is full
+     */
+    public AsyncSink(EncodedSink sink, int bufferBytes, OverflowPolicy policy) {
+        this(sink, bufferBytes, policy, DEFAULT_CLOSE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param sink               the slow sink, closed with this one
+     * @param bufferBytes        most bytes buffered for it, rounded up to whole blocks
+     * @param policy             what to give up when the buffer is full
+     * @param closeTimeoutMillis longest {@link #close()} waits for the buffer to drain before
+     *                           interrupting the sink
+     */
+    public AsyncSink(EncodedSink sink, int bufferBytes, OverflowPolicy policy, long closeTimeoutMillis) {
+        if (sink == null || policy == null) {
+            throw new IllegalArgumentException("sink and policy must not be null");
+        }
+        if (bufferBytes <= 0 || closeTimeoutMillis < 0) {
+            throw new IllegalArgumentException("bufferBytes must be positive, closeTimeoutMillis not negative");
+        }
+        mSink = sink;
+        mPolicy = policy;
+        mCloseTimeoutMillis = closeTimeoutMillis;
+        mThread = new Thread("AsyncSink") {
+            @Override
+            public void run() {
+                drain();
+            }
+        };
+        // 关闭超时后仍卡住的sink不应阻止进程退出
+        mThread.setDaemon(true);
+        int blockCount = Math.max(2, (bufferBytes + DEFAULT_BLOCK_SIZE - 1) / DEFAULT_BLOCK_SIZE);
+        mBlocks = new BlockHandoff(blockCount, false, mThread);
+    }
+
+    /**
+     * Copy the frames for the sink. Never blocks and never throws; a failure of the sink
+     * shows in {@link #getError()} and {@link #close()}.
+     */
+    @Override
+    public void write(ByteBuffer frames) {
+        int length = frames.remaining();
+        if (mDisconnected || mClosing) {
+            drop(frames);
+            return;
+        }
+        if (!mStarted) {
+            mStarted = true;
+            mThread.start();
+        }
+        if (mCurrent != null && mCurrent.remaining() < length) {
+            submit();
+        }
+        if (mCurrent == null) {
+            mCurrent = mBlocks.obtain(Math.max(DEFAULT_BLOCK_SIZE, length));
+            if (mCurrent == null) {
+                overflow(frames);
+                return;
+            }
+        }
+        mCurrent.put(frames);
+        // 写线程空闲时立即交出,忙时继续合并到当前块
+        if (mBlocks.isEmpty()) {
+            submit();
+        }
+    }
+
+    private void overflow(ByteBuffer frames) {
+        mOverflowCount = mOverflowCount + 1;
+        drop(frames);
+        if (mPolicy == OverflowPolicy.DROP_BACKLOG) {
+            mSkipBacklog = true;
+            LockSupport.unpark(mThread);
+        } else if (mPolicy == OverflowPolicy.DISCONNECT) {
+            mDisconnected = true;
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    private void drop(ByteBuffer frames) {
+        mDroppedBytes = mDroppedBytes + frames.remaining();
+        frames.position(frames.limit());
+    }
+
+    private void submit() {
+        ByteBuffer block = mCurrent;
+        mCurrent = null;
+        mBlocks.submit(block);
+    }
+
+    private void drain() {
+        while (true) {
+            ByteBuffer block = mBlocks.poll();
+            if (block == null) {
+                if (mDisconnected || mBlocks.isFinished()) {
+                    break;
+                }
+                mBlocks.await(IDLE_PARK_NANOS);
+                continue;
+            }
+            if (mSkipBacklog) {
+                // 丢弃此刻排队的所有块,从最新的音频接着写
+                mSkipBacklog = false;
+                do {
+                    mDiscardedBytes = mDiscardedBytes + block.remaining();
+                    mBlocks.recycle(block);
+                } while ((block = mBlocks.poll()) != null);
+                continue;
+            }
+            if (!mDisconnected) {
+                int length = block.remaining();
+                try {
+                    mSink.write(block);
+                    mWrittenBytes = mWrittenBytes + length;
+                } catch (IOException e) {
+                    mError = e;
+                    mDisconnected = true;
+                }
+            }
+            mBlocks.recycle(block);
+        }
+        try {
+            mSink.close();
+        } catch (IOException e) {
+            if (mError == null) {
+                mError = e;
+            }
+        }
+    }
+
+    /**
+     * Let the sink write what is buffered, waiting at most the close timeout, then close it.
+     *
+     * @throws IOException the sink failed at some point
+     */
+    @Override
+    public void close() throws IOException {
+        if (!mStarted) {
+            mStarted = true;
+            mClosing = true;
+            mSink.close();
+            return;
+        }
+        if (mCurrent != null) {
+            submit();
+        }
+        mClosing = true;
+        mBlocks.finish();
+        if (!join(mCloseTimeoutMillis)) {
+            // 阻塞在写入上的sink靠中断退出,例如可中断的SocketChannel
+            mDisconnected = true;
+            mThread.interrupt();
+            if (!join(mCloseTimeoutMillis)) {
+                throw new IOException("Sink did not close within " + mCloseTimeoutMillis + "ms");
+            }
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    /**
+     * @return whether the sink thread ended within millis
+     */
+    private boolean join(long millis) {
+        boolean interrupted = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long left;
+        while (mThread.isAlive() && (left = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.timedJoin(mThread, left);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return !mThread.isAlive();
+    }
+
+    /**
+     * @return whether the sink stopped being fed, by {@link OverflowPolicy#DISCONNECT} or a failure
+     */
+    public boolean isDisconnected() {
+        return mDisconnected;
+    }
+
+    /**
+     * @return first failure of the sink, null if none
+     */
+    public IOException getError() {
+        return mError;
+    }
+
+    /**
+     * @return bytes the sink has taken
+     */
+    public long getWrittenBytes() {
+        return mWrittenBytes;
+    }
+
+    /**
+     * @return bytes given up on overflow or after a disconnect
+     */
+    public long getDroppedBytes() {
+        return mDroppedBytes + mDiscardedBytes;
+    }
+
+    /**
+     * @return how many times the buffer was full
+     */
+    public int getOverflowCount() {
+        return mOverflowCount;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncSink{" + mPolicy + ", written " + mWrittenBytes + " B, dropped " + mDroppedBytes
+                + " B, " + mOverflowCount + " overflows" + (mError != null ? ", " + mError : "") + "}";
+    }
+}
@@ -0,0 +1,124 @@
+package com.czt.mp3recorder;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link PcmSource} capturing from the device microphone through {@link AudioRecord}.
+ */
+public class AudioRecordPcmSource implements PcmSource {
+    /**
+     * 下面是对此的封装
+     * private static final int DEFAULT_AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
+     */
+    private static final PCMFormat DEFAULT_AUDIO_FORMAT = PCMFormat.PCM_16BIT;
+
+    private final int mAudioSource;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final int mChannelConfig;
+    private final int mBufferSize;
+    private final int mRecordBufferBytes;
+    private AudioRecord mAudioRecord;
+
+    /**
+     * @param audioSource one of {@link android.media.MediaRecorder.AudioSource}
+     */
+    public AudioRecordPcmSource(int audioSource) {
+        this(RecorderConfig.DEFAULT.buildUpon().setAudioSource(audioSource).build());
+    }
+
+    /**
+     * @param config capture format and chunk sizing
+     * @throws IllegalArgumentException the device cannot record this format
+     */
+    public AudioRecordPcmSource(RecorderConfig config) {
+        mAudioSource = config.getAudioSource();
+        mSampleRate = config.getSampleRate();
+        mChannelCount = config.getChannelCount();
+        mChannelConfig = mChannelCount == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        int bytesPerSample = DEFAULT_AUDIO_FORMAT.getBytesPerFrame();
+        int minBufferSize = AudioRecord.getMinBufferSize(mSampleRate,
+                mChannelConfig, DEFAULT_AUDIO_FORMAT.getAudioFormat());
+        if (minBufferSize <= 0) {
+            throw new IllegalArgumentException("AudioRecord does not support " + config);
+        }
+        /* Get number of samples. Calculate the buffer size
+         * (round up to the factor of given frame size)
+         * */
+        int chunkSize = config.getChunkSize();
+        if (chunkSize == 0) {
+            chunkSize = minBufferSize / bytesPerSample;
+        }
+        mBufferSize = config.roundToPeriod(chunkSize);
+        // AudioRecord keeps room for two chunks so a late read does not overrun it
+        mRecordBufferBytes = Math.max(minBufferSize, mBufferSize * bytesPerSample * 2);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    @Override
+    public boolean isRealtime() {
+        return true;
+    }
+
+    @Override
+    public void start() {
+        if (mAudioRecord == null) {
+            /* Setup audio recorder */
+            mAudioRecord = new AudioRecord(mAudioSource,
+                    mSampleRate, mChannelConfig, DEFAULT_AUDIO_FORMAT.getAudioFormat(),
+                    mRecordBufferBytes);
+        }
+        mAudioRecord.startRecording();
+    }
+
+    @Override
+    public void onCaptureThreadStart() {
+        //设置线程权限
+        android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int size) {
+        int readSize = mAudioRecord.read(buffer, offset, size);
+        return readSize > 0 ? readSize : 0;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int size) {
+        // AudioRecord fills the direct buffer from its own memory, no Java array involved
+        int readBytes = mAudioRecord.read(buffer, size * 2);
+        return readBytes > 0 ? readBytes / 2 : 0;
+    }
+
+    @Override
+    public void stop() {
+        if (mAudioRecord != null) {
+            mAudioRecord.stop();
+        }
+    }
+
+    @Override
+    public void release() {
+        if (mAudioRecord != null) {
+            mAudioRecord.release();
+            mAudioRecord = null;
+        }
+    }
+}
@@ -33,6 +33,10 @@ public class AudioRecordPopWindow extends PopupWindow implements View.OnClickLis
 
     private AudioRecordBean mRecorder;
     private EndRecordListener listener;
+    /**
+     * 界面上显示的秒数,只在变化时刷新
+     */
+    private int mShownSeconds;
 
 
     public interface EndRecordListener {
@@ -105,13 +109,16 @@ public class AudioRecordPopWindow extends PopupWindow implements View.OnClickLis
             mRecorder.setFilePath(audioPath);
             mRecorder.setRecordSeconds(0);
             mRecorder.setBeginTime(beginTime);
+            mRecorder.getmRecorder().setDurationListener(mDurationListener, DURATION_INTERVAL_MILLIS);
+            //新的录音从0秒开始显示
+            mShownSeconds = 0;
+            tv_record_durance.setText(TimeUtils.formatSeconds(0));
             mRecorder.getmRecorder().startRecording();
         } catch (IllegalStateException e) {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
         }
-        new Thread(mCountTime).start();//开始计时
         iv_audio_stop.setImageResource(R.mipmap.btn_stop_normal);
         //开始录音动画
         iv_record_flash.setImageResource(R.drawable.audio_player);
@@ -119,27 +126,25 @@ public class AudioRecordPopWindow extends PopupWindow implements View.OnClickLis
         rocketAnimation.start();
     }
 
-    private Runnable mCountTime = new Runnable() {
+    private static final long DURATION_INTERVAL_MILLIS = 200;
+
+    /**
+     * 时长按已录制的采样数计算,暂停时不再回调;秒数变化时才刷新界面
+     */
+    private MP3Recorder.DurationListener mDurationListener = new MP3Recorder.DurationListener() {
         @Override
-        public void run() {
-            // TODO Auto-generated method stub
-            while (null != mRecorder) {
-                try {
-                    Thread.sleep(100);
-                    if (null != mRecorder && mRecorder.getmRecorder().isRecording()) {
-                        mRecorder.setRecordSeconds(mRecorder.getRecordSeconds() + 0.1);
-                        ((Activity) mContext).runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                tv_record_durance.setText(TimeUtils.formatSeconds((Double.valueOf(mRecorder.getRecordSeconds())).intValue()));
-                            }
-                        });
-                    }
-                } catch (InterruptedException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                }
+        public void onDurationChanged(long durationMillis) {
+            final int seconds = (int) (durationMillis / 1000);
+            if (seconds == mShownSeconds) {
+                return;
             }
+            mShownSeconds = seconds;
+            ((Activity) mContext).runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    tv_record_durance.setText(TimeUtils.formatSeconds(seconds));
+                }
+            });
         }
     };
 
@@ -165,22 +170,39 @@ public class AudioRecordPopWindow extends PopupWindow implements View.OnClickLis
         } else if (v.getId() == R.id.iv_audio_save) {
             if (null != mRecorder) {
                 //8.停止捕获
-                mRecorder.getmRecorder().stopRecording();
+                final AudioRecordBean recorder = mRecorder;
+                recorder.getmRecorder().stopRecording();
                 String endTime = TimeUtils.getCurrentTimeInString("yyyy-MM-dd HH:mm:ss");
-                mRecorder.setEndTime(endTime);
-                audioDuration = mRecorder.getRecordSeconds();
-                if (mRecorder.getmRecorder().isRecording()) {
+                recorder.setEndTime(endTime);
+                if (recorder.getmRecorder().isRecording()) {
                     //停止动画
                     AnimationDrawable rocketAnimation = (AnimationDrawable) iv_record_flash.getDrawable();
                     rocketAnimation.stop();
                     iv_record_flash.setImageResource(R.mipmap.img_flash_01);
                 }
                 mRecorder = null;
-
-                listener.recordFinish(false, audioPath, audioDuration);
-//                    ToastUtils.showInfo(mContext,"返回数据");
-                dismiss();
-                //这里返回数据
+                //采集线程可能还在交出最后一块,等采集和编码结束后再取时长,文件也已写完
+                new Thread("AudioRecordPopWindow") {
+                    @Override
+                    public void run() {
+                        try {
+                            recorder.getmRecorder().waitForCompletion();
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                        ((Activity) mContext).runOnUiThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                recorder.setRecordSeconds(recorder.getmRecorder().getDurationMillis() / 1000.0);
+                                audioDuration = recorder.getRecordSeconds();
+                                listener.recordFinish(false, audioPath, audioDuration);
+//                                ToastUtils.showInfo(mContext,"返回数据");
+                                dismiss();
+                                //这里返回数据
+                            }
+                        });
+                    }
+                }.start();
             }
         } else if (v.getId() == R.id.iv_audio_stop) {
             if (null != mRecorder) {
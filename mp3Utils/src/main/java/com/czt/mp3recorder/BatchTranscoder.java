@@ -0,0 +1,415 @@
+package com.czt.mp3recorder;
+
+import com.czt.mp3recorder.util.Mp3Encoder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transcodes WAV and raw PCM files to mp3 on a fixed pool of worker threads,
+ * one file per worker at a time. Every file gets its own {@link Mp3Encoder}
+ * and is streamed through a constant size buffer, so files of any length can
+ * be encoded side by side.
+ */
+public class BatchTranscoder {
+    /**
+     * 每次从文件读取并编码的采样数(所有声道),LAME每帧1152个采样
+     */
+    private static final int CHUNK_SAMPLES = 1152 * 8;
+    /**
+     * 两次进度回调之间至少编码的采样数(每声道)
+     */
+    private static final int PROGRESS_INTERVAL_FRAMES = 1152 * 64;
+
+    private final RecorderConfig mConfig;
+    private final int mThreadCount;
+
+    /**
+     * One worker per available processor.
+     *
+     * @param config bit rate, quality and output sample rate; capture settings are ignored
+     */
+    public BatchTranscoder(RecorderConfig config) {
+        this(config, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param config      bit rate, quality and output sample rate; capture settings are ignored
+     * @param threadCount maximum number of files encoded at once
+     */
+    public BatchTranscoder(RecorderConfig config, int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mConfig = config;
+        mThreadCount = threadCount;
+    }
+
+    /**
+     * Start encoding the given files. Returns immediately.
+     *
+     * @param jobs     files to encode
+     * @param listener progress callbacks, called on the worker threads; may be null
+     * @return handle to wait for or cancel the batch
+     */
+    public Batch start(List<Job> jobs, Listener listener) {
+        return new Batch(new ArrayList<Job>(jobs), listener);
+    }
+
+    /**
+     * Encode the given files and wait until all are done.
+     *
+     * @return one result per job, in the order of the jobs
+     * @throws InterruptedException interrupted while waiting, the batch is cancelled
+     */
+    public List<Result> transcode(List<Job> jobs, Listener listener) throws InterruptedException {
+        Batch batch = start(jobs, listener);
+        try {
+            return batch.await();
+        } catch (InterruptedException e) {
+            batch.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * A file to encode.
+     */
+    public static class Job {
+        private final File mInput;
+        private final File mOutput;
+        private final int mRawSampleRate;
+        private final int mRawChannelCount;
+
+        private Job(File input, File output, int rawSampleRate, int rawChannelCount) {
+            mInput = input;
+            mOutput = output;
+            mRawSampleRate = rawSampleRate;
+            mRawChannelCount = rawChannelCount;
+        }
+
+        /**
+         * @param input  16 bit PCM wav file, mono or stereo
+         * @param output mp3 file to write
+         */
+        public static Job wav(File input, File output) {
+            return new Job(input, output, 0, 0);
+        }
+
+        /**
+         * @param input        headerless 16 bit little-endian PCM
+         * @param output       mp3 file to write
+         * @param sampleRate   sample rate of the input in Hz
+         * @param channelCount 1 or 2, stereo interleaved
+         */
+        public static Job raw(File input, File output, int sampleRate, int channelCount) {
+            if (sampleRate <= 0 || (channelCount != 1 && channelCount != 2)) {
+                throw new IllegalArgumentException("Only mono and stereo with a positive sample rate are supported");
+            }
+            return new Job(input, output, sampleRate, channelCount);
+        }
+
+        public File getInput() {
+            return mInput;
+        }
+
+        public File getOutput() {
+            return mOutput;
+        }
+
+        FilePcmSource openSource() throws IOException {
+            if (mRawSampleRate == 0) {
+                return FilePcmSource.wav(mInput, CHUNK_SAMPLES);
+            }
+            return FilePcmSource.raw(mInput, mRawSampleRate, mRawChannelCount, CHUNK_SAMPLES);
+        }
+
+        @Override
+        public String toString() {
+            return mInput + " -> " + mOutput;
+        }
+    }
+
+    /**
+     * Outcome of one job.
+     */
+    public static class Result {
+        private final Job mJob;
+        private final int mSampleRate;
+        private final long mFrames;
+        private final long mBytesWritten;
+        private final long mElapsedNanos;
+        private final Throwable mError;
+        private final boolean mCancelled;
+
+        Result(Job job, int sampleRate, long frames, long bytesWritten, long elapsedNanos,
+               Throwable error, boolean cancelled) {
+            mJob = job;
+            mSampleRate = sampleRate;
+            mFrames = frames;
+            mBytesWritten = bytesWritten;
+            mElapsedNanos = elapsedNanos;
+            mError = error;
+            mCancelled = cancelled;
+        }
+
+        public Job getJob() {
+            return mJob;
+        }
+
+        /**
+         * @return true if the whole input was encoded and the mp3 file is complete
+         */
+        public boolean isSuccessful() {
+            return mError == null && !mCancelled;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * @return why the job failed, null if it did not
+         */
+        public Throwable getError() {
+            return mError;
+        }
+
+        /**
+         * @return samples per channel encoded
+         */
+        public long getFrames() {
+            return mFrames;
+        }
+
+        public long getBytesWritten() {
+            return mBytesWritten;
+        }
+
+        /**
+         * @return duration of the encoded audio
+         */
+        public long getAudioDurationMillis() {
+            return mSampleRate == 0 ? 0 : mFrames * 1000 / mSampleRate;
+        }
+
+        /**
+         * @return wall time spent reading, encoding and writing this file
+         */
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mElapsedNanos);
+        }
+
+        /**
+         * @return seconds of audio encoded per second of wall time, e.g. 40 means 40x realtime
+         */
+        public double getRealtimeFactor() {
+            if (mElapsedNanos == 0 || mSampleRate == 0) {
+                return 0;
+            }
+            return (double) mFrames / mSampleRate / (mElapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            String state = isSuccessful() ? "ok" : mCancelled ? "cancelled" : "failed: " + mError;
+            return String.format("%s %s, %d ms audio in %d ms (%.1fx realtime)",
+                    mJob, state, getAudioDurationMillis(), getElapsedMillis(), getRealtimeFactor());
+        }
+    }
+
+    /**
+     * Called on the worker threads, possibly from several at once.
+     */
+    public interface Listener {
+        /**
+         * @param job         job being encoded
+         * @param framesDone  samples per channel encoded so far
+         * @param totalFrames samples per channel in the input
+         */
+        void onProgress(Job job, long framesDone, long totalFrames);
+
+        /**
+         * @param result finished, failed or cancelled job
+         */
+        void onJobFinished(Result result);
+    }
+
+    /**
+     * A running batch.
+     */
+    public class Batch {
+        private final List<Job> mJobs;
+        private final Listener mListener;
+        private final ThreadPoolExecutor mExecutor;
+        private final List<Future<Result>> mFutures;
+        private volatile boolean mCancelled;
+
+        Batch(List<Job> jobs, Listener listener) {
+            mJobs = jobs;
+            mListener = listener;
+            int threads = Math.max(1, Math.min(mThreadCount, jobs.size()));
+            mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new WorkerFactory());
+            mFutures = new ArrayList<>(jobs.size());
+            for (final Job job : jobs) {
+                mFutures.add(mExecutor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        Result result = encode(job, Batch.this);
+                        if (mListener != null) {
+                            mListener.onJobFinished(result);
+                        }
+                        return result;
+                    }
+                }));
+            }
+            mExecutor.shutdown();
+        }
+
+        /**
+         * Stop the batch. Jobs not yet started are skipped, running jobs stop at
+         * the next chunk and delete their incomplete output file.
+         */
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public boolean isDone() {
+            return mExecutor.isTerminated();
+        }
+
+        /**
+         * Wait for every job to finish or be skipped.
+         *
+         * @return one result per job, in the order of the jobs
+         * @throws InterruptedException interrupted while waiting
+         */
+        public List<Result> await() throws InterruptedException {
+            List<Result> results = new ArrayList<>(mFutures.size());
+            for (int i = 0; i < mFutures.size(); i++) {
+                try {
+                    results.add(mFutures.get(i).get());
+                } catch (ExecutionException e) {
+                    // encode() catches everything it can, this is an Error from a worker
+                    results.add(new Result(mJobs.get(i), 0, 0, 0, 0, e.getCause(), false));
+                } catch (CancellationException e) {
+                    results.add(new Result(mJobs.get(i), 0, 0, 0, 0, null, true));
+                }
+            }
+            return Collections.unmodifiableList(results);
+        }
+    }
+
+    private Result encode(Job job, Batch batch) {
+        if (batch.mCancelled) {
+            return new Result(job, 0, 0, 0, 0, null, true);
+        }
+        long start = System.nanoTime();
+        int sampleRate = 0;
+        long frames = 0;
+        long bytesWritten = 0;
+        FilePcmSource source = null;
+        Mp3Encoder encoder = null;
+        FileOutputStream out = null;
+        boolean complete = false;
+        try {
+            source = job.openSource();
+            sampleRate = source.getSampleRate();
+            int channels = source.getChannelCount();
+            if (channels != 1 && channels != 2) {
+                throw new IOException("Only mono and stereo input is supported: " + job.getInput());
+            }
+            long totalFrames = source.getTotalSamples() / channels;
+            encoder = mConfig.newEncoderBuilder(sampleRate, channels).build();
+            out = new FileOutputStream(job.getOutput());
+            short[] pcm = new short[CHUNK_SAMPLES];
+            byte[] mp3 = new byte[(int) (7200 + CHUNK_SAMPLES * 1.25)];
+            source.start();
+            long nextProgress = PROGRESS_INTERVAL_FRAMES;
+            int read;
+            while ((read = source.read(pcm, 0, CHUNK_SAMPLES)) != PcmSource.END_OF_STREAM) {
+                if (batch.mCancelled) {
+                    return new Result(job, sampleRate, frames, bytesWritten, System.nanoTime() - start, null, true);
+                }
+                // 不完整的立体声采样对丢弃
+                int chunkFrames = read / channels;
+                int encoded = channels == 2
+                        ? encoder.encodeInterleaved(pcm, chunkFrames, mp3)
+                        : encoder.encodeMono(pcm, chunkFrames, mp3);
+                if (encoded < 0) {
+                    throw new IOException("LAME error " + encoded + " encoding " + job.getInput());
+                }
+                out.write(mp3, 0, encoded);
+                bytesWritten += encoded;
+                frames += chunkFrames;
+                if (batch.mListener != null && frames >= nextProgress) {
+                    batch.mListener.onProgress(job, frames, totalFrames);
+                    nextProgress = frames + PROGRESS_INTERVAL_FRAMES;
+                }
+            }
+            int flushed = encoder.flush(mp3);
+            if (flushed > 0) {
+                out.write(mp3, 0, flushed);
+                bytesWritten += flushed;
+            }
+            DataEncodeThread.writeLameTag(encoder, out.getChannel(), mp3, false);
+            complete = true;
+            if (batch.mListener != null) {
+                batch.mListener.onProgress(job, frames, totalFrames);
+            }
+            return new Result(job, sampleRate, frames, bytesWritten, System.nanoTime() - start, null, false);
+        } catch (IOException e) {
+            return new Result(job, sampleRate, frames, bytesWritten, System.nanoTime() - start, e, false);
+        } catch (RuntimeException e) {
+            return new Result(job, sampleRate, frames, bytesWritten, System.nanoTime() - start, e, false);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                // 取消或失败的输出不完整,不保留
+                if (!complete) {
+                    job.getOutput().delete();
+                }
+            }
+            if (encoder != null) {
+                encoder.close();
+            }
+            if (source != null) {
+                source.release();
+            }
+        }
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BatchTranscoder-" + mCount.incrementAndGet());
+            // 批量转码不应抢占录音线程
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
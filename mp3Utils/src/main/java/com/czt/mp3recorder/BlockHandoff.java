@@ -0,0 +1,148 @@
+package com.czt.mp3recorder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pooled byte blocks passed from one producer thread to one consumer thread and back,
+ * the handoff behind {@link Mp3FileWriter} and {@link AsyncSink}. The producer fills a
+ * block and {@link #submit submits} it, the consumer {@link #poll polls} it, writes it out
+ * and {@link #recycle recycles} it. At most blockCount blocks exist, so both queues have
+ * room for all of them and neither side ever fails to hand a block over.
+ * <p>
+ * The consumer parks in {@link #await(long)} while there is nothing to take and is
+ * unparked by the next submit or by {@link #finish()}.
+ */
+public class BlockHandoff {
+    /**
+     * 待消费的块,生产者放入,消费者取出
+     */
+    private final SpscQueue<ByteBuffer> mFull;
+    /**
+     * 用完归还的块,消费者放入,生产者取出
+     */
+    private final SpscQueue<ByteBuffer> mFree;
+    private final int mBlockCount;
+    private final boolean mDirect;
+    private final Thread mConsumer;
+    // producer side
+    private int mAllocated;
+    // shared
+    private volatile boolean mFinished;
+    private volatile boolean mWaiting;
+
+    /**
+     * @param blockCount most blocks allocated
+     * @param direct     whether blocks are direct buffers
+     * @param consumer   the thread that polls, unparked when there is work
+     */
+    public BlockHandoff(int blockCount, boolean direct, Thread consumer) {
+        if (blockCount <= 0) {
+            throw new IllegalArgumentException("blockCount must be positive");
+        }
+        mFull = new SpscQueue<>(blockCount);
+        mFree = new SpscQueue<>(blockCount);
+        mBlockCount = blockCount;
+        mDirect = direct;
+        mConsumer = consumer;
+    }
+
+    /**
+     * Producer side: a cleared block of at least capacity bytes.
+     *
+     * @return a recycled block, a new one while fewer than blockCount exist, null if
+     * every block is waiting for the consumer
+     */
+    public ByteBuffer obtain(int capacity) {
+        ByteBuffer block = mFree.poll();
+        if (block == null && mAllocated < mBlockCount) {
+            mAllocated++;
+            return allocate(capacity);
+        }
+        if (block != null) {
+            block.clear();
+            if (block.capacity() < capacity) {
+                // 需要更大的块时替换,块的总数不变
+                block = allocate(capacity);
+            }
+        }
+        return block;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return mDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Producer side: flip the block and hand it to the consumer.
+     */
+    public void submit(ByteBuffer block) {
+        block.flip();
+        // 块总数不超过队列容量,不会失败
+        mFull.offer(block);
+        signal();
+    }
+
+    /**
+     * Producer side: wake the consumer if it waits in {@link #await(long)}, e.g. for work
+     * that is not a block.
+     */
+    public void signal() {
+        if (mWaiting) {
+            LockSupport.unpark(mConsumer);
+        }
+    }
+
+    /**
+     * Producer side: nothing more is submitted after this.
+     */
+    public void finish() {
+        mFinished = true;
+        LockSupport.unpark(mConsumer);
+    }
+
+    /**
+     * Consumer side.
+     *
+     * @return the oldest submitted block, null if there is none
+     */
+    public ByteBuffer poll() {
+        return mFull.poll();
+    }
+
+    /**
+     * Consumer side: give a block taken with {@link #poll()} back to the producer.
+     */
+    public void recycle(ByteBuffer block) {
+        mFree.offer(block);
+    }
+
+    /**
+     * Consumer side.
+     *
+     * @return whether {@link #finish()} was called and every block submitted before it was taken
+     */
+    public boolean isFinished() {
+        // finish()在提交最后一块之后才设置标志,看到标志后再检查一次队列即可看到所有块
+        return mFinished && mFull.isEmpty();
+    }
+
+    /**
+     * Consumer side: park until a block is submitted, {@link #finish()} is called, the
+     * consumer is unparked otherwise or nanos pass.
+     */
+    public void await(long nanos) {
+        mWaiting = true;
+        if (mFull.isEmpty() && !mFinished) {
+            LockSupport.parkNanos(this, nanos);
+        }
+        mWaiting = false;
+    }
+
+    /**
+     * @return whether no block is waiting for the consumer, from any thread
+     */
+    public boolean isEmpty() {
+        return mFull.isEmpty();
+    }
+}
@@ -1,107 +1,433 @@
 package com.czt.mp3recorder;
 
-import android.media.AudioRecord;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
-import android.os.Message;
-
+import com.czt.mp3recorder.util.LameTag;
 import com.czt.mp3recorder.util.LameUtil;
+import com.czt.mp3recorder.util.Mp3Encoder;
+import com.czt.mp3recorder.util.Mp3FrameHeader;
+import com.czt.mp3recorder.util.Mp3SeekIndex;
+import com.czt.mp3recorder.util.RecordingJournal;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
-public class DataEncodeThread extends HandlerThread implements AudioRecord.OnRecordPositionUpdateListener {
-	private StopHandler mHandler;
-	private static final int PROCESS_STOP = 1;
+/**
+ * Encodes queued PCM chunks on its own thread. The loop drains the queue as
+ * data arrives, batching according to an {@link EncodePolicy}, and finishes the
+ * file once {@link #sendStopMessage()} is called and the queue is empty. The mp3 stream
+ * can also go to an {@link EncodedSink}, besides the file or instead of it.
+ */
+public class DataEncodeThread extends Thread {
+	private static final int DEFAULT_POOL_CAPACITY = 32;
+	/**
+	 * 最长的帧:MPEG-1 32kHz 320kbps或MPEG-2.5 8kHz 160kbps,带填充字节
+	 */
+	private static final int MAX_FRAME_LENGTH = 1441;
 	private byte[] mMp3Buffer;
 	private FileOutputStream mFileOutputStream;
+	/**
+	 * 零拷贝模式下的编码输出
+	 */
+	private ByteBuffer mMp3DirectBuffer;
+	/**
+	 * 编码结果交给写线程合并写入文件
+	 */
+	private Mp3FileWriter mWriter;
+	private final PcmChunkPool mChunkPool;
+	private final Mp3Encoder mEncoder;
+	/**
+	 * mEncoder是LameUtil的共享编码器,关闭时也要清除LameUtil的引用
+	 */
+	private boolean mSharedEncoder;
+	private final int mChannelCount;
+	private volatile EncodePolicy mPolicy = EncodePolicy.BALANCED;
+	/**
+	 * 边写边记录帧偏移,结束时写入索引文件
+	 */
+	private Mp3SeekIndex.Builder mSeekIndex;
+	private File mSeekIndexFile;
+	private int mSeekIndexMillis;
+	/**
+	 * 分段录音:当前文件,清单,以及切换到下一段的时长(输入采样数)和字节数,0为不限
+	 */
+	private File mFile;
+	private SegmentManifest mSegments;
+	private int mSegmentIndex;
+	private long mSegmentSamples;
+	private long mSegmentBytes;
+	private long mSegmentStartSamples;
+	/**
+	 * 定期检查点:数据fsync后在日志中记录偏移和采样数,崩溃后由RecordingRecovery修复
+	 */
+	private File mJournalFile;
+	private long mCheckpointIntervalNanos;
+	private RecordingJournal mJournal;
+	private long mLastCheckpointNanos;
+	/**
+	 * 已编码的采样数(每声道)
+	 */
+	private long mEncodedSamples;
+	/**
+	 * 文件之外的输出;两个视图分别对应堆上和直接缓冲区中的编码结果
+	 */
+	private EncodedSink mSink;
+	private ByteBuffer mSinkView;
+	private ByteBuffer mSinkDirectView;
+	/**
+	 * 下一次输出以LAME的Xing/Info占位帧开头,不交给mSink
+	 */
+	private boolean mSinkSkipsTag = true;
+	/**
+	 * mSink只接收完整的帧:编码输出末尾不完整的帧留在这里,等下次输出补齐
+	 */
+	private final ByteBuffer mSinkPartialFrame = ByteBuffer.allocate(MAX_FRAME_LENGTH);
+	private volatile boolean mStopRequested;
+	/**
+	 * 编码线程是否正在等待数据
+	 */
+	private volatile boolean mWaiting;
 
-	private static class StopHandler extends Handler {
-		
-		private DataEncodeThread encodeThread;
-		
-		public StopHandler(Looper looper, DataEncodeThread encodeThread) {
-			super(looper);
-			this.encodeThread = encodeThread;
-		}
-
-		@Override
-		public void handleMessage(Message msg) {
-			if (msg.what == PROCESS_STOP) {
-				//处理缓冲区中的数据
-				while (encodeThread.processData() > 0);
-				// Cancel any event left in the queue
-				removeCallbacksAndMessages(null);
-				encodeThread.flushAndRelease();
-				getLooper().quit();
-			}
-		}
+	/**
+	 * Constructor, encodes with the encoder set up by {@link LameUtil#init}; it is closed
+	 * with {@link LameUtil#close()} when the file is finished, as before
+	 * @param file file
+	 * @param bufferSize bufferSize
+	 * @throws FileNotFoundException file not found
+	 */
+	public DataEncodeThread(File file, int bufferSize) throws FileNotFoundException {
+		this(file, requireLameUtilEncoder(), bufferSize, DEFAULT_POOL_CAPACITY, false);
+		mSharedEncoder = true;
 	}
 
 	/**
 	 * Constructor
 	 * @param file file
-	 * @param bufferSize bufferSize
+	 * @param encoder encoder owned by this thread from now on, closed when the file is finished
+	 * @param bufferSize samples (all channels) per chunk
+	 * @param poolCapacity number of preallocated chunks
+	 * @param direct use direct ByteBuffer chunks and {@link Mp3Encoder#encodeDirect}
 	 * @throws FileNotFoundException file not found
 	 */
-	public DataEncodeThread(File file, int bufferSize) throws FileNotFoundException {
-		super("DataEncodeThread");
+	public DataEncodeThread(File file, Mp3Encoder encoder, int bufferSize, int poolCapacity, boolean direct) throws FileNotFoundException {
+		this(encoder, bufferSize, poolCapacity, direct);
+		mFile = file;
 		this.mFileOutputStream = new FileOutputStream(file);
+		mWriter = new Mp3FileWriter(mFileOutputStream.getChannel(), 0);
+	}
+
+	/**
+	 * Constructor for a stream without a file, e.g. live streaming only. The file features
+	 * (write buffering, seek index, checkpoints, segments) are not available.
+	 * @param sink receives the frames on this thread, closed when the stream is finished
+	 * @param encoder encoder owned by this thread from now on, closed when the stream is finished
+	 * @param bufferSize samples (all channels) per chunk
+	 * @param poolCapacity number of preallocated chunks
+	 * @param direct use direct ByteBuffer chunks and {@link Mp3Encoder#encodeDirect}
+	 */
+	public DataEncodeThread(EncodedSink sink, Mp3Encoder encoder, int bufferSize, int poolCapacity, boolean direct) {
+		this(encoder, bufferSize, poolCapacity, direct);
+		setSink(sink);
+	}
+
+	private DataEncodeThread(Mp3Encoder encoder, int bufferSize, int poolCapacity, boolean direct) {
+		super("DataEncodeThread");
+		mEncoder = encoder;
 		mMp3Buffer = new byte[(int) (7200 + (bufferSize * 2 * 1.25))];
+		if (direct) {
+			mMp3DirectBuffer = ByteBuffer.allocateDirect(mMp3Buffer.length);
+		}
+		mChunkPool = new PcmChunkPool(poolCapacity, bufferSize, direct);
+		mTasks = new SpscQueue<>(poolCapacity);
+		mChannelCount = encoder.getChannelCount();
 	}
 
-	@Override
-	public synchronized void start() {
-		super.start();
-		mHandler = new StopHandler(getLooper(), this);
+	private static Mp3Encoder requireLameUtilEncoder() {
+		Mp3Encoder encoder = LameUtil.getEncoder();
+		if (encoder == null) {
+			throw new IllegalStateException("LameUtil.init() not called");
+		}
+		return encoder;
+	}
+
+	/**
+	 * @param policy batching policy, may be changed while running
+	 */
+	public void setEncodePolicy(EncodePolicy policy) {
+		if (policy == null) {
+			throw new IllegalArgumentException("policy == null");
+		}
+		mPolicy = policy;
+	}
+
+	public EncodePolicy getEncodePolicy() {
+		return mPolicy;
+	}
+
+	/**
+	 * Change how the writer stage buffers output. Call before {@link #start()} and before
+	 * configuring preallocation on {@link #getWriter()}, which this replaces.
+	 * @param blockSize bytes per write, a multiple of {@link Mp3FileWriter#ALIGNMENT}
+	 * @param blockCount most blocks buffered while a write is slow
+	 * @param flushIntervalMillis longest encoded audio waits in memory
+	 */
+	public void setWriteBuffering(int blockSize, int blockCount, long flushIntervalMillis) {
+		requireFileNotStarted();
+		mWriter = new Mp3FileWriter(mFileOutputStream.getChannel(), 0, blockSize, blockCount, flushIntervalMillis);
+	}
+
+	private void requireFileNotStarted() {
+		if (mWriter == null) {
+			throw new IllegalStateException("no file to write");
+		}
+		if (getState() != State.NEW) {
+			throw new IllegalStateException("already started");
+		}
+	}
+
+	/**
+	 * Also pass the mp3 stream to sink, e.g. to stream a recording while it is saved.
+	 * Frames are handed over on this thread; wrap a sink that may be slow in an
+	 * {@link AsyncSink}, several in a {@link TeeSink}. Call before {@link #start()}.
+	 * @param sink receives the frames, closed when the stream is finished
+	 */
+	public void setSink(EncodedSink sink) {
+		if (sink == null) {
+			throw new IllegalArgumentException("sink == null");
+		}
+		if (getState() != State.NEW) {
+			throw new IllegalStateException("already started");
+		}
+		mSink = sink;
+		mSinkView = ByteBuffer.wrap(mMp3Buffer);
+		if (mMp3DirectBuffer != null) {
+			mSinkDirectView = mMp3DirectBuffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+		}
+	}
+
+	/**
+	 * @return the writer stage, for its write metrics and
+	 * {@link Mp3FileWriter#setPreallocation preallocation}; null without a file
+	 */
+	public Mp3FileWriter getWriter() {
+		return mWriter;
+	}
+
+	/**
+	 * Record frame offsets while writing and save them as a seek index once the file
+	 * is finished. Call before {@link #start()}.
+	 * @param indexFile where to write the index, usually {@link Mp3SeekIndex#sidecarFile(File)}
+	 * @param granularityMillis time between index entries, 0 for every frame
+	 */
+	public void setSeekIndex(File indexFile, int granularityMillis) {
+		requireFileNotStarted();
+		mSeekIndex = new Mp3SeekIndex.Builder(granularityMillis);
+		mSeekIndexFile = indexFile;
+		mSeekIndexMillis = granularityMillis;
 	}
 
-	private void check() {
-		if (mHandler == null) {
-			throw new IllegalStateException();
+	/**
+	 * Roll over to the next file of manifest every segmentMillis of audio or segmentBytes
+	 * of mp3, whichever comes first. The cut falls between two frames and uses
+	 * {@link Mp3Encoder#flushNoGap(byte[])}, so the segments continue one another without a gap.
+	 * Each segment gets its own Xing/Info frame, seek index and journal. The file passed to
+	 * the constructor must be {@link SegmentManifest#getSegmentFile(int) segment 0}. Call
+	 * before {@link #start()}.
+	 * @param manifest names the segments and records them as they are finished
+	 * @param segmentMillis longest segment in ms of audio, 0 for no limit
+	 * @param segmentBytes largest segment in bytes, 0 for no limit
+	 */
+	public void setSegments(SegmentManifest manifest, long segmentMillis, long segmentBytes) {
+		requireFileNotStarted();
+		if (segmentMillis < 0 || segmentBytes < 0 || segmentMillis == 0 && segmentBytes == 0) {
+			throw new IllegalArgumentException("segmentMillis or segmentBytes must be positive");
 		}
+		mSegments = manifest;
+		mSegmentSamples = segmentMillis * mEncoder.getInSampleRate() / 1000;
+		mSegmentBytes = segmentBytes;
 	}
 
+	/**
+	 * @return the manifest of a segmented recording, null if not segmented
+	 */
+	public SegmentManifest getSegmentManifest() {
+		return mSegments;
+	}
+
+	/**
+	 * Fsync the file every intervalMillis and note how far it got in a {@link RecordingJournal},
+	 * so {@link com.czt.mp3recorder.util.RecordingRecovery} can repair it after a crash. The
+	 * journal is deleted once the file is finished. Call before {@link #start()}.
+	 * @param journalFile usually {@link RecordingJournal#journalFile(File)}
+	 * @param intervalMillis time between checkpoints
+	 */
+	public void setCheckpoints(File journalFile, long intervalMillis) {
+		requireFileNotStarted();
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException("intervalMillis must be positive");
+		}
+		mJournalFile = journalFile;
+		mCheckpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+	}
+
+	/**
+	 * Ask the encode loop to encode what is left in the queue, flush LAME and
+	 * close the file. Returns immediately.
+	 */
 	public void sendStopMessage() {
-		check();
-		mHandler.sendEmptyMessage(PROCESS_STOP);
+		mStopRequested = true;
+		LockSupport.unpark(this);
 	}
-	public Handler getHandler() {
-		check();
-		return mHandler;
+
+	/**
+	 * Close the encoder, the file and the sink of a thread that was never started, e.g.
+	 * when setting up a recording failed half way. Once started, the thread closes them
+	 * itself after {@link #sendStopMessage()}.
+	 * @throws IllegalStateException already started
+	 */
+	public void release() {
+		if (getState() != State.NEW) {
+			throw new IllegalStateException("already started");
+		}
+		mStopRequested = true;
+		closeEncoder();
+		if (mFileOutputStream != null) {
+			try {
+				mFileOutputStream.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		closeSink();
 	}
 
 	@Override
-	public void onMarkerReached(AudioRecord recorder) {
-		// Do nothing		
+	public void run() {
+		if (mWriter != null) {
+			startWriter();
+		}
+		while (!mStopRequested) {
+			EncodePolicy policy = mPolicy;
+			if (mTasks.size() < policy.getBatchSize()) {
+				mWaiting = true;
+				// re-check after publishing mWaiting so a concurrent addTask either sees it or we see its chunk;
+				// a wakeup lost to reordering only costs maxLatency since the park is timed
+				if (mTasks.size() < policy.getBatchSize() && !mStopRequested) {
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(policy.getMaxLatencyMillis()));
+				}
+				mWaiting = false;
+			}
+			int encoded = 0;
+			while (encoded < policy.getMaxChunksPerWakeup() && processData() > 0) {
+				encoded++;
+				nextSegmentIfDue();
+			}
+			if (mWriter != null) {
+				mWriter.flushIfDue();
+			}
+			if (mJournal != null && System.nanoTime() - mLastCheckpointNanos >= mCheckpointIntervalNanos) {
+				mWriter.checkpoint(mEncodedSamples, mEncoder.getInSampleRate());
+				mLastCheckpointNanos = System.nanoTime();
+			}
+		}
+		//处理缓冲区中的数据
+		while (processData() > 0) {
+			nextSegmentIfDue();
+		}
+		flushAndRelease();
 	}
 
-	@Override
-	public void onPeriodicNotification(AudioRecord recorder) {
-		processData();
+	/**
+	 * Open the journal of the current file, if checkpoints are on, and start its writer.
+	 */
+	private void startWriter() {
+		if (mJournalFile != null) {
+			try {
+				mJournal = new RecordingJournal(mJournalFile);
+				mWriter.setJournal(mJournal);
+				mLastCheckpointNanos = System.nanoTime();
+			} catch (IOException e) {
+				// 没有日志也照常录音
+				e.printStackTrace();
+				mJournal = null;
+			}
+		}
+		mWriter.start();
+	}
+
+	private void nextSegmentIfDue() {
+		if (mSegments == null
+				|| (mSegmentSamples == 0 || mEncodedSamples - mSegmentStartSamples < mSegmentSamples)
+				&& (mSegmentBytes == 0 || mWriter.getAppendedBytes() < mSegmentBytes)) {
+			return;
+		}
+		File next = mSegments.getSegmentFile(mSegmentIndex + 1);
+		FileOutputStream out;
+		try {
+			out = new FileOutputStream(next);
+		} catch (FileNotFoundException e) {
+			// 打不开下一段就继续写当前文件
+			e.printStackTrace();
+			mSegmentSamples = 0;
+			mSegmentBytes = 0;
+			return;
+		}
+		// 只输出已完成的帧,LAME中余下的pcm编入下一段
+		int flushResult = mEncoder.flushNoGap(mMp3Buffer);
+		writeSink(mSinkView, flushResult);
+		finishFile(flushResult);
+		mEncoder.startNextFile();
+		mSinkSkipsTag = true;
+		mSinkPartialFrame.clear();
+
+		mSegmentIndex++;
+		mSegmentStartSamples = mEncodedSamples;
+		mFile = next;
+		mFileOutputStream = out;
+		mWriter = mWriter.newWriter(out.getChannel(), 0, next);
+		if (mSeekIndex != null) {
+			mSeekIndex = new Mp3SeekIndex.Builder(mSeekIndexMillis);
+			mSeekIndexFile = Mp3SeekIndex.sidecarFile(next);
+		}
+		if (mJournalFile != null) {
+			mJournalFile = RecordingJournal.journalFile(next);
+		}
+		startWriter();
 	}
+
 	/**
 	 * 从缓冲区中读取并处理数据，使用lame编码MP3
 	 * @return  从缓冲区中读取的数据的长度
 	 * 			缓冲区中没有数据时返回0 
 	 */
 	private int processData() {	
-		if (mTasks.size() > 0) {
-			Task task = mTasks.remove(0);
-			short[] buffer = task.getData();
-			int readSize = task.getReadSize();
-			int encodedSize = LameUtil.encode(buffer, buffer, readSize, mMp3Buffer);
+		PcmChunk chunk = mTasks.poll();
+		if (chunk != null) {
+			if (chunk.isDirect()) {
+				return processDirect(chunk);
+			}
+			short[] buffer = chunk.getData();
+			int readSize = chunk.getReadSize();
+			int encodedSize;
+			if (mChannelCount == 2) {
+				encodedSize = mEncoder.encodeInterleaved(buffer, readSize / 2, mMp3Buffer);
+			} else {
+				encodedSize = mEncoder.encodeMono(buffer, readSize, mMp3Buffer);
+			}
+			mChunkPool.recycle(chunk);
+			mEncodedSamples += readSize / mChannelCount;
 			if (encodedSize > 0){
-				try {
-					mFileOutputStream.write(mMp3Buffer, 0, encodedSize);
-				} catch (IOException e) {
-                    e.printStackTrace();
+				writeSink(mSinkView, encodedSize);
+				if (mSeekIndex != null) {
+					mSeekIndex.append(mMp3Buffer, 0, encodedSize);
+				}
+				if (mWriter != null) {
+					mWriter.append(mMp3Buffer, 0, encodedSize);
 				}
 			}
 			return readSize;
@@ -109,45 +435,357 @@ public class DataEncodeThread extends HandlerThread implements AudioRecord.OnRec
 		return 0;
 	}
 	
+	private int processDirect(PcmChunk chunk) {
+		int readSize = chunk.getReadSize();
+		int encodedSize = mEncoder.encodeDirect(chunk.getDirectData(), readSize / mChannelCount, mMp3DirectBuffer);
+		mChunkPool.recycle(chunk);
+		mEncodedSamples += readSize / mChannelCount;
+		if (encodedSize > 0) {
+			writeSink(mSinkDirectView, encodedSize);
+			if (mSeekIndex != null) {
+				mSeekIndex.append(mMp3DirectBuffer, encodedSize);
+			}
+			if (mWriter != null) {
+				mWriter.append(mMp3DirectBuffer, encodedSize);
+			}
+		}
+		return readSize;
+	}
+
 	/**
-	 * Flush all data left in lame buffer to file
+	 * Flush all data left in lame buffer to file and sink and finish them, then release the encoder
 	 */
 	private void flushAndRelease() {
 		//将MP3结尾信息写入buffer中
-		final int flushResult = LameUtil.flush(mMp3Buffer);
-		if (flushResult > 0) {
+		final int flushResult = mEncoder.flush(mMp3Buffer);
+		try {
+			writeSink(mSinkView, flushResult);
+			if (mWriter != null) {
+				finishFile(flushResult);
+			}
+		} finally {
+			closeEncoder();
+			closeSink();
+		}
+	}
+
+	/**
+	 * Hand encoded frames to the sink, leaving out LAME's Xing/Info placeholder at the start
+	 * of each file: it is only filled in by seeking back, which a stream cannot do.
+	 * LAME's output ends in the middle of a frame most of the time; the sink only gets the
+	 * whole frames, the rest is held back until the next output completes it.
+	 * @param view mMp3Buffer or mMp3DirectBuffer as a big endian ByteBuffer
+	 * @param size encoded bytes
+	 */
+	private void writeSink(ByteBuffer view, int size) {
+		if (mSink == null || size <= 0) {
+			return;
+		}
+		view.clear();
+		view.limit(size);
+		if (mSinkPartialFrame.position() > 0) {
+			if (!completePartialFrame(view)) {
+				return;
+			}
+			mSinkPartialFrame.flip();
+			writeFrames(mSinkPartialFrame);
+			mSinkPartialFrame.clear();
+		}
+		int start = view.position();
+		int end = start;
+		while (end + Mp3FrameHeader.HEADER_SIZE <= size) {
+			int length = Mp3FrameHeader.frameLength(view.getInt(end));
+			if (length == 0) {
+				// 不是帧头,不再拆分
+				end = size;
+				break;
+			}
+			if (end + length > size) {
+				break;
+			}
+			end += length;
+		}
+		if (end > start) {
+			view.limit(end);
+			writeFrames(view);
+		}
+		if (end < size) {
+			view.limit(size);
+			view.position(end);
+			mSinkPartialFrame.put(view);
+		}
+	}
+
+	/**
+	 * Move bytes from view into mSinkPartialFrame until it holds a whole frame.
+	 * @return whether the frame is complete
+	 */
+	private boolean completePartialFrame(ByteBuffer view) {
+		while (view.hasRemaining()) {
+			int missing;
+			if (mSinkPartialFrame.position() < Mp3FrameHeader.HEADER_SIZE) {
+				missing = Mp3FrameHeader.HEADER_SIZE - mSinkPartialFrame.position();
+			} else {
+				int length = Mp3FrameHeader.frameLength(mSinkPartialFrame.getInt(0));
+				missing = length - mSinkPartialFrame.position();
+				if (missing <= 0) {
+					return true;
+				}
+			}
+			int n = Math.min(missing, view.remaining());
+			ByteBuffer part = view.duplicate();
+			part.limit(part.position() + n);
+			mSinkPartialFrame.put(part);
+			view.position(view.position() + n);
+		}
+		return mSinkPartialFrame.position() >= Mp3FrameHeader.HEADER_SIZE
+				&& mSinkPartialFrame.position() >= Mp3FrameHeader.frameLength(mSinkPartialFrame.getInt(0));
+	}
+
+	/**
+	 * @param frames whole frames from position to limit
+	 */
+	private void writeFrames(ByteBuffer frames) {
+		if (mSink == null) {
+			// 前面的写入失败,sink已关闭
+			return;
+		}
+		if (mSinkSkipsTag) {
+			mSinkSkipsTag = false;
+			frames.position(frames.position() + tagFrameLength(frames));
+			if (!frames.hasRemaining()) {
+				return;
+			}
+		}
+		try {
+			mSink.write(frames);
+		} catch (IOException e) {
+			// 输出失败不影响编码和文件
+			e.printStackTrace();
+			closeSink();
+		}
+	}
+
+	/**
+	 * @return length of the placeholder frame (header, then nothing but zeros) the frames
+	 * start with, 0 if they start with audio
+	 */
+	private static int tagFrameLength(ByteBuffer frames) {
+		int start = frames.position();
+		if (frames.remaining() < Mp3FrameHeader.HEADER_SIZE) {
+			return 0;
+		}
+		int length = Mp3FrameHeader.frameLength(frames.getInt(start));
+		if (length == 0 || length > frames.remaining()) {
+			return 0;
+		}
+		for (int i = start + Mp3FrameHeader.HEADER_SIZE; i < start + length; i++) {
+			if (frames.get(i) != 0) {
+				return 0;
+			}
+		}
+		return length;
+	}
+
+	private void closeEncoder() {
+		if (mSharedEncoder && LameUtil.getEncoder() == mEncoder) {
+			// LameUtil不能继续使用已释放的编码器
+			LameUtil.close();
+		} else {
+			mEncoder.close();
+		}
+	}
+
+	private void closeSink() {
+		if (mSink == null) {
+			return;
+		}
+		EncodedSink sink = mSink;
+		mSink = null;
+		try {
+			sink.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write the last bytes of the current file, fill in the Xing/Info frame at its start,
+	 * write the seek index if one is recorded and close it. The journal is only deleted if
+	 * all of that succeeded, otherwise the file is left for recovery.
+	 * @param flushResult bytes in mMp3Buffer from flushing the encoder
+	 */
+	private void finishFile(int flushResult) {
+		boolean finished = false;
+		try {
+			if (flushResult > 0) {
+				if (mSeekIndex != null) {
+					mSeekIndex.append(mMp3Buffer, 0, flushResult);
+				}
+				mWriter.append(mMp3Buffer, 0, flushResult);
+			}
+			mWriter.finish();
+			// 第二段起的流紧接上一段,前面没有编码延迟
+			writeLameTag(mEncoder, mFileOutputStream.getChannel(), mMp3Buffer, mSegmentIndex > 0);
+			finished = true;
+			if (mSeekIndex != null) {
+				mSeekIndex.build().write(mSeekIndexFile);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}finally{
+			if (mFileOutputStream != null) {
+				try {
+					mFileOutputStream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			closeJournal(finished);
+		}
+		if (mSegments != null) {
 			try {
-				mFileOutputStream.write(mMp3Buffer, 0, flushResult);
+				mSegments.addSegment(mFile);
+				mSegments.write();
 			} catch (IOException e) {
 				e.printStackTrace();
-			}finally{
-				if (mFileOutputStream != null) {
-					try {
-						mFileOutputStream.close();
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				}
-				LameUtil.close();
 			}
 		}
 	}
-	private List<Task> mTasks = Collections.synchronizedList(new ArrayList<Task>());
-	public void addTask(short[] rawData, int readSize){
-		mTasks.add(new Task(rawData, readSize));
+
+	private void closeJournal(boolean delete) {
+		if (mJournal == null) {
+			return;
+		}
+		try {
+			mJournal.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (delete) {
+			mJournalFile.delete();
+		}
+		mJournal = null;
 	}
-	private class Task{
-		private short[] rawData;
-		private int readSize;
-		public Task(short[] rawData, int readSize){
-			this.rawData = rawData.clone();
-			this.readSize = readSize;
+
+	/**
+	 * Overwrite the placeholder frame LAME wrote at the start of the stream with the
+	 * finished Xing/Info frame, so players get duration and seek table without a scan.
+	 * The channel position is left unchanged.
+	 * @param encoder flushed encoder
+	 * @param channel the file, stream starting at position 0
+	 * @param buffer scratch buffer, at least one frame long
+	 * @param continuation the stream continues the previous file of a
+	 * 			{@link Mp3Encoder#flushNoGap(byte[]) gapless} split; its tag gets no encoder delay
+	 * @throws IOException write failed
+	 */
+	static void writeLameTag(Mp3Encoder encoder, FileChannel channel, byte[] buffer,
+			boolean continuation) throws IOException {
+		int size = encoder.getLameTagFrame(buffer);
+		if (size <= 0 || size > buffer.length) {
+			return;
 		}
-		public short[] getData(){
-			return rawData;
+		if (continuation && LameTag.hasLameExtension(buffer, size)) {
+			LameTag.setDelayAndPadding(buffer, size, 0, LameTag.getPadding(buffer));
 		}
-		public int getReadSize(){
-			return readSize;
+		ByteBuffer frame = ByteBuffer.wrap(buffer, 0, size);
+		while (frame.hasRemaining()) {
+			channel.write(frame, frame.position());
+		}
+	}
+
+	/**
+	 * Capture thread to encoder thread handoff, the capture thread is the only producer
+	 */
+	private final SpscQueue<PcmChunk> mTasks;
+	/**
+	 * addTask(short[], int)未能入队的块,采集线程下次复用
+	 */
+	private PcmChunk mSpareChunk;
+
+	/**
+	 * Take a free chunk for the capture thread to read into.
+	 * Hand it over through {@link #addTask(PcmChunk)} once filled; a chunk that
+	 * ends up unused should be kept for the next read rather than given back.
+	 * @return free chunk from the pool
+	 */
+	public PcmChunk obtainChunk() {
+		return mChunkPool.obtain();
+	}
+
+	/**
+	 * Queue a filled chunk for encoding. Never blocks.
+	 * @param chunk chunk
+	 * @return false if the queue was full and the chunk was dropped
+	 */
+	public boolean addTask(PcmChunk chunk) {
+		if (!mTasks.offer(chunk)) {
+			return false;
+		}
+		wakeIfBatchReady();
+		return true;
+	}
+
+	private void wakeIfBatchReady() {
+		if (mWaiting && mTasks.size() >= mPolicy.getBatchSize()) {
+			LockSupport.unpark(this);
 		}
 	}
+
+	/**
+	 * Copy rawData into a pooled chunk and queue it. Never blocks.
+	 * @param rawData rawData
+	 * @param readSize readSize, at most the chunk size
+	 * @return false if the queue was full and the samples were dropped
+	 */
+	public boolean addTask(short[] rawData, int readSize){
+		if (readSize < 0 || readSize > mChunkPool.getChunkSize()) {
+			throw new IllegalArgumentException("readSize " + readSize + " exceeds chunk size " + mChunkPool.getChunkSize());
+		}
+		// 队列满时没用上的块留给下一次,归还只能在编码线程进行
+		PcmChunk chunk = mSpareChunk != null ? mSpareChunk : mChunkPool.obtain();
+		mSpareChunk = null;
+		if (chunk.isDirect()) {
+			ByteBuffer data = chunk.getDirectData();
+			for (int i = 0; i < readSize; i++) {
+				data.putShort(i << 1, rawData[i]);
+			}
+		} else {
+			System.arraycopy(rawData, 0, chunk.getData(), 0, readSize);
+		}
+		chunk.setReadSize(readSize);
+		if (!addTask(chunk)) {
+			mSpareChunk = chunk;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of chunks waiting to be encoded
+	 */
+	public int getQueueDepth() {
+		return mTasks.size();
+	}
+
+	/**
+	 * @return maximum number of chunks waiting to be encoded
+	 */
+	public int getQueueCapacity() {
+		return mTasks.capacity();
+	}
+
+	/**
+	 * @return largest number of chunks ever waiting at once
+	 */
+	public int getQueueHighWaterMark() {
+		return mTasks.getHighWaterMark();
+	}
+
+	/**
+	 * @return number of chunks dropped because the encoder was too far behind
+	 */
+	public long getQueueOverflowCount() {
+		return mTasks.getOverflowCount();
+	}
 }
@@ -0,0 +1,56 @@
+package com.czt.mp3recorder;
+
+/**
+ * Controls how the encode loop in {@link DataEncodeThread} trades latency
+ * against throughput.
+ * <p>
+ * The loop sleeps until at least {@link #getBatchSize()} chunks are queued or
+ * {@link #getMaxLatencyMillis()} has passed, then encodes up to
+ * {@link #getMaxChunksPerWakeup()} chunks before checking again.
+ */
+public class EncodePolicy {
+    /**
+     * 每块数据到达立即编码
+     */
+    public static final EncodePolicy LOW_LATENCY = new EncodePolicy(1, 20, Integer.MAX_VALUE);
+    /**
+     * 默认策略
+     */
+    public static final EncodePolicy BALANCED = new EncodePolicy(2, 100, Integer.MAX_VALUE);
+    /**
+     * 攒够多块数据再编码,减少线程唤醒次数
+     */
+    public static final EncodePolicy THROUGHPUT = new EncodePolicy(8, 500, Integer.MAX_VALUE);
+
+    private final int batchSize;
+    private final long maxLatencyMillis;
+    private final int maxChunksPerWakeup;
+
+    /**
+     * Constructor
+     *
+     * @param batchSize          number of queued chunks that wakes the encoder early
+     * @param maxLatencyMillis   longest the encoder sleeps while data is pending
+     * @param maxChunksPerWakeup upper bound of chunks encoded before sleeping again
+     */
+    public EncodePolicy(int batchSize, long maxLatencyMillis, int maxChunksPerWakeup) {
+        if (batchSize <= 0 || maxLatencyMillis <= 0 || maxChunksPerWakeup < batchSize) {
+            throw new IllegalArgumentException("invalid encode policy");
+        }
+        this.batchSize = batchSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.maxChunksPerWakeup = maxChunksPerWakeup;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    public int getMaxChunksPerWakeup() {
+        return maxChunksPerWakeup;
+    }
+}
@@ -0,0 +1,28 @@
+package com.czt.mp3recorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the mp3 stream of a {@link DataEncodeThread}, besides or instead of its file.
+ * <p>
+ * {@link #write(ByteBuffer)} is called on the encode thread with whole mp3 frames, so
+ * anything slower than a memory copy holds up encoding; wrap such sinks in an
+ * {@link AsyncSink}. A {@link TeeSink} feeds several sinks from one encode. The Xing/Info
+ * frame LAME puts at the start of a file is not passed on, sinks get audio frames only.
+ */
+public interface EncodedSink extends Closeable {
+    /**
+     * @param frames whole frames from its position to its limit; only valid during the
+     *               call, its contents must be copied if kept. Consume it up to the limit.
+     * @throws IOException the output failed, the sink is closed and not written again
+     */
+    void write(ByteBuffer frames) throws IOException;
+
+    /**
+     * Called once after the last frame.
+     */
+    @Override
+    void close() throws IOException;
+}
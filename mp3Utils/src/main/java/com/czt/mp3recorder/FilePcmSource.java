@@ -0,0 +1,273 @@
+package com.czt.mp3recorder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link PcmSource} streaming 16 bit little-endian PCM from a WAV or headerless raw file.
+ * The file is read through one reusable buffer, so sources of any length use constant memory.
+ */
+public class FilePcmSource implements PcmSource {
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final File mFile;
+    private final boolean mWav;
+    private final int mBufferSize;
+    private int mSampleRate;
+    private int mChannelCount;
+    private long mDataOffset;
+    private long mDataLength;
+    private FileInputStream mInputStream;
+    private FileChannel mChannel;
+    private ByteBuffer mByteBuffer;
+    private long mRemaining;
+
+    private FilePcmSource(File file, boolean wav, int sampleRate, int channelCount, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        mFile = file;
+        mWav = wav;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mBufferSize = bufferSize;
+    }
+
+    /**
+     * Open a RIFF/WAVE file, format is read from its header.
+     *
+     * @param file 16 bit PCM wav file
+     * @return source
+     * @throws IOException file missing or not 16 bit PCM
+     */
+    public static FilePcmSource wav(File file) throws IOException {
+        return wav(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    public static FilePcmSource wav(File file, int bufferSize) throws IOException {
+        FilePcmSource source = new FilePcmSource(file, true, 0, 0, bufferSize);
+        source.readWavHeader();
+        return source;
+    }
+
+    /**
+     * Open a headerless file of interleaved 16 bit little-endian samples.
+     *
+     * @param file         raw pcm file
+     * @param sampleRate   sample rate in Hz
+     * @param channelCount channel count
+     * @return source
+     */
+    public static FilePcmSource raw(File file, int sampleRate, int channelCount) {
+        return raw(file, sampleRate, channelCount, DEFAULT_BUFFER_SIZE);
+    }
+
+    public static FilePcmSource raw(File file, int sampleRate, int channelCount, int bufferSize) {
+        if (sampleRate <= 0 || channelCount <= 0) {
+            throw new IllegalArgumentException("sampleRate and channelCount must be positive");
+        }
+        FilePcmSource source = new FilePcmSource(file, false, sampleRate, channelCount, bufferSize);
+        source.mDataOffset = 0;
+        source.mDataLength = file.length();
+        return source;
+    }
+
+    /**
+     * Open an independent source over part of this file's samples, e.g. to read
+     * several pieces of one file on different threads.
+     *
+     * @param fromSample  first sample (all channels), counted from the start of the audio data
+     * @param sampleCount number of samples (all channels), cut short at the end of the file
+     * @return source, not started
+     */
+    public FilePcmSource range(long fromSample, long sampleCount) {
+        if (fromSample < 0 || sampleCount < 0) {
+            throw new IllegalArgumentException("fromSample and sampleCount must not be negative");
+        }
+        FilePcmSource source = new FilePcmSource(mFile, mWav, mSampleRate, mChannelCount, mBufferSize);
+        long from = Math.min(fromSample * 2, mDataLength);
+        source.mDataOffset = mDataOffset + from;
+        source.mDataLength = Math.min(sampleCount * 2, mDataLength - from);
+        return source;
+    }
+
+    private void readWavHeader() throws IOException {
+        FileInputStream in = new FileInputStream(mFile);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header);
+            if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) {//"RIFF" "WAVE"
+                throw new IOException("Not a RIFF/WAVE file: " + mFile);
+            }
+            ByteBuffer chunk = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer fmt = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            boolean haveFormat = false;
+            long position = 12;
+            while (true) {
+                chunk.clear();
+                channel.position(position);
+                readFully(channel, chunk);
+                int id = chunk.getInt(0);
+                long size = chunk.getInt(4) & 0xFFFFFFFFL;
+                position += 8;
+                if (id == 0x20746d66) {//"fmt "
+                    fmt.clear();
+                    readFully(channel, fmt);
+                    int format = fmt.getShort(0) & 0xFFFF;
+                    int bitsPerSample = fmt.getShort(14) & 0xFFFF;
+                    if ((format != WAVE_FORMAT_PCM && format != WAVE_FORMAT_EXTENSIBLE) || bitsPerSample != 16) {
+                        throw new IOException("Only 16 bit PCM wav is supported: " + mFile);
+                    }
+                    mChannelCount = fmt.getShort(2) & 0xFFFF;
+                    mSampleRate = fmt.getInt(4);
+                    haveFormat = true;
+                } else if (id == 0x61746164) {//"data"
+                    if (!haveFormat) {
+                        throw new IOException("wav data chunk before fmt chunk: " + mFile);
+                    }
+                    mDataOffset = position;
+                    mDataLength = Math.min(size, channel.size() - position);
+                    return;
+                }
+                // chunks are word aligned
+                position += size + (size & 1);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    /**
+     * @return total number of samples (all channels) in the file
+     */
+    public long getTotalSamples() {
+        return mDataLength / 2;
+    }
+
+    @Override
+    public boolean isRealtime() {
+        return false;
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (mChannel != null) {
+            return;
+        }
+        mInputStream = new FileInputStream(mFile);
+        mChannel = mInputStream.getChannel();
+        mChannel.position(mDataOffset);
+        mRemaining = mDataLength;
+        if (mByteBuffer == null) {
+            mByteBuffer = ByteBuffer.allocateDirect(mBufferSize * 2).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    @Override
+    public void onCaptureThreadStart() {
+        // nothing to do
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int size) throws IOException {
+        if (mRemaining < 2) {
+            return END_OF_STREAM;
+        }
+        int bytes = (int) Math.min(Math.min(size, mBufferSize) * 2L, mRemaining & ~1L);
+        mByteBuffer.clear();
+        mByteBuffer.limit(bytes);
+        while (mByteBuffer.hasRemaining()) {
+            if (mChannel.read(mByteBuffer) < 0) {
+                break;
+            }
+        }
+        mByteBuffer.flip();
+        int samples = mByteBuffer.remaining() / 2;
+        if (samples == 0) {
+            mRemaining = 0;
+            return END_OF_STREAM;
+        }
+        for (int i = 0; i < samples; i++) {
+            buffer[offset + i] = mByteBuffer.getShort(i << 1);
+        }
+        mRemaining -= samples * 2;
+        return samples;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int size) throws IOException {
+        if (mRemaining < 2) {
+            return END_OF_STREAM;
+        }
+        int bytes = (int) Math.min(Math.min(size * 2L, buffer.capacity()), mRemaining & ~1L);
+        buffer.clear();
+        buffer.limit(bytes);
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer) < 0) {
+                break;
+            }
+        }
+        int samples = buffer.position() / 2;
+        if (samples == 0) {
+            mRemaining = 0;
+            return END_OF_STREAM;
+        }
+        mRemaining -= samples * 2;
+        if (buffer.order() != ByteOrder.LITTLE_ENDIAN) {
+            // file data is little-endian, swap in place for a big-endian host
+            for (int i = 0; i < samples; i++) {
+                buffer.putShort(i << 1, Short.reverseBytes(buffer.getShort(i << 1)));
+            }
+        }
+        return samples;
+    }
+
+    @Override
+    public void stop() {
+        // a file does not run on its own, nothing to pause
+    }
+
+    @Override
+    public void release() {
+        if (mInputStream != null) {
+            try {
+                mInputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mInputStream = null;
+            mChannel = null;
+        }
+    }
+}
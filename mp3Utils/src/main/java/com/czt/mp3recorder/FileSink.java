@@ -0,0 +1,40 @@
+package com.czt.mp3recorder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the frames to a file as they come, e.g. a local copy of a streamed recording.
+ * The file has no Xing/Info frame; record with the {@link DataEncodeThread} file constructor
+ * for one with it.
+ */
+public class FileSink implements EncodedSink {
+    private final FileOutputStream mStream;
+    private final FileChannel mChannel;
+
+    /**
+     * @param file   target file
+     * @param append add to the end of an existing file rather than replacing it
+     * @throws FileNotFoundException the file could not be opened
+     */
+    public FileSink(File file, boolean append) throws FileNotFoundException {
+        mStream = new FileOutputStream(file, append);
+        mChannel = mStream.getChannel();
+    }
+
+    @Override
+    public void write(ByteBuffer frames) throws IOException {
+        while (frames.hasRemaining()) {
+            mChannel.write(frames);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mStream.close();
+    }
+}
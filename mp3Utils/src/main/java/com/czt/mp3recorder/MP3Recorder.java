@@ -1,53 +1,64 @@
 package com.czt.mp3recorder;
 
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
-
-import com.czt.mp3recorder.util.LameUtil;
+import com.czt.mp3recorder.util.Mp3Encoder;
+import com.czt.mp3recorder.util.Mp3SeekIndex;
+import com.czt.mp3recorder.util.RecordingJournal;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Records PCM from a {@link PcmSource} (the microphone by default) into an mp3 file.
+ */
 public class MP3Recorder {
-    //=======================AudioRecord Default Settings=======================
-    private static final int DEFAULT_AUDIO_SOURCE = MediaRecorder.AudioSource.MIC;
+
     /**
-     * 以下三项为默认配置参数。Google Android文档明确表明只有以下3个参数是可以在所有设备上保证支持的。
+     * 非实时数据源等待编码线程腾出队列空间的间隔
      */
-    private static final int DEFAULT_SAMPLING_RATE = 44100;//模拟器仅支持从麦克风输入8kHz采样率
-    private static final int DEFAULT_CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
+    private static final long QUEUE_FULL_BACKOFF_NANOS = 200000;
+
+    private final PcmSource mPcmSource;
+    private final RecorderConfig mConfig;
+    private int mBufferSize;
+    private Thread mCaptureThread;
+    private DataEncodeThread mEncodeThread;
+    private EncodePolicy mEncodePolicy = EncodePolicy.BALANCED;
+    private volatile boolean isRecording = false;
+    private volatile boolean isPausing = false;//是否暂停
+    private volatile boolean mStopAudioRecordOnPause = false;
     /**
-     * 下面是对此的封装
-     * private static final int DEFAULT_AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
+     * 暂停时采集线程在此等待,恢复或停止时唤醒
      */
-    private static final PCMFormat DEFAULT_AUDIO_FORMAT = PCMFormat.PCM_16BIT;
-
-    //======================Lame Default Settings=====================
-    private static final int DEFAULT_LAME_MP3_QUALITY = 7;
+    private final Object mPauseLock = new Object();
+    private File mRecordFile;
     /**
-     * 与DEFAULT_CHANNEL_CONFIG相关，因为是mono单声，所以是1
+     * 已交给编码线程的帧数(每声道采样数),只由采集线程写入
      */
-    private static final int DEFAULT_LAME_IN_CHANNEL = 1;
+    private volatile long mRecordedFrames;
+    private volatile DurationListener mDurationListener;
+    private volatile long mDurationIntervalNanos;
+    private Mp3FileWriter.SpaceListener mSpaceListener;
+    private long mSpaceWarnSeconds;
     /**
-     * Encoded bit rate. MP3 file will be encoded with bit rate 32kbps
+     * 下一次录音除文件外的输出,开始录音时交给编码线程
      */
-    private static final int DEFAULT_LAME_MP3_BIT_RATE = 32;
-
-    //==================================================================
+    private final List<EncodedSink> mSinks = new ArrayList<>();
 
     /**
-     * 自定义 每160帧作为一个周期，通知一下需要进行编码
+     * Receives the recorded duration while recording, see
+     * {@link #setDurationListener(DurationListener, long)}.
      */
-    private static final int FRAME_COUNT = 160;
-    private AudioRecord mAudioRecord = null;
-    private int mBufferSize;
-    private short[] mPCMBuffer;
-    private DataEncodeThread mEncodeThread;
-    private boolean isRecording = false;
-    private boolean isPausing = false;//是否暂停
-    private File mRecordFile;
-    private int audioResource;
+    public interface DurationListener {
+        /**
+         * Called on the capture thread; post to the UI thread from here and keep it short.
+         *
+         * @param durationMillis audio handed to the encoder so far
+         */
+        void onDurationChanged(long durationMillis);
+    }
 
     /**
      * Default constructor. Setup recorder with default sampling rate 1 channel,
@@ -56,70 +67,254 @@ public class MP3Recorder {
      * @param recordFile target file
      */
     public MP3Recorder(File recordFile) {
-        mRecordFile = recordFile;
-        audioResource = DEFAULT_AUDIO_SOURCE;
+        this(recordFile, RecorderConfig.DEFAULT);
     }
 
     public MP3Recorder(File recordFile, int audio_resource) {
+        this(recordFile, RecorderConfig.DEFAULT.buildUpon().setAudioSource(audio_resource).build());
+    }
+
+    /**
+     * Record from the microphone with the given settings.
+     *
+     * @param recordFile target file
+     * @param config     e.g. {@link RecorderConfig#SPEECH_LOW_CPU}
+     * @throws IllegalArgumentException the device cannot record with this config
+     */
+    public MP3Recorder(File recordFile, RecorderConfig config) {
+        this(recordFile, new AudioRecordPcmSource(config), config);
+    }
+
+    /**
+     * Record from any PCM source, e.g. a file or a synthetic signal when running without a device.
+     *
+     * @param recordFile target file
+     * @param pcmSource  16 bit pcm source, mono or interleaved stereo
+     */
+    public MP3Recorder(File recordFile, PcmSource pcmSource) {
+        this(recordFile, pcmSource, RecorderConfig.DEFAULT);
+    }
+
+    /**
+     * @param recordFile target file
+     * @param pcmSource  16 bit pcm source, mono or interleaved stereo
+     * @param config     encoder and buffer settings; the sample rate and channels of the
+     *                   source take precedence over the capture settings in it
+     */
+    public MP3Recorder(File recordFile, PcmSource pcmSource, RecorderConfig config) {
+        if (pcmSource.getChannelCount() != 1 && pcmSource.getChannelCount() != 2) {
+            throw new IllegalArgumentException("Only mono and stereo sources are supported");
+        }
         mRecordFile = recordFile;
-        audioResource = audio_resource;
+        mPcmSource = pcmSource;
+        mConfig = config;
+    }
+
+    public RecorderConfig getConfig() {
+        return mConfig;
     }
 
     /**
      * Start recording. Create an encoding thread. Start record from this
      * thread.
      *
-     * @throws IOException initAudioRecorder throws
+     * @throws IOException the source or the target file could not be opened
      */
     public void startRecording() throws IOException {
         if (isRecording) {
             return;
         }
         isRecording = true; // 提早，防止init或startRecording被多次调用
-        initAudioRecorder();
-        mAudioRecord.startRecording();
-        new Thread() {
+        isPausing = false;
+        mRecordedFrames = 0;
+        try {
+            initEncoder();
+            mPcmSource.start();
+        } catch (IOException e) {
+            abortStart();
+            throw e;
+        } catch (RuntimeException e) {
+            abortStart();
+            throw e;
+        }
+        mCaptureThread = new Thread("MP3Recorder") {
             @Override
             public void run() {
-                isPausing = false;
-                //设置线程权限
-                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
-                while (isRecording) {
-                    if (!isPausing) {//不是暂停就写入,否则什么都不做
-                        int readSize = mAudioRecord.read(mPCMBuffer, 0, mBufferSize);
-                        if (readSize > 0) {
-                            mEncodeThread.addTask(mPCMBuffer, readSize);
-                            calculateRealVolume(mPCMBuffer, readSize);
-                        }
-                    }
+                mPcmSource.onCaptureThreadStart();
+                try {
+                    captureLoop();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
-                // release and finalize audioRecord
-                mAudioRecord.stop();
-                mAudioRecord.release();
-                mAudioRecord = null;
+                isRecording = false;
+                DurationListener listener = mDurationListener;
+                if (listener != null) {
+                    listener.onDurationChanged(getDurationMillis());
+                }
+                // release and finalize the source
+                mPcmSource.stop();
+                mPcmSource.release();
                 // stop the encoding thread and try to wait
                 // until the thread finishes its job
                 mEncodeThread.sendStopMessage();
             }
 
+            private void captureLoop() throws IOException {
+                int channelCount = mPcmSource.getChannelCount();
+                long lastReport = System.nanoTime();
+                PcmChunk chunk = null;
+                while (isRecording) {
+                    if (isPausing) {//暂停时挂起线程,直到继续或停止
+                        waitWhilePaused();
+                        continue;
+                    }
+                    if (chunk == null) {
+                        chunk = mEncodeThread.obtainChunk();
+                    }
+                    int readSize = chunk.isDirect()
+                            ? mPcmSource.read(chunk.getDirectData(), mBufferSize)
+                            : mPcmSource.read(chunk.getData(), 0, mBufferSize);
+                    if (readSize == PcmSource.END_OF_STREAM) {
+                        break;
+                    }
+                    if (readSize > 0) {
+                        chunk.setReadSize(readSize);
+                        calculateRealVolume(chunk, readSize);
+                        if (!mPcmSource.isRealtime()) {
+                            waitForQueueRoom();
+                        }
+                        if (mEncodeThread.addTask(chunk)) {
+                            chunk = null;
+                            mRecordedFrames += readSize / channelCount;
+                            DurationListener listener = mDurationListener;
+                            long now = System.nanoTime();
+                            if (listener != null && now - lastReport >= mDurationIntervalNanos) {
+                                lastReport = now;
+                                listener.onDurationChanged(getDurationMillis());
+                            }
+                        }//队列已满时丢弃这一块,缓冲区留给下一次读取,也不计入时长
+                    }
+                }
+            }
+
+            /**
+             * A source that is not realtime is throttled to the encoder instead of losing data.
+             */
+            private void waitForQueueRoom() {
+                while (isRecording && mEncodeThread.getQueueDepth() >= mEncodeThread.getQueueCapacity()) {
+                    LockSupport.parkNanos(QUEUE_FULL_BACKOFF_NANOS);
+                }
+            }
+
+            /**
+             * Park the capture thread until {@link #resumeRecording()} or
+             * {@link #stopRecording()}, optionally stopping the source meanwhile.
+             */
+            private void waitWhilePaused() throws IOException {
+                boolean stopped = false;
+                if (mStopAudioRecordOnPause) {
+                    mPcmSource.stop();
+                    stopped = true;
+                }
+                boolean interrupted = false;
+                synchronized (mPauseLock) {
+                    while (isPausing && isRecording) {
+                        try {
+                            mPauseLock.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (stopped && isRecording) {
+                    mPcmSource.start();
+                }
+            }
+
             /**
              * 此计算方法来自samsung开发范例
              *
-             * @param buffer buffer
+             * @param chunk chunk
              * @param readSize readSize
              */
-            private void calculateRealVolume(short[] buffer, int readSize) {
+            private void calculateRealVolume(PcmChunk chunk, int readSize) {
                 double sum = 0;
                 for (int i = 0; i < readSize; i++) {
                     // 这里没有做运算的优化，为了更加清晰的展示代码
-                    sum += buffer[i] * buffer[i];
+                    short sample = chunk.getSample(i);
+                    sum += sample * sample;
                 }
                 if (readSize > 0) {
                     double amplitude = sum / readSize;
                     mVolume = (int) Math.sqrt(amplitude);
                 }
             }
-        }.start();
+        };
+        mCaptureThread.start();
+    }
+
+    private void abortStart() {
+        isRecording = false;
+        if (mEncodeThread != null) {
+            if (mEncodeThread.getState() == Thread.State.NEW) {
+                // 编码线程未启动,由这里关闭编码器和文件
+                mEncodeThread.release();
+            } else {
+                mEncodeThread.sendStopMessage();
+            }
+        }
+        mPcmSource.release();
+    }
+
+    /**
+     * Block until capture has ended (after {@link #stopRecording()} or the end of a finite
+     * source) and the encoder has finished writing the file.
+     *
+     * @throws InterruptedException interrupted while waiting
+     */
+    public void waitForCompletion() throws InterruptedException {
+        if (mCaptureThread != null) {
+            mCaptureThread.join();
+        }
+        if (mEncodeThread != null) {
+            mEncodeThread.join();
+        }
+    }
+
+    /**
+     * @return frames (samples per channel) handed to the encoder in this recording,
+     * pauses and chunks dropped on overflow are not counted
+     */
+    public long getRecordedFrames() {
+        return mRecordedFrames;
+    }
+
+    /**
+     * Exact duration of the audio in the file, counted from the samples given to the encoder.
+     *
+     * @return recorded duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return mRecordedFrames * 1000 / mPcmSource.getSampleRate();
+    }
+
+    /**
+     * Report the recorded duration while recording. Reports only follow newly captured
+     * audio, so nothing is reported while paused, and come at most once per interval;
+     * a last report with the final duration follows the end of capture.
+     *
+     * @param listener       listener, null to remove
+     * @param intervalMillis minimum time between two reports
+     */
+    public void setDurationListener(DurationListener listener, long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("intervalMillis must not be negative");
+        }
+        mDurationIntervalNanos = intervalMillis * 1000000L;
+        mDurationListener = listener;
     }
 
     private int mVolume;
@@ -139,7 +334,9 @@ public class MP3Recorder {
      * @throws IOException
      */
     public void pauseRecording() {
-        isPausing = true;
+        synchronized (mPauseLock) {
+            isPausing = true;
+        }
     }
 
     /**
@@ -148,7 +345,73 @@ public class MP3Recorder {
      * @throws IOException
      */
     public void resumeRecording() {
-        isPausing = false;
+        synchronized (mPauseLock) {
+            isPausing = false;
+            mPauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the segments written so far by a {@link RecorderConfig#isSegmented() segmented}
+     * recording, complete after {@link #waitForCompletion()}; null if not segmented or not started
+     */
+    public SegmentManifest getSegmentManifest() {
+        return mEncodeThread != null ? mEncodeThread.getSegmentManifest() : null;
+    }
+
+    /**
+     * Also send the next recording to sink while it is saved, e.g. a live stream. The sink
+     * runs behind its own buffer and thread, so it can never hold up the encoder; it is
+     * closed when that recording ends. Call before {@link #startRecording()}, once per sink.
+     *
+     * @param sink        receives whole mp3 frames
+     * @param bufferBytes most bytes buffered for the sink
+     * @param policy      what to give up when the sink falls that far behind
+     * @return the buffered sink, for its drop counts and error
+     */
+    public AsyncSink addSink(EncodedSink sink, int bufferBytes, AsyncSink.OverflowPolicy policy) {
+        AsyncSink async = new AsyncSink(sink, bufferBytes, policy);
+        mSinks.add(async);
+        return async;
+    }
+
+    /**
+     * Get warned while recording when the storage will soon be full. Takes effect at the
+     * next {@link #startRecording()}.
+     *
+     * @param listener    called on the writer thread, null to stop watching
+     * @param warnSeconds warn when less than this many seconds of audio still fit
+     */
+    public void setSpaceListener(Mp3FileWriter.SpaceListener listener, long warnSeconds) {
+        if (warnSeconds < 0) {
+            throw new IllegalArgumentException("warnSeconds must not be negative");
+        }
+        mSpaceListener = listener;
+        mSpaceWarnSeconds = warnSeconds;
+    }
+
+    /**
+     * 设置编码线程的批处理策略,默认{@link EncodePolicy#BALANCED}
+     *
+     * @param policy latency/throughput policy of the encode loop
+     */
+    public void setEncodePolicy(EncodePolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy == null");
+        }
+        mEncodePolicy = policy;
+        if (mEncodeThread != null) {
+            mEncodeThread.setEncodePolicy(policy);
+        }
+    }
+
+    /**
+     * 暂停期间是否停止AudioRecord。停止后不占用麦克风,但继续录音时需要重新启动
+     *
+     * @param stopAudioRecordOnPause true to stop the AudioRecord while paused, default false
+     */
+    public void setStopAudioRecordOnPause(boolean stopAudioRecordOnPause) {
+        mStopAudioRecordOnPause = stopAudioRecordOnPause;
     }
 
     /**
@@ -184,45 +447,58 @@ public class MP3Recorder {
     }
 
     public void stopRecording() {
-        isRecording = false;
+        synchronized (mPauseLock) {
+            isRecording = false;
+            mPauseLock.notifyAll();
+        }
     }
 
     /**
-     * Initialize audio recorder
+     * Initialize lame and the encoding thread
      */
-    private void initAudioRecorder() throws IOException {
-        mBufferSize = AudioRecord.getMinBufferSize(DEFAULT_SAMPLING_RATE,
-                DEFAULT_CHANNEL_CONFIG, DEFAULT_AUDIO_FORMAT.getAudioFormat());
-
-        int bytesPerFrame = DEFAULT_AUDIO_FORMAT.getBytesPerFrame();
-        /* Get number of samples. Calculate the buffer size
-         * (round up to the factor of given frame size)
-		 * 使能被整除，方便下面的周期性通知
-		 * */
-        int frameSize = mBufferSize / bytesPerFrame;
-        if (frameSize % FRAME_COUNT != 0) {
-            frameSize += (FRAME_COUNT - frameSize % FRAME_COUNT);
-            mBufferSize = frameSize * bytesPerFrame;
-        }
-		
-		/* Setup audio recorder */
-        mAudioRecord = new AudioRecord(audioResource,
-                DEFAULT_SAMPLING_RATE, DEFAULT_CHANNEL_CONFIG, DEFAULT_AUDIO_FORMAT.getAudioFormat(),
-                mBufferSize);
-
-        mPCMBuffer = new short[mBufferSize];
+    private void initEncoder() throws IOException {
+        mBufferSize = mPcmSource.getBufferSize();
 		/*
 		 * Initialize lame buffer
-		 * mp3 sampling rate is the same as the recorded pcm sampling rate 
-		 * The bit rate is 32kbps
+		 * mp3 sampling rate is the configured output rate, by default the recorded pcm sampling rate
+		 * The bit rate is 32kbps CBR unless configured otherwise, VBR/ABR see RecorderConfig
 		 * 
 		 */
-        LameUtil.init(DEFAULT_SAMPLING_RATE, DEFAULT_LAME_IN_CHANNEL, DEFAULT_SAMPLING_RATE, DEFAULT_LAME_MP3_BIT_RATE, DEFAULT_LAME_MP3_QUALITY);
+        // 每个录音使用独立的编码器,多个录音可以同时进行
+        Mp3Encoder encoder = mConfig.newEncoderBuilder(mPcmSource.getSampleRate(), mPcmSource.getChannelCount())
+                .build();
+        // 分段录音时先写第一段,文件名由清单根据mRecordFile生成
+        SegmentManifest segments = mConfig.isSegmented() ? new SegmentManifest(mRecordFile) : null;
+        File file = segments != null ? segments.getSegmentFile(0) : mRecordFile;
         // Create and run thread used to encode data
-        // The thread will
-        mEncodeThread = new DataEncodeThread(mRecordFile, mBufferSize);
+        // The thread drains the queue on its own, no AudioRecord notifications needed
+        try {
+            mEncodeThread = new DataEncodeThread(file, encoder, mBufferSize,
+                    mConfig.getPoolCapacity(), mConfig.isDirectBuffers());
+        } catch (IOException e) {
+            encoder.close();
+            throw e;
+        }
+        mEncodeThread.setEncodePolicy(mEncodePolicy);
+        if (!mSinks.isEmpty()) {
+            // 一次编码同时写文件和所有输出
+            mEncodeThread.setSink(mSinks.size() == 1 ? mSinks.get(0)
+                    : new TeeSink(mSinks.toArray(new EncodedSink[mSinks.size()])));
+            mSinks.clear();
+        }
+        if (segments != null) {
+            mEncodeThread.setSegments(segments, mConfig.getSegmentMillis(), mConfig.getSegmentBytes());
+        }
+        if (mConfig.getSeekIndexMillis() > 0) {
+            mEncodeThread.setSeekIndex(Mp3SeekIndex.sidecarFile(file), mConfig.getSeekIndexMillis());
+        }
+        if (mConfig.getCheckpointMillis() > 0) {
+            mEncodeThread.setCheckpoints(RecordingJournal.journalFile(file), mConfig.getCheckpointMillis());
+        }
+        if (mConfig.getPreallocateSeconds() > 0 || mSpaceListener != null) {
+            mEncodeThread.getWriter().setPreallocation(file, mConfig.estimateBytesPerSecond(),
+                    mConfig.getPreallocateSeconds(), mSpaceWarnSeconds, mSpaceListener);
+        }
         mEncodeThread.start();
-        mAudioRecord.setRecordPositionUpdateListener(mEncodeThread, mEncodeThread.getHandler());
-        mAudioRecord.setPositionNotificationPeriod(FRAME_COUNT);
     }
-}
\ No newline at end of file
+}
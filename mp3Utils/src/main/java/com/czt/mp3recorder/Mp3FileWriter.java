@@ -0,0 +1,540 @@
+package com.czt.mp3recorder;
+
+import com.czt.mp3recorder.util.RecordingJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writer stage behind {@link DataEncodeThread}: the encoder copies its output into pooled
+ * blocks and this thread writes full blocks through a {@link FileChannel}, so a slow write
+ * never holds up encoding and the file is written in large pieces instead of one syscall
+ * per encoded chunk.
+ * <p>
+ * Blocks are sized so every write ends on an {@link #ALIGNMENT} boundary of the file. A
+ * block that is not full is written anyway once it is older than the flush interval
+ * ({@link #flushIfDue()}), which bounds how much audio sits only in memory; the next block
+ * is shortened to get back onto the boundary.
+ * <p>
+ * {@link #append(byte[], int, int)}, {@link #flushIfDue()} and {@link #finish()} must all
+ * be called from one producer thread. If every block is waiting to be written the producer
+ * waits for one, counted as a stall.
+ * <p>
+ * With {@link #setPreallocation} the file is kept extended with zeros some way ahead of the
+ * data, so a long recording grows in large contiguous pieces and a full disk shows up while
+ * preallocating rather than in the middle of a write; {@link #finish()} truncates the file
+ * to the data. With {@link #setJournal} the producer can ask for {@link #checkpoint checkpoints}:
+ * the writer fsyncs the data and notes how far it got in a {@link RecordingJournal}.
+ */
+public class Mp3FileWriter extends Thread {
+    /**
+     * filesystem block size writes are aligned to
+     */
+    public static final int ALIGNMENT = 4096;
+    public static final int DEFAULT_BLOCK_SIZE = 32 * 1024;
+    public static final int DEFAULT_BLOCK_COUNT = 16;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long STALL_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int ZERO_BUFFER_SIZE = 64 * 1024;
+    private static final long SPACE_WARNING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * Told when the storage is about to run out, on the writer thread.
+     */
+    public interface SpaceListener {
+        /**
+         * @param usableBytes free bytes on the file system plus those preallocated ahead
+         * @param secondsLeft about how many more seconds of audio fit
+         */
+        void onLowSpace(long usableBytes, long secondsLeft);
+    }
+
+    private final FileChannel mChannel;
+    private final int mBlockSize;
+    private final int mBlockCount;
+    private final long mFlushIntervalNanos;
+    /**
+     * 编码线程填满的块交给写线程,写完归还
+     */
+    private final BlockHandoff mBlocks;
+    private final long mStartPosition;
+
+    // producer side
+    private ByteBuffer mCurrent;
+    private long mCurrentSince;
+    private long mAppended;
+    private volatile Thread mStalledProducer;
+    private volatile int mStallCount;
+    private volatile long mStallNanos;
+
+    // writer side
+    private volatile IOException mError;
+    private volatile long mWriteCount;
+    private volatile long mBytesWritten;
+    private volatile long mWriteNanos;
+    private volatile long mMaxWriteNanos;
+    // preallocation, writer side
+    private File mFile;
+    private long mBytesPerSecond;
+    private long mAheadBytes;
+    private long mWarnSeconds;
+    private SpaceListener mSpaceListener;
+    private ByteBuffer mZeros;
+    private long mPreallocatedEnd;
+    private boolean mPreallocationFailed;
+    private long mLastWarningNanos;
+    // checkpoints
+    private RecordingJournal mJournal;
+    private volatile CheckpointMark mCheckpoint;
+    private CheckpointMark mCommitted;
+    private volatile boolean mJournalFailed;
+    private volatile int mCheckpointCount;
+
+    /**
+     * Writer with the default block size, block count and flush interval.
+     *
+     * @param channel  file to write, from its current position on
+     * @param position current position of the channel, for the alignment of writes
+     */
+    public Mp3FileWriter(FileChannel channel, long position) {
+        this(channel, position, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_COUNT, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param channel             file to write, from its current position on
+     * @param position            current position of the channel, for the alignment of writes
+     * @param blockSize           bytes per block, a multiple of {@link #ALIGNMENT}
+     * @param blockCount          most blocks allocated, the memory bound of a write stall
+     * @param flushIntervalMillis longest a partly filled block waits to be written
+     */
+    public Mp3FileWriter(FileChannel channel, long position, int blockSize, int blockCount, long flushIntervalMillis) {
+        super("Mp3FileWriter");
+        if (blockSize <= 0 || blockSize % ALIGNMENT != 0) {
+            throw new IllegalArgumentException("blockSize must be a positive multiple of " + ALIGNMENT);
+        }
+        if (blockCount < 2 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("blockCount must be at least 2 and flushIntervalMillis positive");
+        }
+        mChannel = channel;
+        mBlockSize = blockSize;
+        mBlockCount = blockCount;
+        mFlushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        mBlocks = new BlockHandoff(blockCount, true, this);
+        mStartPosition = position;
+    }
+
+    /**
+     * Keep the file extended ahead of the data and watch the free space. Call before
+     * {@link #start()}.
+     *
+     * @param file           the file being written, for its free space
+     * @param bytesPerSecond expected data rate, e.g. bit rate / 8
+     * @param aheadSeconds   seconds of audio to preallocate ahead of the data, 0 to only watch
+     *                       the free space
+     * @param warnSeconds    call the listener when less than this much audio still fits
+     * @param listener       low space listener, may be null
+     */
+    public void setPreallocation(File file, long bytesPerSecond, int aheadSeconds, long warnSeconds,
+                                 SpaceListener listener) {
+        if (getState() != State.NEW) {
+            throw new IllegalStateException("already started");
+        }
+        if (bytesPerSecond <= 0 || aheadSeconds < 0 || warnSeconds < 0) {
+            throw new IllegalArgumentException("invalid preallocation");
+        }
+        mFile = file;
+        mBytesPerSecond = bytesPerSecond;
+        // 按块对齐,至少一块
+        long ahead = bytesPerSecond * aheadSeconds;
+        mAheadBytes = ahead == 0 ? 0 : Math.max(mBlockSize, (ahead + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT);
+        mWarnSeconds = warnSeconds;
+        mSpaceListener = listener;
+        mPreallocatedEnd = mStartPosition;
+        if (mAheadBytes > 0 && mZeros == null) {
+            mZeros = ByteBuffer.allocateDirect(ZERO_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * A writer for another file with the same block size, block count, flush interval and
+     * preallocation as this one, e.g. for the next file of a segmented recording.
+     *
+     * @param channel  file to write, from its current position on
+     * @param position current position of the channel
+     * @param file     the file behind channel, for preallocation
+     * @return a new writer, not started
+     */
+    public Mp3FileWriter newWriter(FileChannel channel, long position, File file) {
+        Mp3FileWriter writer = new Mp3FileWriter(channel, position, mBlockSize, mBlockCount,
+                TimeUnit.NANOSECONDS.toMillis(mFlushIntervalNanos));
+        if (mFile != null) {
+            writer.mFile = file;
+            writer.mBytesPerSecond = mBytesPerSecond;
+            writer.mAheadBytes = mAheadBytes;
+            writer.mWarnSeconds = mWarnSeconds;
+            writer.mSpaceListener = mSpaceListener;
+            writer.mPreallocatedEnd = position;
+            writer.mZeros = mZeros;
+        }
+        return writer;
+    }
+
+    /**
+     * Store {@link #checkpoint checkpoints} in this journal. Call before {@link #start()};
+     * the journal stays open, the caller closes it after {@link #finish()}.
+     */
+    public void setJournal(RecordingJournal journal) {
+        if (getState() != State.NEW) {
+            throw new IllegalStateException("already started");
+        }
+        mJournal = journal;
+    }
+
+    /**
+     * Hand everything appended so far to the writer, which fsyncs it and then stores the
+     * end offset and sample count in the journal. Returns immediately; a checkpoint still
+     * pending is replaced by this one.
+     *
+     * @param sampleCount pcm samples per channel encoded into the data appended so far
+     * @param sampleRate  rate of those samples in Hz
+     */
+    public void checkpoint(long sampleCount, int sampleRate) {
+        if (mJournal == null) {
+            throw new IllegalStateException("no journal set");
+        }
+        if (mJournalFailed) {
+            return;
+        }
+        flush();
+        mCheckpoint = new CheckpointMark(mStartPosition + mAppended, sampleCount, sampleRate);
+        mBlocks.signal();
+    }
+
+    /**
+     * Copy encoded bytes into the current block, handing full blocks to the writer.
+     *
+     * @param data   encoded bytes
+     * @param offset start in data
+     * @param length number of bytes
+     */
+    public void append(byte[] data, int offset, int length) {
+        while (length > 0) {
+            ByteBuffer block = currentBlock();
+            int n = Math.min(length, block.remaining());
+            block.put(data, offset, n);
+            offset += n;
+            length -= n;
+            mAppended += n;
+            if (!block.hasRemaining()) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #append(byte[], int, int)} for encoded bytes in a direct buffer.
+     *
+     * @param data   bytes from index 0; its position and limit are changed
+     * @param length number of bytes
+     */
+    public void append(ByteBuffer data, int length) {
+        data.clear();
+        data.limit(length);
+        while (data.hasRemaining()) {
+            ByteBuffer block = currentBlock();
+            int n = Math.min(data.remaining(), block.remaining());
+            int end = data.position() + n;
+            data.limit(end);
+            block.put(data);
+            data.limit(length);
+            mAppended += n;
+            if (!block.hasRemaining()) {
+                submit();
+            }
+        }
+    }
+
+    private ByteBuffer currentBlock() {
+        if (mCurrent == null) {
+            ByteBuffer block = obtainBlock();
+            // 块在文件的块边界处结束
+            block.limit(mBlockSize - (int) ((mStartPosition + mAppended) % ALIGNMENT));
+            mCurrent = block;
+            mCurrentSince = System.nanoTime();
+        }
+        return mCurrent;
+    }
+
+    private ByteBuffer obtainBlock() {
+        ByteBuffer block = mBlocks.obtain(mBlockSize);
+        if (block != null) {
+            return block;
+        }
+        // 所有块都在等待写入,磁盘跟不上
+        long start = System.nanoTime();
+        mStalledProducer = Thread.currentThread();
+        while ((block = mBlocks.obtain(mBlockSize)) == null) {
+            LockSupport.parkNanos(this, STALL_PARK_NANOS);
+        }
+        mStalledProducer = null;
+        mStallCount = mStallCount + 1;
+        mStallNanos = mStallNanos + System.nanoTime() - start;
+        return block;
+    }
+
+    private void submit() {
+        ByteBuffer block = mCurrent;
+        mCurrent = null;
+        mBlocks.submit(block);
+    }
+
+    /**
+     * Hand the current block to the writer even if it is not full.
+     */
+    public void flush() {
+        if (mCurrent != null && mCurrent.position() > 0) {
+            submit();
+        }
+    }
+
+    /**
+     * {@link #flush()} if the current block has waited longer than the flush interval.
+     * Called by the encoder loop on every wakeup.
+     */
+    public void flushIfDue() {
+        if (mCurrent != null && mCurrent.position() > 0 && System.nanoTime() - mCurrentSince >= mFlushIntervalNanos) {
+            submit();
+        }
+    }
+
+    /**
+     * Write everything appended so far, cut off any preallocation and stop the writer
+     * thread. The channel is left open, positioned after the last byte.
+     *
+     * @throws IOException a write failed; later blocks were discarded
+     */
+    public void finish() throws IOException {
+        flush();
+        mBlocks.finish();
+        boolean interrupted = false;
+        while (isAlive()) {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    @Override
+    public void run() {
+        preallocate();
+        while (true) {
+            ByteBuffer block = mBlocks.poll();
+            if (block == null) {
+                if (mBlocks.isFinished()) {
+                    truncatePreallocation();
+                    return;
+                }
+                mBlocks.await(IDLE_PARK_NANOS);
+                commitCheckpoint();
+                continue;
+            }
+            write(block);
+            mBlocks.recycle(block);
+            commitCheckpoint();
+            preallocate();
+            Thread producer = mStalledProducer;
+            if (producer != null) {
+                LockSupport.unpark(producer);
+            }
+        }
+    }
+
+    private void write(ByteBuffer block) {
+        if (mError != null) {
+            return;
+        }
+        try {
+            while (block.hasRemaining()) {
+                long start = System.nanoTime();
+                int written = mChannel.write(block);
+                long nanos = System.nanoTime() - start;
+                mWriteCount = mWriteCount + 1;
+                mBytesWritten = mBytesWritten + written;
+                mWriteNanos = mWriteNanos + nanos;
+                if (nanos > mMaxWriteNanos) {
+                    mMaxWriteNanos = nanos;
+                }
+            }
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Sync and journal the pending checkpoint once the data up to it has been written.
+     */
+    private void commitCheckpoint() {
+        CheckpointMark mark = mCheckpoint;
+        if (mark == null || mark == mCommitted || mError != null || mJournalFailed
+                || mStartPosition + mBytesWritten < mark.mOffset) {
+            return;
+        }
+        mCommitted = mark;
+        try {
+            mChannel.force(false);
+            mJournal.write(mark.mOffset, mark.mSampleCount, mark.mSampleRate);
+            mCheckpointCount = mCheckpointCount + 1;
+        } catch (IOException e) {
+            // 日志写不了不影响录音本身,只是不再记录检查点
+            e.printStackTrace();
+            mJournalFailed = true;
+        }
+    }
+
+    /**
+     * Extend the file with zeros once less than half of the preallocation is left ahead
+     * of the data, then check the free space.
+     */
+    private void preallocate() {
+        if (mFile == null || mError != null) {
+            return;
+        }
+        long dataEnd = mStartPosition + mBytesWritten;
+        if (mAheadBytes > 0 && !mPreallocationFailed && mPreallocatedEnd - dataEnd < mAheadBytes / 2) {
+            long target = dataEnd + mAheadBytes;
+            try {
+                // 写入零而不是setLength:setLength只产生稀疏文件,并不占用磁盘块
+                long position = Math.max(mPreallocatedEnd, dataEnd);
+                while (position < target) {
+                    mZeros.clear();
+                    mZeros.limit((int) Math.min(mZeros.capacity(), target - position));
+                    position += mChannel.write(mZeros, position);
+                }
+                mPreallocatedEnd = target;
+            } catch (IOException e) {
+                // 磁盘已满:不再预分配,数据照常写入,并立即提醒
+                mPreallocationFailed = true;
+                mLastWarningNanos = 0;
+            }
+        }
+        checkSpace(dataEnd);
+    }
+
+    private void checkSpace(long dataEnd) {
+        if (mSpaceListener == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (mLastWarningNanos != 0 && now - mLastWarningNanos < SPACE_WARNING_INTERVAL_NANOS) {
+            return;
+        }
+        long usable = mFile.getUsableSpace() + Math.max(0, mPreallocatedEnd - dataEnd);
+        long secondsLeft = usable / mBytesPerSecond;
+        if (secondsLeft < mWarnSeconds || mPreallocationFailed) {
+            mLastWarningNanos = now;
+            mSpaceListener.onLowSpace(usable, secondsLeft);
+        }
+    }
+
+    private void truncatePreallocation() {
+        if (mPreallocatedEnd > mStartPosition && mError == null) {
+            try {
+                mChannel.truncate(mStartPosition + mBytesWritten);
+            } catch (IOException e) {
+                mError = e;
+            }
+        }
+    }
+
+    /**
+     * @return checkpoints stored in the journal so far
+     */
+    public int getCheckpointCount() {
+        return mCheckpointCount;
+    }
+
+    /**
+     * @return bytes handed to {@link #append(byte[], int, int)} so far
+     */
+    public long getAppendedBytes() {
+        return mAppended;
+    }
+
+    /**
+     * @return number of {@link FileChannel#write(ByteBuffer)} calls
+     */
+    public long getWriteCount() {
+        return mWriteCount;
+    }
+
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * @return average bytes per write syscall
+     */
+    public long getBytesPerWrite() {
+        long count = mWriteCount;
+        return count == 0 ? 0 : mBytesWritten / count;
+    }
+
+    public long getAverageWriteNanos() {
+        long count = mWriteCount;
+        return count == 0 ? 0 : mWriteNanos / count;
+    }
+
+    public long getMaxWriteNanos() {
+        return mMaxWriteNanos;
+    }
+
+    /**
+     * @return how many times the encoder waited because every block was still being written
+     */
+    public int getStallCount() {
+        return mStallCount;
+    }
+
+    public long getStallNanos() {
+        return mStallNanos;
+    }
+
+    /**
+     * @return first write error, null if none
+     */
+    public IOException getError() {
+        return mError;
+    }
+
+    @Override
+    public String toString() {
+        return "Mp3FileWriter{" + mWriteCount + " writes, " + getBytesPerWrite() + " B/write, avg "
+                + getAverageWriteNanos() / 1000 + "us, max " + mMaxWriteNanos / 1000 + "us, "
+                + mStallCount + " stalls}";
+    }
+
+    private static final class CheckpointMark {
+        final long mOffset;
+        final long mSampleCount;
+        final int mSampleRate;
+
+        CheckpointMark(long offset, long sampleCount, int sampleRate) {
+            mOffset = offset;
+            mSampleCount = sampleCount;
+            mSampleRate = sampleRate;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.czt.mp3recorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the frames to an {@link OutputStream}, e.g. an HTTP upload. Frames in a direct
+ * buffer are copied through one reusable array.
+ */
+public class OutputStreamSink implements EncodedSink {
+    private final OutputStream mOut;
+    private final boolean mFlushEachWrite;
+    private byte[] mScratch = new byte[0];
+
+    /**
+     * @param out            stream, closed with the sink
+     * @param flushEachWrite flush after every write, for a buffered stream that should still
+     *                       pass audio on as soon as it is encoded
+     */
+    public OutputStreamSink(OutputStream out, boolean flushEachWrite) {
+        mOut = out;
+        mFlushEachWrite = flushEachWrite;
+    }
+
+    @Override
+    public void write(ByteBuffer frames) throws IOException {
+        int length = frames.remaining();
+        if (frames.hasArray()) {
+            mOut.write(frames.array(), frames.arrayOffset() + frames.position(), length);
+            frames.position(frames.limit());
+        } else {
+            if (mScratch.length < length) {
+                mScratch = new byte[length];
+            }
+            frames.get(mScratch, 0, length);
+            mOut.write(mScratch, 0, length);
+        }
+        if (mFlushEachWrite) {
+            mOut.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mOut.close();
+    }
+}
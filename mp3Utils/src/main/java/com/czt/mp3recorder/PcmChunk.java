@@ -0,0 +1,73 @@
+package com.czt.mp3recorder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A preallocated block of PCM samples handed from the capture thread to the
+ * encoder thread. Instances are owned by a {@link PcmChunkPool} and must be
+ * given back to it once encoded.
+ * <p>
+ * A chunk holds either a {@code short[]} or, for the zero-copy path, a direct
+ * native-order {@link ByteBuffer} that native code can address without a JNI
+ * array copy.
+ */
+public class PcmChunk {
+    private final short[] data;
+    private final ByteBuffer directData;
+    private final int capacity;
+    private int readSize;
+
+    PcmChunk(int capacity) {
+        this(capacity, false);
+    }
+
+    PcmChunk(int capacity, boolean direct) {
+        this.capacity = capacity;
+        if (direct) {
+            this.data = null;
+            this.directData = ByteBuffer.allocateDirect(capacity * 2).order(ByteOrder.nativeOrder());
+        } else {
+            this.data = new short[capacity];
+            this.directData = null;
+        }
+    }
+
+    /**
+     * @return the samples, null for a direct chunk
+     */
+    public short[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the samples as a direct buffer, null unless {@link #isDirect()}
+     */
+    public ByteBuffer getDirectData() {
+        return directData;
+    }
+
+    public boolean isDirect() {
+        return directData != null;
+    }
+
+    /**
+     * @param index sample index
+     * @return the sample, whichever storage the chunk uses
+     */
+    public short getSample(int index) {
+        return data != null ? data[index] : directData.getShort(index << 1);
+    }
+
+    public int getReadSize() {
+        return readSize;
+    }
+
+    public void setReadSize(int readSize) {
+        this.readSize = readSize;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
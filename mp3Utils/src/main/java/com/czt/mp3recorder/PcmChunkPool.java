@@ -0,0 +1,99 @@
+package com.czt.mp3recorder;
+
+/**
+ * Fixed-capacity ring of preallocated {@link PcmChunk}s.
+ * <p>
+ * The capture thread {@link #obtain()}s a chunk, fills it and queues it for the
+ * encoder, which {@link #recycle(PcmChunk)}s it after use, so the steady state
+ * allocates nothing. If the encoder falls so far behind that the ring runs dry a
+ * temporary chunk is allocated instead of dropping audio; it is discarded on
+ * recycle once the ring is full again.
+ * <p>
+ * The free ring is a {@link SpscQueue}: only one thread may obtain and only one
+ * (other) thread may recycle.
+ */
+public class PcmChunkPool {
+    private final SpscQueue<PcmChunk> mFree;
+    private final int mChunkSize;
+    private final boolean mDirect;
+    private volatile int mMissCount;
+
+    /**
+     * Constructor
+     *
+     * @param capacity  number of chunks kept in the ring
+     * @param chunkSize number of samples per chunk
+     */
+    public PcmChunkPool(int capacity, int chunkSize) {
+        this(capacity, chunkSize, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity  number of chunks kept in the ring
+     * @param chunkSize number of samples per chunk
+     * @param direct    back chunks with direct ByteBuffers instead of short arrays
+     */
+    public PcmChunkPool(int capacity, int chunkSize, boolean direct) {
+        if (capacity <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("capacity and chunkSize must be positive");
+        }
+        mFree = new SpscQueue<>(capacity);
+        mChunkSize = chunkSize;
+        mDirect = direct;
+        for (int i = 0; i < capacity; i++) {
+            mFree.offer(new PcmChunk(chunkSize, direct));
+        }
+    }
+
+    /**
+     * 取出一个空闲的块,只能在采集线程调用
+     *
+     * @return a free chunk, never null
+     */
+    public PcmChunk obtain() {
+        PcmChunk chunk = mFree.poll();
+        if (chunk == null) {
+            mMissCount = mMissCount + 1;
+            return new PcmChunk(mChunkSize, mDirect);
+        }
+        chunk.setReadSize(0);
+        return chunk;
+    }
+
+    /**
+     * 编码完成后归还,只能在编码线程调用
+     *
+     * @param chunk chunk previously returned by {@link #obtain()}
+     */
+    public void recycle(PcmChunk chunk) {
+        if (chunk.capacity() != mChunkSize || chunk.isDirect() != mDirect) {
+            return;
+        }
+        // a full ring simply lets the extra chunk go
+        mFree.offer(chunk);
+    }
+
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    public int getCapacity() {
+        return mFree.capacity();
+    }
+
+    /**
+     * @return number of chunks currently free in the ring
+     */
+    public int getFreeCount() {
+        return mFree.size();
+    }
+
+    /**
+     * @return how many times the ring was empty and a chunk had to be allocated
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+}
@@ -0,0 +1,74 @@
+package com.czt.mp3recorder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Supplies 16 bit PCM to {@link MP3Recorder}.
+ * <p>
+ * The recorder calls {@link #start()} on the thread that starts recording,
+ * then {@link #onCaptureThreadStart()} and {@link #read(short[], int, int)} on
+ * its capture thread. {@link #stop()} and {@link #start()} may be called again
+ * on the capture thread around a pause, and {@link #release()} is called once
+ * capture has ended. Multi-channel data is interleaved.
+ */
+public interface PcmSource {
+    /**
+     * Returned by {@link #read(short[], int, int)} when a finite source is exhausted.
+     */
+    int END_OF_STREAM = -1;
+
+    int getSampleRate();
+
+    int getChannelCount();
+
+    /**
+     * @return number of samples (all channels) the recorder should request per read
+     */
+    int getBufferSize();
+
+    /**
+     * @return true if samples arrive on their own clock (a microphone) and must be dropped when the
+     * encoder falls behind, false if the recorder may wait for the encoder before reading on
+     */
+    boolean isRealtime();
+
+    /**
+     * Begin delivering PCM.
+     *
+     * @throws IOException the source could not be opened
+     */
+    void start() throws IOException;
+
+    /**
+     * Called once on the capture thread before the first read, e.g. to adjust its priority.
+     */
+    void onCaptureThreadStart();
+
+    /**
+     * Blocking read of up to size samples.
+     *
+     * @return number of samples read, 0 if nothing was available, or {@link #END_OF_STREAM}
+     * @throws IOException read failed
+     */
+    int read(short[] buffer, int offset, int size) throws IOException;
+
+    /**
+     * Blocking read of up to size samples into a direct, native-order buffer, starting at
+     * index 0. Used by the zero-copy path, see {@link RecorderConfig#isDirectBuffers()}.
+     *
+     * @return number of samples read, 0 if nothing was available, or {@link #END_OF_STREAM}
+     * @throws IOException read failed
+     */
+    int read(ByteBuffer buffer, int size) throws IOException;
+
+    /**
+     * Stop delivering PCM, {@link #start()} may resume it.
+     */
+    void stop();
+
+    /**
+     * Free all resources, the source may be started again afterwards.
+     */
+    void release();
+}
@@ -0,0 +1,586 @@
+package com.czt.mp3recorder;
+
+import android.media.MediaRecorder;
+
+import com.czt.mp3recorder.util.Mp3Encoder;
+
+/**
+ * Immutable recording settings: capture format, LAME encoder settings and buffer sizing.
+ * <p>
+ * Start from one of the presets or {@link Builder} and pass the result to
+ * {@link MP3Recorder#MP3Recorder(java.io.File, RecorderConfig)}. The capture
+ * format is checked against {@code AudioRecord.getMinBufferSize} when the
+ * microphone source is created.
+ */
+public class RecorderConfig {
+    /**
+     * Sample rates an MP3 stream can be written with.
+     */
+    private static final int[] MP3_SAMPLE_RATES = {8000, 11025, 12000, 16000, 22050, 24000, 32000, 44100, 48000};
+    private static final int MIN_BIT_RATE = 8;
+    private static final int MAX_BIT_RATE = 320;
+    /** ABR短时码率高于平均码率的余量,百分比 */
+    private static final int ABR_HEADROOM_PERCENT = 25;
+
+    /**
+     * 16kHz单声道语音,编码最快
+     */
+    public static final RecorderConfig SPEECH_LOW_CPU = new Builder("speech-low-cpu")
+            .setSampleRate(16000).setChannelCount(1).setBitRate(24).setQuality(9).build();
+    /**
+     * 16kHz单声道语音,音质较好
+     */
+    public static final RecorderConfig SPEECH = new Builder("speech")
+            .setSampleRate(16000).setChannelCount(1).setBitRate(32).setQuality(5).build();
+    /**
+     * 16kHz单声道语音,VBR编码,停顿处几乎不占空间.
+     * BitRateModeBenchmark的语音样本上平均约26kbps,比{@link #SPEECH}的CBR 32kbps小约19%,
+     * 编码耗时也少约13%;文件大小随内容变化.
+     * <p>
+     * BitRateModeBenchmark,x86-64主机(SSE),10秒16kHz单声道语音,q5:
+     * <pre>
+     * mode    us/clip  realtime  out kbps
+     * cbr32   26000    385x      32.0
+     * cbr24   33400    299x      24.0
+     * abr24   33380    300x      23.7
+     * abr16   36140    277x      15.7
+     * v4      24350    411x      35.3
+     * v5      24510    408x      30.6
+     * v6      24520    408x      27.8
+     * v7      22700    440x      25.9
+     * v9      22070    453x      25.1
+     * </pre>
+     */
+    public static final RecorderConfig SPEECH_VBR = new Builder("speech-vbr")
+            .setSampleRate(16000).setChannelCount(1).setQuality(5)
+            .setVbrMode(Mp3Encoder.VBR_MTRH).setVbrQuality(7).build();
+    /**
+     * 与旧版本一致: 44.1kHz单声道 32kbps
+     */
+    public static final RecorderConfig DEFAULT = new Builder("default").build();
+    /**
+     * 44.1kHz立体声音乐
+     */
+    public static final RecorderConfig MUSIC_HQ = new Builder("music-hq")
+            .setSampleRate(44100).setChannelCount(2).setBitRate(192).setQuality(2).build();
+
+    private final String name;
+    private final int audioSource;
+    private final int sampleRate;
+    private final int outSampleRate;
+    private final int channelCount;
+    private final int bitRate;
+    private final int quality;
+    private final int vbrMode;
+    private final int vbrQuality;
+    private final int minBitRate;
+    private final int maxBitRate;
+    private final int chunkSize;
+    private final int periodFrames;
+    private final int poolCapacity;
+    private final boolean directBuffers;
+    private final int seekIndexMillis;
+    private final int preallocateSeconds;
+    private final int checkpointMillis;
+    private final long segmentMillis;
+    private final long segmentBytes;
+
+    private RecorderConfig(Builder builder) {
+        name = builder.name;
+        audioSource = builder.audioSource;
+        sampleRate = builder.sampleRate;
+        outSampleRate = builder.outSampleRate == 0 ? builder.sampleRate : builder.outSampleRate;
+        channelCount = builder.channelCount;
+        bitRate = builder.bitRate;
+        quality = builder.quality;
+        vbrMode = builder.vbrMode;
+        vbrQuality = builder.vbrQuality;
+        minBitRate = builder.minBitRate;
+        maxBitRate = builder.maxBitRate;
+        chunkSize = builder.chunkSize;
+        periodFrames = builder.periodFrames;
+        poolCapacity = builder.poolCapacity;
+        directBuffers = builder.directBuffers;
+        seekIndexMillis = builder.seekIndexMillis;
+        preallocateSeconds = builder.preallocateSeconds;
+        checkpointMillis = builder.checkpointMillis;
+        segmentMillis = builder.segmentMillis;
+        segmentBytes = builder.segmentBytes;
+    }
+
+    /**
+     * @param name preset name, e.g. "speech-low-cpu"
+     * @return the preset
+     * @throws IllegalArgumentException unknown name
+     */
+    public static RecorderConfig preset(String name) {
+        RecorderConfig[] presets = {SPEECH_LOW_CPU, SPEECH, SPEECH_VBR, DEFAULT, MUSIC_HQ};
+        for (RecorderConfig preset : presets) {
+            if (preset.name.equals(name)) {
+                return preset;
+            }
+        }
+        throw new IllegalArgumentException("Unknown preset " + name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return one of {@link android.media.MediaRecorder.AudioSource}
+     */
+    public int getAudioSource() {
+        return audioSource;
+    }
+
+    /**
+     * @return capture sample rate in Hz, also LAME's input rate
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return sample rate of the mp3 file in Hz
+     */
+    public int getOutSampleRate() {
+        return outSampleRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * @return mp3 bit rate in kbps, the mean bit rate for {@link Mp3Encoder#VBR_ABR},
+     * unused for {@link Mp3Encoder#VBR_MTRH}
+     */
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    /**
+     * @return LAME quality 0..9, 0 best and slowest
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * @return {@link Mp3Encoder#VBR_OFF}, {@link Mp3Encoder#VBR_ABR} or {@link Mp3Encoder#VBR_MTRH}
+     */
+    public int getVbrMode() {
+        return vbrMode;
+    }
+
+    /**
+     * @return VBR quality 0..9, 0 largest file
+     */
+    public int getVbrQuality() {
+        return vbrQuality;
+    }
+
+    /**
+     * @return lowest VBR/ABR frame bit rate in kbps, 0 for LAME's default
+     */
+    public int getMinBitRate() {
+        return minBitRate;
+    }
+
+    /**
+     * @return highest VBR/ABR frame bit rate in kbps, 0 for LAME's default
+     */
+    public int getMaxBitRate() {
+        return maxBitRate;
+    }
+
+    /**
+     * @return samples (all channels) per read, 0 to derive it from the AudioRecord minimum buffer
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return chunk sizes are rounded up to a multiple of this many frames
+     */
+    public int getPeriodFrames() {
+        return periodFrames;
+    }
+
+    /**
+     * @return number of preallocated chunks between capture and encoder
+     */
+    public int getPoolCapacity() {
+        return poolCapacity;
+    }
+
+    /**
+     * @return capture into direct ByteBuffers and encode them with {@code Mp3Encoder.encodeDirect},
+     * so PCM reaches LAME without any JNI array copy
+     */
+    public boolean isDirectBuffers() {
+        return directBuffers;
+    }
+
+    /**
+     * @return time between entries of the seek index written next to the recording,
+     * 0 for no index, see {@code Mp3SeekIndex}
+     */
+    public int getSeekIndexMillis() {
+        return seekIndexMillis;
+    }
+
+    /**
+     * @return seconds of audio to keep preallocated ahead of the write position, 0 to let
+     * the file grow with each write
+     */
+    public int getPreallocateSeconds() {
+        return preallocateSeconds;
+    }
+
+    /**
+     * @return time between checkpoints that make a killed recording recoverable, 0 for none,
+     * see {@code RecordingRecovery}
+     */
+    public int getCheckpointMillis() {
+        return checkpointMillis;
+    }
+
+    /**
+     * @return start a new segment file after this much audio, 0 for no limit
+     */
+    public long getSegmentMillis() {
+        return segmentMillis;
+    }
+
+    /**
+     * @return start a new segment file once this many bytes are written, 0 for no limit
+     */
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * @return whether recordings are split into segments, see {@code SegmentManifest}
+     */
+    public boolean isSegmented() {
+        return segmentMillis > 0 || segmentBytes > 0;
+    }
+
+    /**
+     * 估算编码后的数据率,用于预分配和剩余空间估计,偏大即可。
+     * VBR取上限码率,未设置上限时取LAME的默认上限(MPEG-1 320kbps,MPEG-2/2.5 160kbps);
+     * ABR的短时码率会高于平均值,留出余量但不超过上限
+     *
+     * @return expected mp3 bytes per second, an upper bound for VBR
+     */
+    public long estimateBytesPerSecond() {
+        int ceiling = maxBitRate != 0 ? maxBitRate : outSampleRate >= 32000 ? 320 : 160;
+        int kbps;
+        if (vbrMode == Mp3Encoder.VBR_MTRH) {
+            kbps = ceiling;
+        } else if (vbrMode == Mp3Encoder.VBR_ABR) {
+            kbps = Math.min(ceiling, bitRate + bitRate * ABR_HEADROOM_PERCENT / 100);
+        } else {
+            kbps = bitRate;
+        }
+        return kbps * 1000L / 8;
+    }
+
+    /**
+     * Round a sample count up to whole periods of whole frames.
+     *
+     * @param samples samples, all channels
+     * @return rounded sample count
+     */
+    public int roundToPeriod(int samples) {
+        int frames = (samples + channelCount - 1) / channelCount;
+        if (frames % periodFrames != 0) {
+            frames += periodFrames - frames % periodFrames;
+        }
+        return frames * channelCount;
+    }
+
+    /**
+     * Encoder settings of this config for the given input. An input at another rate than
+     * {@link #getSampleRate()} is encoded at its own rate.
+     *
+     * @param inSampleRate input sample rate in Hz
+     * @param channelCount input channel count
+     * @return builder, further settings may be added before {@link Mp3Encoder.Builder#build()}
+     */
+    public Mp3Encoder.Builder newEncoderBuilder(int inSampleRate, int channelCount) {
+        return new Mp3Encoder.Builder(inSampleRate, channelCount)
+                .setOutSampleRate(inSampleRate == sampleRate ? outSampleRate : inSampleRate)
+                .setBitRate(bitRate)
+                .setQuality(quality)
+                .setVbrMode(vbrMode)
+                .setVbrQuality(vbrQuality)
+                .setMinBitRate(minBitRate)
+                .setMaxBitRate(maxBitRate);
+    }
+
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    @Override
+    public String toString() {
+        return "RecorderConfig{" + name + ", " + sampleRate + "Hz->" + outSampleRate + "Hz, "
+                + channelCount + "ch, " + rateString() + ", q" + quality + "}";
+    }
+
+    private String rateString() {
+        if (vbrMode == Mp3Encoder.VBR_MTRH) {
+            return "VBR V" + vbrQuality;
+        }
+        return (vbrMode == Mp3Encoder.VBR_ABR ? "ABR " : "") + bitRate + "kbps";
+    }
+
+    public static class Builder {
+        private String name = "custom";
+        private int audioSource = MediaRecorder.AudioSource.MIC;
+        private int sampleRate = 44100;
+        private int outSampleRate = 0;
+        private int channelCount = 1;
+        private int bitRate = 32;
+        private int quality = 7;
+        private int vbrMode = Mp3Encoder.VBR_OFF;
+        private int vbrQuality = 4;
+        private int minBitRate = 0;
+        private int maxBitRate = 0;
+        private int chunkSize = 0;
+        private int periodFrames = 160;
+        private int poolCapacity = 32;
+        private boolean directBuffers = false;
+        private int seekIndexMillis = 0;
+        private int preallocateSeconds = 0;
+        private int checkpointMillis = 0;
+        private long segmentMillis = 0;
+        private long segmentBytes = 0;
+
+        public Builder() {
+        }
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder(RecorderConfig config) {
+            name = config.name;
+            audioSource = config.audioSource;
+            sampleRate = config.sampleRate;
+            outSampleRate = config.outSampleRate == config.sampleRate ? 0 : config.outSampleRate;
+            channelCount = config.channelCount;
+            bitRate = config.bitRate;
+            quality = config.quality;
+            vbrMode = config.vbrMode;
+            vbrQuality = config.vbrQuality;
+            minBitRate = config.minBitRate;
+            maxBitRate = config.maxBitRate;
+            chunkSize = config.chunkSize;
+            periodFrames = config.periodFrames;
+            poolCapacity = config.poolCapacity;
+            directBuffers = config.directBuffers;
+            seekIndexMillis = config.seekIndexMillis;
+            preallocateSeconds = config.preallocateSeconds;
+            checkpointMillis = config.checkpointMillis;
+            segmentMillis = config.segmentMillis;
+            segmentBytes = config.segmentBytes;
+        }
+
+        public Builder setAudioSource(int audioSource) {
+            this.audioSource = audioSource;
+            return this;
+        }
+
+        public Builder setSampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * @param outSampleRate mp3 sample rate, 0 to keep the capture rate
+         */
+        public Builder setOutSampleRate(int outSampleRate) {
+            this.outSampleRate = outSampleRate;
+            return this;
+        }
+
+        public Builder setChannelCount(int channelCount) {
+            this.channelCount = channelCount;
+            return this;
+        }
+
+        public Builder setBitRate(int bitRate) {
+            this.bitRate = bitRate;
+            return this;
+        }
+
+        public Builder setQuality(int quality) {
+            this.quality = quality;
+            return this;
+        }
+
+        /**
+         * CBR spends the same bytes on pauses as on speech. {@link Mp3Encoder#VBR_MTRH} lets
+         * quiet frames shrink, {@link Mp3Encoder#VBR_ABR} does the same around a target mean
+         * bit rate ({@link #setBitRate(int)}), see {@link #SPEECH_VBR}.
+         *
+         * @param vbrMode {@link Mp3Encoder#VBR_OFF}, {@link Mp3Encoder#VBR_ABR} or {@link Mp3Encoder#VBR_MTRH}
+         */
+        public Builder setVbrMode(int vbrMode) {
+            this.vbrMode = vbrMode;
+            return this;
+        }
+
+        /**
+         * @param vbrQuality 0..9 like LAME's -V, 0 largest file
+         */
+        public Builder setVbrQuality(int vbrQuality) {
+            this.vbrQuality = vbrQuality;
+            return this;
+        }
+
+        /**
+         * @param minBitRate lowest VBR/ABR frame bit rate in kbps, 0 for LAME's default
+         */
+        public Builder setMinBitRate(int minBitRate) {
+            this.minBitRate = minBitRate;
+            return this;
+        }
+
+        /**
+         * @param maxBitRate highest VBR/ABR frame bit rate in kbps, 0 for LAME's default
+         */
+        public Builder setMaxBitRate(int maxBitRate) {
+            this.maxBitRate = maxBitRate;
+            return this;
+        }
+
+        /**
+         * @param chunkSize samples (all channels) per read, 0 for the AudioRecord minimum
+         */
+        public Builder setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder setPeriodFrames(int periodFrames) {
+            this.periodFrames = periodFrames;
+            return this;
+        }
+
+        public Builder setPoolCapacity(int poolCapacity) {
+            this.poolCapacity = poolCapacity;
+            return this;
+        }
+
+        public Builder setDirectBuffers(boolean directBuffers) {
+            this.directBuffers = directBuffers;
+            return this;
+        }
+
+        /**
+         * @param seekIndexMillis write a seek index with an entry every this many ms, 0 for none
+         */
+        public Builder setSeekIndexMillis(int seekIndexMillis) {
+            this.seekIndexMillis = seekIndexMillis;
+            return this;
+        }
+
+        /**
+         * @param preallocateSeconds extend the file this many seconds of audio ahead of the
+         *                           data while recording, 0 for no preallocation
+         */
+        public Builder setPreallocateSeconds(int preallocateSeconds) {
+            this.preallocateSeconds = preallocateSeconds;
+            return this;
+        }
+
+        /**
+         * @param checkpointMillis fsync the file and journal its length this often, 0 for never
+         */
+        public Builder setCheckpointMillis(int checkpointMillis) {
+            this.checkpointMillis = checkpointMillis;
+            return this;
+        }
+
+        /**
+         * Split recordings into gapless segment files, each at most this long or this large,
+         * listed in a playlist next to them. Both 0 (the default) records a single file.
+         *
+         * @param segmentMillis longest segment in ms of audio, 0 for no limit
+         * @param segmentBytes  largest segment in bytes, 0 for no limit
+         */
+        public Builder setSegments(long segmentMillis, long segmentBytes) {
+            this.segmentMillis = segmentMillis;
+            this.segmentBytes = segmentBytes;
+            return this;
+        }
+
+        /**
+         * @return the config
+         * @throws IllegalArgumentException a value is out of range
+         */
+        public RecorderConfig build() {
+            if (sampleRate <= 0) {
+                throw new IllegalArgumentException("sampleRate must be positive");
+            }
+            if (!isMp3SampleRate(outSampleRate == 0 ? sampleRate : outSampleRate)) {
+                throw new IllegalArgumentException("MP3 does not support sample rate "
+                        + (outSampleRate == 0 ? sampleRate : outSampleRate));
+            }
+            if (channelCount != 1 && channelCount != 2) {
+                throw new IllegalArgumentException("channelCount must be 1 or 2");
+            }
+            if (bitRate < MIN_BIT_RATE || bitRate > MAX_BIT_RATE) {
+                throw new IllegalArgumentException("bitRate must be " + MIN_BIT_RATE + ".." + MAX_BIT_RATE + " kbps");
+            }
+            if (quality < 0 || quality > 9) {
+                throw new IllegalArgumentException("quality must be 0..9");
+            }
+            if (vbrMode != Mp3Encoder.VBR_OFF && vbrMode != Mp3Encoder.VBR_ABR && vbrMode != Mp3Encoder.VBR_MTRH) {
+                throw new IllegalArgumentException("Unknown vbrMode " + vbrMode);
+            }
+            if (vbrQuality < 0 || vbrQuality > 9) {
+                throw new IllegalArgumentException("vbrQuality must be 0..9");
+            }
+            if (minBitRate != 0 && (minBitRate < MIN_BIT_RATE || minBitRate > MAX_BIT_RATE)
+                    || maxBitRate != 0 && (maxBitRate < MIN_BIT_RATE || maxBitRate > MAX_BIT_RATE)) {
+                throw new IllegalArgumentException("minBitRate and maxBitRate must be 0 or "
+                        + MIN_BIT_RATE + ".." + MAX_BIT_RATE + " kbps");
+            }
+            if (minBitRate != 0 && maxBitRate != 0 && minBitRate > maxBitRate) {
+                throw new IllegalArgumentException("minBitRate must not exceed maxBitRate");
+            }
+            if (chunkSize < 0 || periodFrames <= 0 || poolCapacity <= 0) {
+                throw new IllegalArgumentException("buffer sizes must be positive");
+            }
+            if (seekIndexMillis < 0) {
+                throw new IllegalArgumentException("seekIndexMillis must not be negative");
+            }
+            if (preallocateSeconds < 0) {
+                throw new IllegalArgumentException("preallocateSeconds must not be negative");
+            }
+            if (checkpointMillis < 0) {
+                throw new IllegalArgumentException("checkpointMillis must not be negative");
+            }
+            if (segmentMillis < 0 || segmentBytes < 0) {
+                throw new IllegalArgumentException("segment limits must not be negative");
+            }
+            return new RecorderConfig(this);
+        }
+
+        private static boolean isMp3SampleRate(int rate) {
+            for (int supported : MP3_SAMPLE_RATES) {
+                if (supported == rate) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
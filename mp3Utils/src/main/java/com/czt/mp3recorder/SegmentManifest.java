@@ -0,0 +1,255 @@
+package com.czt.mp3recorder;
+
+import com.czt.mp3recorder.util.Mp3FrameScanner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The files of a segmented recording and where each one sits in the session.
+ * <p>
+ * For a recording "talk.mp3" the segments are "talk-000.mp3", "talk-001.mp3", ... and the
+ * manifest is the playlist "talk.m3u8" next to them, rewritten after every finished segment.
+ * Segments are cut with {@link com.czt.mp3recorder.util.Mp3Encoder#flushNoGap(byte[])}, so
+ * played back in order they continue one another without a gap. Besides the usual
+ * {@code #EXTINF} durations each entry has a line with its exact position in the stream:
+ * <pre>
+ * #EXTM3U
+ * #X-MP3-SAMPLE-RATE:44100
+ * #X-MP3-SEGMENT:start=0,samples=2646144,bytes=240123
+ * #EXTINF:60.003,
+ * talk-000.mp3
+ * </pre>
+ * Sample counts are whole mp3 frames at the output sample rate; the first segment starts
+ * with LAME's encoder delay.
+ */
+public class SegmentManifest {
+    private static final String HEADER = "#EXTM3U";
+    private static final String SAMPLE_RATE = "#X-MP3-SAMPLE-RATE:";
+    private static final String SEGMENT = "#X-MP3-SEGMENT:";
+    private static final String EXTINF = "#EXTINF:";
+    private static final String CHARSET = "UTF-8";
+
+    private final File mDirectory;
+    private final String mBaseName;
+    private final String mExtension;
+    private final List<Segment> mSegments = new ArrayList<>();
+    private final Mp3FrameScanner mScanner = new Mp3FrameScanner().setCollectOffsets(false);
+    private int mSampleRate;
+
+    /**
+     * @param recordFile the recording as a whole, e.g. "talk.mp3"; the segments and the
+     *                   manifest are named after it
+     */
+    public SegmentManifest(File recordFile) {
+        File parent = recordFile.getAbsoluteFile().getParentFile();
+        String name = recordFile.getName();
+        int dot = name.lastIndexOf('.');
+        mDirectory = parent;
+        mBaseName = dot > 0 ? name.substring(0, dot) : name;
+        mExtension = dot > 0 ? name.substring(dot) : ".mp3";
+    }
+
+    /**
+     * @param index segment number from 0
+     * @return its file, "talk-007.mp3"
+     */
+    public File getSegmentFile(int index) {
+        return new File(mDirectory, mBaseName + String.format(Locale.US, "-%03d", index) + mExtension);
+    }
+
+    /**
+     * @return the playlist, "talk.m3u8"
+     */
+    public File getFile() {
+        return new File(mDirectory, mBaseName + ".m3u8");
+    }
+
+    /**
+     * Append a finished segment, measured by walking its frame headers.
+     *
+     * @param file the segment, closed
+     * @return the new entry
+     * @throws IOException read failed
+     */
+    public Segment addSegment(File file) throws IOException {
+        Mp3FrameScanner.Result scan = mScanner.scan(file);
+        if (mSampleRate == 0) {
+            mSampleRate = scan.getSampleRate();
+        }
+        long samples = scan.getHeader() == null ? 0 : scan.getFrameCount() * scan.getHeader().getSamplesPerFrame();
+        Segment segment = new Segment(file.getName(), getSampleCount(), samples, file.length());
+        mSegments.add(segment);
+        return segment;
+    }
+
+    /**
+     * @return segments in playback order
+     */
+    public List<Segment> getSegments() {
+        return Collections.unmodifiableList(mSegments);
+    }
+
+    /**
+     * @return output sample rate of the segments, 0 before the first one
+     */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * @return samples of all segments together
+     */
+    public long getSampleCount() {
+        if (mSegments.isEmpty()) {
+            return 0;
+        }
+        Segment last = mSegments.get(mSegments.size() - 1);
+        return last.mStartSample + last.mSampleCount;
+    }
+
+    public long getDurationMillis() {
+        return toMillis(getSampleCount());
+    }
+
+    private long toMillis(long samples) {
+        return mSampleRate == 0 ? 0 : samples * 1000 / mSampleRate;
+    }
+
+    /**
+     * Write the playlist to {@link #getFile()}, replacing the previous one in one rename.
+     *
+     * @throws IOException write failed
+     */
+    public void write() throws IOException {
+        File file = getFile();
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            Writer out = new OutputStreamWriter(stream, CHARSET);
+            out.write(HEADER + "\n");
+            out.write(SAMPLE_RATE + mSampleRate + "\n");
+            for (Segment segment : mSegments) {
+                out.write(SEGMENT + "start=" + segment.mStartSample + ",samples=" + segment.mSampleCount
+                        + ",bytes=" + segment.mByteCount + "\n");
+                out.write(EXTINF + String.format(Locale.US, "%.3f", segment.mSampleCount / (double) mSampleRate)
+                        + ",\n");
+                out.write(segment.mName + "\n");
+            }
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * @param recordFile the recording as a whole, as passed to {@link #SegmentManifest(File)}
+     * @return its manifest as last written
+     * @throws IOException the manifest is missing or malformed
+     */
+    public static SegmentManifest read(File recordFile) throws IOException {
+        SegmentManifest manifest = new SegmentManifest(recordFile);
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(manifest.getFile()), CHARSET));
+        try {
+            if (!HEADER.equals(in.readLine())) {
+                throw new IOException("Not a segment manifest: " + manifest.getFile());
+            }
+            long start = -1;
+            long samples = 0;
+            long bytes = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(SAMPLE_RATE)) {
+                    manifest.mSampleRate = Integer.parseInt(line.substring(SAMPLE_RATE.length()));
+                } else if (line.startsWith(SEGMENT)) {
+                    start = samples = bytes = -1;
+                    for (String field : line.substring(SEGMENT.length()).split(",")) {
+                        int equals = field.indexOf('=');
+                        String key = field.substring(0, Math.max(0, equals));
+                        long value = Long.parseLong(field.substring(equals + 1));
+                        if ("start".equals(key)) {
+                            start = value;
+                        } else if ("samples".equals(key)) {
+                            samples = value;
+                        } else if ("bytes".equals(key)) {
+                            bytes = value;
+                        }
+                    }
+                } else if (!line.isEmpty() && !line.startsWith("#")) {
+                    if (start < 0 || samples < 0 || bytes < 0) {
+                        throw new IOException("No " + SEGMENT + " line for " + line);
+                    }
+                    manifest.mSegments.add(new Segment(line, start, samples, bytes));
+                    start = -1;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed segment manifest " + manifest.getFile(), e);
+        } finally {
+            in.close();
+        }
+        return manifest;
+    }
+
+    /**
+     * One file of the recording.
+     */
+    public static class Segment {
+        private final String mName;
+        private final long mStartSample;
+        private final long mSampleCount;
+        private final long mByteCount;
+
+        Segment(String name, long startSample, long sampleCount, long byteCount) {
+            mName = name;
+            mStartSample = startSample;
+            mSampleCount = sampleCount;
+            mByteCount = byteCount;
+        }
+
+        /**
+         * @return file name, in the manifest's directory
+         */
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return position of the first sample in the whole recording
+         */
+        public long getStartSample() {
+            return mStartSample;
+        }
+
+        public long getSampleCount() {
+            return mSampleCount;
+        }
+
+        /**
+         * @return file length
+         */
+        public long getByteCount() {
+            return mByteCount;
+        }
+
+        @Override
+        public String toString() {
+            return mName + "{start=" + mStartSample + ", samples=" + mSampleCount + ", bytes=" + mByteCount + "}";
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.czt.mp3recorder;
+
+import com.czt.mp3recorder.util.LameTag;
+import com.czt.mp3recorder.util.Mp3Encoder;
+import com.czt.mp3recorder.util.Mp3FrameHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes one long file on several threads at once. The input is cut into
+ * segments of whole mp3 frames, every segment is encoded by its own
+ * {@link Mp3Encoder} starting a few frames early, and the warm-up frames are
+ * dropped when the segments are joined.
+ * <p>
+ * The join is gapless because frames are cut on the same sample boundaries a
+ * single encoder would use, and the bit reservoir is disabled so no frame
+ * borrows bits from its predecessor. Segments are also aligned to LAME's CBR
+ * padding cycle. The warm-up has to be long enough for the psychoacoustic
+ * model and the quantizer to settle: with {@link #DEFAULT_OVERLAP_FRAMES} the
+ * output of the presets equals a serial encode with the reservoir disabled in
+ * SegmentParallelTranscoderTest, but that is measured, not guaranteed. With
+ * a shorter warm-up a few frames after a join are quantized differently from
+ * the serial encode; they still decode and join without a gap.
+ * <p>
+ * The file starts with LAME's Xing/Info frame, rebuilt for the joined stream
+ * with {@link LameTag} so it carries the frame count, seek table and the
+ * delay and padding of the whole file for gapless playback. Resampling shifts
+ * frame boundaries, so files that need it are encoded as one segment.
+ */
+public class SegmentParallelTranscoder {
+    /**
+     * 默认每段的帧数,44.1kHz时约53秒
+     */
+    public static final int DEFAULT_SEGMENT_FRAMES = 2048;
+    /**
+     * 默认每段提前编码并丢弃的帧数。MDCT重叠和预读只要几帧,但心理声学模型和量化的状态要几十帧
+     * 才与单线程编码一致:噪声输入用speech预设时32帧仍有个别帧不同,48帧起测试中全部相同
+     */
+    public static final int DEFAULT_OVERLAP_FRAMES = 64;
+    /**
+     * 填充周期超过此帧数时不再对齐,拼接处的帧长度可能与单线程编码略有不同
+     */
+    private static final int MAX_PADDING_PERIOD = 256;
+    /**
+     * 每段之后多编码的帧数,LAME的预读不超过3帧(MPEG-2每帧576个采样时)
+     */
+    private static final int TAIL_FRAMES = 3;
+    private static final int CHUNK_FRAMES = 8;
+
+    private final RecorderConfig mConfig;
+    private final int mThreadCount;
+    private int mSegmentFrames = DEFAULT_SEGMENT_FRAMES;
+    private int mOverlapFrames = DEFAULT_OVERLAP_FRAMES;
+
+    /**
+     * One worker per available processor.
+     *
+     * @param config bit rate, quality and output sample rate; capture settings are ignored
+     */
+    public SegmentParallelTranscoder(RecorderConfig config) {
+        this(config, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param config      bit rate, quality and output sample rate; capture settings are ignored
+     * @param threadCount maximum number of segments encoded at once
+     */
+    public SegmentParallelTranscoder(RecorderConfig config, int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        mConfig = config;
+        mThreadCount = threadCount;
+    }
+
+    /**
+     * @param segmentFrames mp3 frames per segment, rounded up to the padding cycle
+     */
+    public void setSegmentFrames(int segmentFrames) {
+        if (segmentFrames <= 0) {
+            throw new IllegalArgumentException("segmentFrames must be positive");
+        }
+        mSegmentFrames = segmentFrames;
+    }
+
+    /**
+     * @param overlapFrames frames encoded before each segment to warm the encoder up, then dropped
+     */
+    public void setOverlapFrames(int overlapFrames) {
+        if (overlapFrames < 0) {
+            throw new IllegalArgumentException("overlapFrames must not be negative");
+        }
+        mOverlapFrames = overlapFrames;
+    }
+
+    /**
+     * Encode one file, blocking until it is written.
+     *
+     * @param job      file to encode
+     * @param listener progress after every joined segment, called on this thread; may be null
+     * @return result with the realtime factor of the whole file
+     * @throws InterruptedException interrupted while waiting, the output file is incomplete
+     */
+    public BatchTranscoder.Result transcode(BatchTranscoder.Job job, BatchTranscoder.Listener listener)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        int sampleRate = 0;
+        long framesDone = 0;
+        long bytesWritten = 0;
+        ExecutorService executor = null;
+        ArrayDeque<Future<Segment>> pending = new ArrayDeque<>();
+        FileOutputStream out = null;
+        BatchTranscoder.Result result = null;
+        try {
+            final FilePcmSource source = job.openSource();
+            sampleRate = source.getSampleRate();
+            final int channels = source.getChannelCount();
+            if (channels != 1 && channels != 2) {
+                throw new IOException("Only mono and stereo input is supported: " + job.getInput());
+            }
+            final long totalFrames = source.getTotalSamples() / channels;
+            final Mp3Encoder.Builder builder = mConfig.newEncoderBuilder(sampleRate, channels)
+                    .setWriteLameTag(false);
+            final Plan plan = plan(builder, sampleRate, totalFrames);
+            builder.setDisableReservoir(plan.segmentCount > 1);
+            // 只有第一段写标签占位帧,它的标签作为整个文件标签的模板
+            final Mp3Encoder.Builder firstBuilder = mConfig.newEncoderBuilder(sampleRate, channels)
+                    .setDisableReservoir(plan.segmentCount > 1);
+            byte[] tagFrame = null;
+            LameTag tag = null;
+
+            executor = Executors.newFixedThreadPool(Math.min(mThreadCount, plan.segmentCount), new WorkerFactory());
+            out = new FileOutputStream(job.getOutput());
+            // 最多同时保留2倍线程数的已编码段,内存占用与文件长度无关
+            int window = mThreadCount * 2;
+            int next = 0;
+            for (int written = 0; written < plan.segmentCount; written++) {
+                while (next < plan.segmentCount && pending.size() < window) {
+                    final int segment = next++;
+                    pending.add(executor.submit(new Callable<Segment>() {
+                        @Override
+                        public Segment call() throws IOException {
+                            return encodeSegment(source, segment == 0 ? firstBuilder : builder, plan, segment);
+                        }
+                    }));
+                }
+                Segment encoded = pending.poll().get();
+                if (written == 0 && encoded.tagFrame != null) {
+                    tagFrame = encoded.tagFrame;
+                    if (plan.segmentCount > 1) {
+                        tag = new LameTag(tagFrame, tagFrame.length);
+                    }
+                }
+                if (tag != null) {
+                    addToTag(tag, encoded.mp3, written == 0 ? tagFrame.length : 0);
+                }
+                out.write(encoded.mp3);
+                bytesWritten += encoded.mp3.length;
+                framesDone = Math.min(totalFrames, (long) (written + 1) * plan.segmentFrames * plan.frameSize);
+                if (listener != null) {
+                    listener.onProgress(job, framesDone, totalFrames);
+                }
+            }
+            if (tag != null) {
+                // 延迟与第一段相同,填充是整个文件最后一帧补的采样数
+                int delay = LameTag.getDelay(tagFrame);
+                long padding = tag.getFrameCount() * plan.frameSize - delay - totalFrames;
+                writeTagFrame(out.getChannel(), tag.build(delay, (int) padding));
+            } else if (tagFrame != null) {
+                writeTagFrame(out.getChannel(), tagFrame);
+            }
+            result = new BatchTranscoder.Result(job, sampleRate, framesDone, bytesWritten,
+                    System.nanoTime() - start, null, false);
+        } catch (ExecutionException e) {
+            result = new BatchTranscoder.Result(job, sampleRate, framesDone, bytesWritten,
+                    System.nanoTime() - start, e.getCause(), false);
+        } catch (IOException e) {
+            result = new BatchTranscoder.Result(job, sampleRate, framesDone, bytesWritten,
+                    System.nanoTime() - start, e, false);
+        } catch (RuntimeException e) {
+            result = new BatchTranscoder.Result(job, sampleRate, framesDone, bytesWritten,
+                    System.nanoTime() - start, e, false);
+        } finally {
+            for (Future<Segment> future : pending) {
+                future.cancel(true);
+            }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (listener != null) {
+            listener.onJobFinished(result);
+        }
+        return result;
+    }
+
+    /**
+     * How the input is cut, all counts in mp3 frames.
+     */
+    static class Plan {
+        int frameSize;
+        int segmentFrames;
+        int overlapFrames;
+        int segmentCount;
+        int channelCount;
+    }
+
+    /**
+     * One encoded segment.
+     */
+    private static class Segment {
+        /**
+         * the segment's frames, for the first segment starting with LAME's zero tag frame
+         */
+        byte[] mp3;
+        /**
+         * tag frame of the first segment's encoder, null for the others or without a tag
+         */
+        byte[] tagFrame;
+    }
+
+    private Plan plan(Mp3Encoder.Builder builder, int sampleRate, long totalFrames) {
+        Plan plan = new Plan();
+        Mp3Encoder probe = builder.build();
+        try {
+            plan.frameSize = probe.getFrameSize();
+            plan.channelCount = probe.getChannelCount();
+        } finally {
+            probe.close();
+        }
+        int outSampleRate = sampleRate == mConfig.getSampleRate() ? mConfig.getOutSampleRate() : sampleRate;
+        long mp3Frames = (totalFrames + plan.frameSize - 1) / plan.frameSize;
+        if (outSampleRate != sampleRate || mp3Frames <= mSegmentFrames) {
+            // 重采样时输入与输出的帧边界不再对应,整个文件作为一段编码
+            plan.segmentFrames = (int) Math.min(Integer.MAX_VALUE, Math.max(1, mp3Frames));
+            plan.overlapFrames = 0;
+            plan.segmentCount = 1;
+            return plan;
+        }
+        // LAME只对CBR帧做填充,VBR/ABR的段可以从任意帧开始
+        int period = mConfig.getVbrMode() == Mp3Encoder.VBR_OFF
+                ? paddingPeriod(plan.frameSize, mConfig.getBitRate(), outSampleRate) : 1;
+        if (period > MAX_PADDING_PERIOD) {
+            period = 1;
+        }
+        plan.segmentFrames = roundUp(mSegmentFrames, period);
+        plan.overlapFrames = roundUp(mOverlapFrames, period);
+        plan.segmentCount = (int) ((mp3Frames + plan.segmentFrames - 1) / plan.segmentFrames);
+        return plan;
+    }
+
+    /**
+     * LAME pads a CBR frame with one byte whenever the accumulated fraction of a byte
+     * per frame wraps around; the pattern repeats after this many frames.
+     */
+    static int paddingPeriod(int frameSize, int bitRate, int sampleRate) {
+        long fraction = (frameSize == 1152 ? 144000L : 72000L) * bitRate % sampleRate;
+        if (fraction == 0) {
+            return 1;
+        }
+        return (int) (sampleRate / gcd(fraction, sampleRate));
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+
+    /**
+     * Encode one segment with its warm-up and tail, and keep only the segment's own frames.
+     */
+    private static Segment encodeSegment(FilePcmSource file, Mp3Encoder.Builder builder, Plan plan, int segment)
+            throws IOException {
+        long first = (long) segment * plan.segmentFrames;
+        int warmUp = (int) Math.min(plan.overlapFrames, first);
+        boolean last = segment == plan.segmentCount - 1;
+        long samplesPerFrame = (long) plan.frameSize * plan.channelCount;
+        long fromSample = (first - warmUp) * samplesPerFrame;
+        // 后面多编码几帧,保证最后保留的帧拿到完整的预读数据,而不是flush补的静音
+        long sampleCount = last ? Long.MAX_VALUE / 2
+                : (warmUp + plan.segmentFrames + TAIL_FRAMES) * samplesPerFrame;
+        FilePcmSource source = file.range(fromSample, sampleCount);
+        Mp3Encoder encoder = builder.build();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        Segment result = new Segment();
+        try {
+            int chunkSamples = (int) (CHUNK_FRAMES * samplesPerFrame);
+            short[] pcm = new short[chunkSamples];
+            byte[] mp3 = new byte[(int) (7200 + chunkSamples * 1.25)];
+            source.start();
+            int read;
+            while ((read = source.read(pcm, 0, chunkSamples)) != PcmSource.END_OF_STREAM) {
+                if (Thread.interrupted()) {
+                    throw new IOException("Segment " + segment + " cancelled");
+                }
+                int frames = read / plan.channelCount;
+                int size = plan.channelCount == 2
+                        ? encoder.encodeInterleaved(pcm, frames, mp3)
+                        : encoder.encodeMono(pcm, frames, mp3);
+                if (size < 0) {
+                    throw new IOException("LAME error " + size + " in segment " + segment);
+                }
+                encoded.write(mp3, 0, size);
+            }
+            int size = encoder.flush(mp3);
+            if (size > 0) {
+                encoded.write(mp3, 0, size);
+            }
+            size = encoder.getLameTagFrame(mp3);
+            if (size > 0 && size <= mp3.length) {
+                result.tagFrame = new byte[size];
+                System.arraycopy(mp3, 0, result.tagFrame, 0, size);
+            }
+        } finally {
+            encoder.close();
+            source.release();
+        }
+        // 第一段的输出以标签占位帧开头,与它的音频帧一起保留
+        int count = last ? Integer.MAX_VALUE : plan.segmentFrames + (result.tagFrame != null ? 1 : 0);
+        result.mp3 = keepFrames(encoded.toByteArray(), warmUp, count, segment);
+        return result;
+    }
+
+    /**
+     * Feed the frames of a joined segment to the tag.
+     *
+     * @param offset where the audio frames start, after the first segment's tag frame
+     */
+    private static void addToTag(LameTag tag, byte[] mp3, int offset) {
+        tag.addBytes(mp3, offset, mp3.length - offset);
+        while (offset < mp3.length) {
+            offset += tag.addFrame(mp3, offset);
+        }
+    }
+
+    private static void writeTagFrame(FileChannel channel, byte[] frame) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    /**
+     * @return frames [skip, skip + count) of a stream of whole frames
+     */
+    private static byte[] keepFrames(byte[] mp3, int skip, int count, int segment) throws IOException {
+        int offset = 0;
+        int frame = 0;
+        int keepStart = -1;
+        while (offset < mp3.length && frame - skip < count) {
+            if (frame == skip) {
+                keepStart = offset;
+            }
+            Mp3FrameHeader header = Mp3FrameHeader.parse(mp3, offset);
+            if (header == null) {
+                throw new IOException("No mp3 frame at byte " + offset + " of segment " + segment);
+            }
+            offset += header.getFrameLength();
+            frame++;
+        }
+        if (keepStart < 0) {
+            return new byte[0];
+        }
+        byte[] kept = new byte[Math.min(offset, mp3.length) - keepStart];
+        System.arraycopy(mp3, keepStart, kept, 0, kept.length);
+        return kept;
+    }
+
+    private static class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "SegmentEncoder-" + mCount.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.czt.mp3recorder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Streams the frames over a connected {@link SocketChannel}. Writes block until the
+ * kernel takes the data, so a network sink should normally be wrapped in an {@link AsyncSink}.
+ */
+public class SocketChannelSink implements EncodedSink {
+    private final SocketChannel mChannel;
+
+    /**
+     * @param channel connected channel in blocking mode, closed with the sink
+     */
+    public SocketChannelSink(SocketChannel channel) {
+        if (!channel.isBlocking()) {
+            throw new IllegalArgumentException("channel must be in blocking mode");
+        }
+        mChannel = channel;
+    }
+
+    @Override
+    public void write(ByteBuffer frames) throws IOException {
+        while (frames.hasRemaining()) {
+            mChannel.write(frames);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+}
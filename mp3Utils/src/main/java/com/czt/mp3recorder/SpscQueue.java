@@ -0,0 +1,133 @@
+package com.czt.mp3recorder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free single-producer/single-consumer queue.
+ * <p>
+ * Exactly one thread may call {@link #offer(Object)} and exactly one other
+ * thread may call {@link #poll()}. Neither side ever takes a monitor or
+ * blocks: a full queue makes {@code offer} fail and count an overflow, an
+ * empty queue makes {@code poll} return null. Each side keeps a cached copy of
+ * the other side's index so the shared counters are only re-read when the
+ * cache says the queue looks full or empty.
+ *
+ * @param <E> element type
+ */
+public class SpscQueue<E> {
+    private final Object[] mBuffer;
+    private final int mMask;
+    private final int mCapacity;
+    /**
+     * 下一个写入位置,只由生产者修改
+     */
+    private final AtomicLong mTail = new AtomicLong();
+    /**
+     * 下一个读取位置,只由消费者修改
+     */
+    private final AtomicLong mHead = new AtomicLong();
+    // producer-local view of mHead
+    private long mHeadCache;
+    // consumer-local view of mTail
+    private long mTailCache;
+    // statistics, written by the producer only
+    private volatile int mHighWaterMark;
+    private volatile long mOverflowCount;
+
+    public SpscQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mBuffer = new Object[size];
+        mMask = size - 1;
+        mCapacity = capacity;
+    }
+
+    /**
+     * Producer side. Never blocks.
+     *
+     * @param e element, not null
+     * @return false if the queue was full and the element was not added
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        final long tail = mTail.get();
+        if (tail - mHeadCache >= mCapacity) {
+            mHeadCache = mHead.get();
+            if (tail - mHeadCache >= mCapacity) {
+                mOverflowCount = mOverflowCount + 1;
+                return false;
+            }
+        }
+        mBuffer[(int) tail & mMask] = e;
+        mTail.lazySet(tail + 1);
+        if (tail + 1 - mHeadCache > mHighWaterMark) {
+            // the cached head may be stale, only trust a fresh read
+            mHeadCache = mHead.get();
+            int depth = (int) (tail + 1 - mHeadCache);
+            if (depth > mHighWaterMark) {
+                mHighWaterMark = depth;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Consumer side. Never blocks.
+     *
+     * @return the oldest element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        final long head = mHead.get();
+        if (head >= mTailCache) {
+            mTailCache = mTail.get();
+            if (head >= mTailCache) {
+                return null;
+            }
+        }
+        final int index = (int) head & mMask;
+        E e = (E) mBuffer[index];
+        mBuffer[index] = null;
+        mHead.lazySet(head + 1);
+        return e;
+    }
+
+    /**
+     * @return current number of queued elements, safe to call from any thread
+     */
+    public int size() {
+        long head = mHead.get();
+        long tail = mTail.get();
+        int size = (int) (tail - head);
+        return size < 0 ? 0 : size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return largest depth seen so far
+     */
+    public int getHighWaterMark() {
+        return mHighWaterMark;
+    }
+
+    /**
+     * @return number of rejected {@link #offer(Object)} calls
+     */
+    public long getOverflowCount() {
+        return mOverflowCount;
+    }
+}
@@ -0,0 +1,199 @@
+package com.czt.mp3recorder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link PcmSource} generating a sine tone, optionally mixed with white noise.
+ * <p>
+ * With realtime pacing the source delivers samples no faster than a microphone
+ * would, which is what latency measurements want; without it reads return as
+ * fast as the pipeline can take them, which is what throughput measurements want.
+ */
+public class SyntheticPcmSource implements PcmSource {
+    /**
+     * {@link #SyntheticPcmSource(int, int, double, double, double, long, boolean)} totalFrames value of an endless source
+     */
+    public static final long UNLIMITED = -1;
+    private static final int TABLE_SIZE = 4096;
+    private static final int DEFAULT_BUFFER_MILLIS = 40;
+
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final int mBufferSize;
+    private final long mTotalFrames;
+    private final boolean mRealtime;
+    private final short[] mTable = new short[TABLE_SIZE];
+    private final double mNoiseAmplitude;
+    private final double mPhaseStep;
+    private double mPhase;
+    private long mFramesRead;
+    private long mStartNanos;
+    private long mPausedFrames;
+    private int mNoiseSeed = 0x2545F491;
+
+    /**
+     * Endless realtime mono tone.
+     *
+     * @param sampleRate  sample rate in Hz
+     * @param frequencyHz tone frequency
+     */
+    public SyntheticPcmSource(int sampleRate, double frequencyHz) {
+        this(sampleRate, 1, frequencyHz, 0.25, 0, UNLIMITED, true);
+    }
+
+    /**
+     * @param sampleRate     sample rate in Hz
+     * @param channelCount   channels, the tone is the same on each
+     * @param frequencyHz    tone frequency
+     * @param amplitude      tone amplitude, 0..1 of full scale
+     * @param noiseAmplitude white noise amplitude, 0..1 of full scale
+     * @param totalFrames    frames per channel to deliver, or {@link #UNLIMITED}
+     * @param realtime       pace reads to the sample rate
+     */
+    public SyntheticPcmSource(int sampleRate, int channelCount, double frequencyHz, double amplitude,
+                              double noiseAmplitude, long totalFrames, boolean realtime) {
+        if (sampleRate <= 0 || channelCount <= 0) {
+            throw new IllegalArgumentException("sampleRate and channelCount must be positive");
+        }
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mTotalFrames = totalFrames;
+        mRealtime = realtime;
+        mNoiseAmplitude = noiseAmplitude * Short.MAX_VALUE;
+        mBufferSize = sampleRate * DEFAULT_BUFFER_MILLIS / 1000 * channelCount;
+        mPhaseStep = frequencyHz * TABLE_SIZE / sampleRate;
+        double peak = Math.min(1.0, amplitude) * Short.MAX_VALUE;
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            mTable[i] = (short) (peak * Math.sin(2 * Math.PI * i / TABLE_SIZE));
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    @Override
+    public boolean isRealtime() {
+        return mRealtime;
+    }
+
+    @Override
+    public void start() {
+        // frames delivered before a pause do not count against the clock
+        mPausedFrames = mFramesRead;
+        mStartNanos = System.nanoTime();
+    }
+
+    @Override
+    public void onCaptureThreadStart() {
+        // nothing to do
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int size) {
+        int frames = beginRead(size);
+        if (frames < 0) {
+            return END_OF_STREAM;
+        }
+        int out = offset;
+        for (int i = 0; i < frames; i++) {
+            short sample = nextSample();
+            for (int c = 0; c < mChannelCount; c++) {
+                buffer[out++] = sample;
+            }
+        }
+        mFramesRead += frames;
+        return frames * mChannelCount;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer, int size) {
+        int frames = beginRead(Math.min(size, buffer.capacity() / 2));
+        if (frames < 0) {
+            return END_OF_STREAM;
+        }
+        int out = 0;
+        for (int i = 0; i < frames; i++) {
+            short sample = nextSample();
+            for (int c = 0; c < mChannelCount; c++) {
+                buffer.putShort(out, sample);
+                out += 2;
+            }
+        }
+        mFramesRead += frames;
+        return frames * mChannelCount;
+    }
+
+    /**
+     * @return frames to generate for a read of size samples, -1 at the end
+     */
+    private int beginRead(int size) {
+        int frames = size / mChannelCount;
+        if (mTotalFrames != UNLIMITED) {
+            long left = mTotalFrames - mFramesRead;
+            if (left <= 0) {
+                return -1;
+            }
+            frames = (int) Math.min(frames, left);
+        }
+        if (mRealtime) {
+            waitUntilCaptured(mFramesRead + frames);
+        }
+        return frames;
+    }
+
+    private short nextSample() {
+        int sample = mTable[(int) mPhase];
+        if (mNoiseAmplitude > 0) {
+            // xorshift, cheap and allocation free
+            mNoiseSeed ^= mNoiseSeed << 13;
+            mNoiseSeed ^= mNoiseSeed >>> 17;
+            mNoiseSeed ^= mNoiseSeed << 5;
+            sample += (int) (mNoiseAmplitude * mNoiseSeed / Integer.MAX_VALUE);
+        }
+        if (sample > Short.MAX_VALUE) {
+            sample = Short.MAX_VALUE;
+        } else if (sample < Short.MIN_VALUE) {
+            sample = Short.MIN_VALUE;
+        }
+        mPhase += mPhaseStep;
+        if (mPhase >= TABLE_SIZE) {
+            mPhase -= TABLE_SIZE;
+        }
+        return (short) sample;
+    }
+
+    private void waitUntilCaptured(long frames) {
+        long due = mStartNanos + (frames - mPausedFrames) * 1000000000L / mSampleRate;
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        // the clock restarts on the next start()
+    }
+
+    @Override
+    public void release() {
+        mFramesRead = 0;
+        mPhase = 0;
+    }
+}
@@ -0,0 +1,76 @@
+package com.czt.mp3recorder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Passes every write on to several sinks, e.g. a local file and a network stream from one
+ * encode. A sink that fails is closed and dropped, the others carry on. Sinks are called
+ * one after another on the caller's thread; wrap slow ones in an {@link AsyncSink}.
+ */
+public class TeeSink implements EncodedSink {
+    private final List<EncodedSink> mSinks;
+
+    public TeeSink(EncodedSink... sinks) {
+        mSinks = new ArrayList<>(Arrays.asList(sinks));
+    }
+
+    /**
+     * @return sinks still being written
+     */
+    public int getSinkCount() {
+        return mSinks.size();
+    }
+
+    @Override
+    public void write(ByteBuffer frames) throws IOException {
+        int position = frames.position();
+        int limit = frames.limit();
+        for (int i = 0; i < mSinks.size(); ) {
+            frames.limit(limit).position(position);
+            try {
+                mSinks.get(i).write(frames);
+                i++;
+            } catch (IOException e) {
+                // 一路输出失败不影响其他输出
+                e.printStackTrace();
+                closeQuietly(mSinks.remove(i));
+            }
+        }
+        frames.limit(limit).position(limit);
+    }
+
+    private static void closeQuietly(EncodedSink sink) {
+        try {
+            sink.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Close every sink.
+     *
+     * @throws IOException the first failure, after all sinks were closed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (EncodedSink sink : mSinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        mSinks.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.czt.mp3recorder.util;
+
+import java.io.File;
+
+/**
+ * Loads the native encoder. On a device it comes from the APK's jniLibs; in a
+ * desktop JVM (unit tests, benchmarks) it is the host build made by
+ * {@code ./gradlew :mp3Utils:hostNativeBuild}.
+ */
+public final class LameLibrary {
+    /**
+     * System property with the absolute path of the library to load instead of
+     * searching {@code java.library.path}, e.g. build/host-native/libmp3lame.so
+     */
+    public static final String PATH_PROPERTY = "com.czt.mp3recorder.nativeLibrary";
+    private static final String NAME = "mp3lame";
+    /**
+     * CMake输出目录,相对于mp3Utils模块或工程根目录
+     */
+    private static final String[] HOST_BUILD_DIRS = {"build/host-native", "mp3Utils/build/host-native"};
+
+    private static boolean sLoaded;
+
+    private LameLibrary() {
+    }
+
+    public static synchronized void load() {
+        if (sLoaded) {
+            return;
+        }
+        String path = System.getProperty(PATH_PROPERTY);
+        if (path != null && path.length() > 0) {
+            System.load(new File(path).getAbsolutePath());
+            sLoaded = true;
+            return;
+        }
+        try {
+            System.loadLibrary(NAME);
+        } catch (UnsatisfiedLinkError e) {
+            if (!loadHostBuild()) {
+                throw e;
+            }
+        }
+        sLoaded = true;
+    }
+
+    private static boolean loadHostBuild() {
+        if (isAndroid()) {
+            return false;
+        }
+        String fileName = System.mapLibraryName(NAME);
+        for (String dir : HOST_BUILD_DIRS) {
+            File library = new File(dir, fileName);
+            if (library.isFile()) {
+                System.load(library.getAbsolutePath());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAndroid() {
+        return "Dalvik".equals(System.getProperty("java.vm.name"));
+    }
+}
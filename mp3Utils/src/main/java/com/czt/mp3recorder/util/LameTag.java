@@ -0,0 +1,237 @@
+package com.czt.mp3recorder.util;
+
+import java.util.Arrays;
+
+/**
+ * Rebuilds LAME's Xing/Info frame for a stream that was not written by a single encoder,
+ * e.g. segments encoded separately and joined. It is fed the stream the way LAME feeds its
+ * own tag: the bytes of every audio frame for the music CRC and length, and the bit rate of
+ * every audio frame for the seek table. The tag frame of an encoder with the same settings
+ * is the template; version, quality, lowpass and the other settings are kept from it.
+ * <p>
+ * The field layout and the seek table follow VbrTag.c of LAME 3.99.5.
+ */
+public class LameTag {
+    private static final int FLAGS_OFFSET = 4;
+    private static final int FRAMES_OFFSET = 8;
+    private static final int BYTES_OFFSET = 12;
+    private static final int TOC_OFFSET = 16;
+    private static final int TOC_SIZE = 100;
+    /**
+     * LAME扩展头从Xing头之后开始,各字段相对于Xing头的偏移
+     */
+    private static final int LAME_OFFSET = 120;
+    private static final int DELAY_PADDING_OFFSET = LAME_OFFSET + 21;
+    private static final int MUSIC_LENGTH_OFFSET = LAME_OFFSET + 28;
+    private static final int MUSIC_CRC_OFFSET = LAME_OFFSET + 32;
+    private static final int TAG_CRC_OFFSET = LAME_OFFSET + 34;
+    /**
+     * 与LAME的VBR_seek_info_t一致:最多400项,满了两两合并
+     */
+    private static final int BAG_SIZE = 400;
+    private static final int MODE_EXTENSION_MASK = 0x30;
+
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        // CRC-16 (0x8005, 反射形式0xA001),与LAME的crc16_lookup相同
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+            CRC16_TABLE[i] = crc;
+        }
+    }
+
+    private final byte[] mFrame;
+    private final int mXing;
+    private final int[] mBag = new int[BAG_SIZE];
+    private int mPos;
+    private int mWant = 1;
+    private int mSeen;
+    private long mSum;
+    private long mFrames;
+    private long mBytes;
+    private int mMusicCrc;
+    private int mModeExtension = -1;
+
+    /**
+     * @param template tag frame from {@link Mp3Encoder#getLameTagFrame(byte[])} of an encoder
+     *                 with the same settings
+     * @param length   its length
+     */
+    public LameTag(byte[] template, int length) {
+        if (!hasLameExtension(template, length)) {
+            throw new IllegalArgumentException("Tag frame has no LAME extension");
+        }
+        mXing = Mp3FrameHeader.parse(template, 0).getSideInfoEnd();
+        mFrame = Arrays.copyOf(template, length);
+    }
+
+    /**
+     * @return whether the frame is a Xing/Info frame with LAME's extension, which
+     * {@link #setDelayAndPadding(byte[], int, int, int)} can patch
+     */
+    public static boolean hasLameExtension(byte[] frame, int length) {
+        Mp3FrameHeader header = Mp3FrameHeader.parse(frame, 0);
+        if (header == null || header.getFrameLength() != length) {
+            return false;
+        }
+        int xing = header.getSideInfoEnd();
+        return xing + TAG_CRC_OFFSET + 2 <= length
+                && (matches(frame, xing, "Xing") || matches(frame, xing, "Info"))
+                && matches(frame, xing + LAME_OFFSET, "LAME");
+    }
+
+    private static boolean matches(byte[] data, int offset, String magic) {
+        for (int i = 0; i < magic.length(); i++) {
+            if (data[offset + i] != magic.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count audio bytes, i.e. everything after the tag frame.
+     */
+    public void addBytes(byte[] data, int offset, int length) {
+        mMusicCrc = crc16(mMusicCrc, data, offset, length);
+        mBytes += length;
+    }
+
+    /**
+     * Count one audio frame for the frame count and the seek table.
+     *
+     * @param data   stream
+     * @param offset where the frame starts
+     * @return the frame's length
+     */
+    public int addFrame(byte[] data, int offset) {
+        Mp3FrameHeader header = Mp3FrameHeader.parse(data, offset);
+        if (header == null) {
+            throw new IllegalArgumentException("No mp3 frame at " + offset);
+        }
+        // LAME的标签帧头取编码器最后一帧的mode extension
+        mModeExtension = data[offset + 3] & MODE_EXTENSION_MASK;
+        mFrames++;
+        addVbr(header.getBitRate());
+        return header.getFrameLength();
+    }
+
+    /**
+     * Seek table entry as in LAME's addVbr(): the running bit rate sum every mWant frames.
+     */
+    private void addVbr(int bitRate) {
+        mSum += bitRate;
+        mSeen++;
+        if (mSeen < mWant) {
+            return;
+        }
+        if (mPos < BAG_SIZE) {
+            mBag[mPos++] = (int) mSum;
+            mSeen = 0;
+        }
+        if (mPos == BAG_SIZE) {
+            for (int i = 1; i < BAG_SIZE; i += 2) {
+                mBag[i / 2] = mBag[i];
+            }
+            mWant *= 2;
+            mPos /= 2;
+        }
+    }
+
+    /**
+     * @return frames added so far
+     */
+    public long getFrameCount() {
+        return mFrames;
+    }
+
+    /**
+     * @param delay   encoder delay in samples
+     * @param padding samples added after the input to fill the last frame
+     * @return the tag frame for everything added, to be written over the stream's first frame
+     */
+    public byte[] build(int delay, int padding) {
+        byte[] frame = mFrame.clone();
+        if (mModeExtension >= 0) {
+            frame[3] = (byte) (frame[3] & ~MODE_EXTENSION_MASK | mModeExtension);
+        }
+        putInt(frame, mXing + FRAMES_OFFSET, (int) mFrames);
+        // 流长度包含标签帧本身
+        long streamSize = mBytes + frame.length;
+        putInt(frame, mXing + BYTES_OFFSET, (int) streamSize);
+        if ((frame[mXing + FLAGS_OFFSET + 3] & 4) != 0 && mPos > 0) {
+            for (int i = 1; i < TOC_SIZE; i++) {
+                float j = i / (float) TOC_SIZE;
+                int index = Math.min((int) Math.floor(j * mPos), mPos - 1);
+                float act = mBag[index];
+                float sum = mSum;
+                frame[mXing + TOC_OFFSET + i] = (byte) Math.min(255, (int) (256. * act / sum));
+            }
+        }
+        putInt(frame, mXing + MUSIC_LENGTH_OFFSET, (int) streamSize);
+        frame[mXing + MUSIC_CRC_OFFSET] = (byte) (mMusicCrc >>> 8);
+        frame[mXing + MUSIC_CRC_OFFSET + 1] = (byte) mMusicCrc;
+        setDelayAndPadding(frame, frame.length, delay, padding);
+        return frame;
+    }
+
+    /**
+     * Replace the encoder delay and padding of a LAME tag frame and update its CRC.
+     *
+     * @param frame   tag frame, see {@link #hasLameExtension(byte[], int)}
+     * @param length  its length
+     * @param delay   encoder delay in samples, 0..4095
+     * @param padding padding in samples, 0..4095
+     */
+    public static void setDelayAndPadding(byte[] frame, int length, int delay, int padding) {
+        if (!hasLameExtension(frame, length)) {
+            throw new IllegalArgumentException("Tag frame has no LAME extension");
+        }
+        if (delay < 0 || delay > 0xFFF || padding < 0 || padding > 0xFFF) {
+            throw new IllegalArgumentException("delay and padding are 12 bit: " + delay + ", " + padding);
+        }
+        int offset = Mp3FrameHeader.parse(frame, 0).getSideInfoEnd() + DELAY_PADDING_OFFSET;
+        frame[offset] = (byte) (delay >>> 4);
+        frame[offset + 1] = (byte) ((delay << 4) | (padding >>> 8));
+        frame[offset + 2] = (byte) padding;
+        // 标签CRC覆盖帧头到音乐CRC的所有字节
+        int tagCrc = offset - DELAY_PADDING_OFFSET + TAG_CRC_OFFSET;
+        int crc = crc16(0, frame, 0, tagCrc);
+        frame[tagCrc] = (byte) (crc >>> 8);
+        frame[tagCrc + 1] = (byte) crc;
+    }
+
+    /**
+     * @return delay of a LAME tag frame in samples
+     */
+    public static int getDelay(byte[] frame) {
+        int offset = Mp3FrameHeader.parse(frame, 0).getSideInfoEnd() + DELAY_PADDING_OFFSET;
+        return ((frame[offset] & 0xFF) << 4) | ((frame[offset + 1] & 0xFF) >>> 4);
+    }
+
+    /**
+     * @return padding of a LAME tag frame in samples
+     */
+    public static int getPadding(byte[] frame) {
+        int offset = Mp3FrameHeader.parse(frame, 0).getSideInfoEnd() + DELAY_PADDING_OFFSET;
+        return ((frame[offset + 1] & 0x0F) << 8) | (frame[offset + 2] & 0xFF);
+    }
+
+    private static int crc16(int crc, byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc >>> 8) ^ CRC16_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
@@ -1,9 +1,14 @@
 package com.czt.mp3recorder.util;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Static facade over a single process-wide {@link Mp3Encoder}, kept for
+ * compatibility. New code should create its own {@link Mp3Encoder}, which
+ * does not interfere with other encoders.
+ */
 public class LameUtil {
-	static{
-		System.loadLibrary("mp3lame");
-	}
+	private static volatile Mp3Encoder sEncoder;
 
 	/**
 	 * Initialize LAME.
@@ -23,8 +28,18 @@ public class LameUtil {
 	 *            <p>5 good quality, fast</p>
 	 *            7 ok quality, really fast
 	 */
-	public native static void init(int inSamplerate, int inChannel,
-			int outSamplerate, int outBitrate, int quality);
+	public static void init(int inSamplerate, int inChannel,
+			int outSamplerate, int outBitrate, int quality) {
+		close();
+		sEncoder = new Mp3Encoder(inSamplerate, inChannel, outSamplerate, outBitrate, quality);
+	}
+
+	/**
+	 * @return the encoder created by the last {@link #init}, null after {@link #close()}
+	 */
+	public static Mp3Encoder getEncoder() {
+		return sEncoder;
+	}
 
 	/**
 	 * Encode buffer to mp3.
@@ -44,8 +59,67 @@ public class LameUtil {
 	 *         <p>-3: lame_init_params() not called</p>
 	 *         -4: psycho acoustic problems
 	 */
-	public native static int encode(short[] bufferLeft, short[] bufferRight,
-			int samples, byte[] mp3buf);
+	public static int encode(short[] bufferLeft, short[] bufferRight,
+			int samples, byte[] mp3buf) {
+		return encoder().encode(bufferLeft, bufferRight, samples, mp3buf);
+	}
+
+	/**
+	 * Encode a mono buffer to mp3. Cheaper than passing the same array as both
+	 * channels to {@link #encode(short[], short[], int, byte[])}: the input is
+	 * pinned once, handed to LAME as a single channel and never copied back.
+	 * LAME must have been initialized with one input channel.
+	 *
+	 * @param buffer
+	 *            PCM data.
+	 * @param samples
+	 *            number of samples.
+	 * @param mp3buf
+	 *            result encoded MP3 stream. You must specified
+	 *            "7200 + (1.25 * samples)" length array.
+	 * @return number of bytes output in mp3buf, negative on error, see
+	 *         {@link #encode(short[], short[], int, byte[])}.
+	 */
+	public static int encodeMono(short[] buffer, int samples, byte[] mp3buf) {
+		return encoder().encodeMono(buffer, samples, mp3buf);
+	}
+
+	/**
+	 * Encode interleaved stereo buffer to mp3.
+	 *
+	 * @param bufferInterleaved
+	 *            PCM data, left and right samples alternating.
+	 * @param samples
+	 *            number of samples per channel.
+	 * @param mp3buf
+	 *            result encoded MP3 stream. You must specified
+	 *            "7200 + (1.25 * samples)" length array.
+	 * @return number of bytes output in mp3buf, negative on error, see
+	 *         {@link #encode(short[], short[], int, byte[])}.
+	 */
+	public static int encodeInterleaved(short[] bufferInterleaved,
+			int samples, byte[] mp3buf) {
+		return encoder().encodeInterleaved(bufferInterleaved, samples, mp3buf);
+	}
+
+	/**
+	 * Encode PCM held in a direct buffer, without copying it through a Java array.
+	 * Mono input is passed to LAME as a single channel, stereo input must be interleaved.
+	 *
+	 * @param pcm
+	 *            direct buffer of native-order 16 bit samples, read from index 0.
+	 * @param samples
+	 *            number of samples per channel.
+	 * @param mp3
+	 *            direct buffer receiving the MP3 stream from index 0, at least
+	 *            "7200 + (1.25 * samples)" bytes. Position and limit are not changed.
+	 * @return number of bytes output in mp3, negative on error, see
+	 *         {@link #encode(short[], short[], int, byte[])}.
+	 * @throws IllegalArgumentException a buffer is not direct
+	 */
+	public static int encodeDirect(ByteBuffer pcm, int samples, ByteBuffer mp3) {
+		return encoder().encodeDirect(pcm, samples, mp3);
+	}
 
 	/**
 	 * Flush LAME buffer.
@@ -65,10 +139,35 @@ public class LameUtil {
 	 *            bytes.
 	 * @return number of bytes output to mp3buf. Can be 0.
 	 */
-	public native static int flush(byte[] mp3buf);
+	public static int flush(byte[] mp3buf) {
+		return encoder().flush(mp3buf);
+	}
+
+	/**
+	 * Xing/Info frame for the start of the stream, see {@link Mp3Encoder#getLameTagFrame(byte[])}.
+	 * @param buffer receives the frame
+	 * @return frame length, 0 if there is none
+	 */
+	public static int getLameTagFrame(byte[] buffer) {
+		return encoder().getLameTagFrame(buffer);
+	}
 
 	/**
 	 * Close LAME.
 	 */
-	public native static void close();
+	public static void close() {
+		Mp3Encoder encoder = sEncoder;
+		sEncoder = null;
+		if (encoder != null) {
+			encoder.close();
+		}
+	}
+
+	private static Mp3Encoder encoder() {
+		Mp3Encoder encoder = sEncoder;
+		if (encoder == null) {
+			throw new IllegalStateException("LameUtil.init() not called");
+		}
+		return encoder;
+	}
 }
@@ -0,0 +1,153 @@
+package com.czt.mp3recorder.util;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming mp3 decoder on LAME's hip interface (mpglib), for waveform extraction,
+ * re-encoding and analysis of recordings.
+ * <p>
+ * Feed mp3 bytes in any split with {@link #decode(byte[], int, int, short[])}; each call
+ * decodes at most one frame into the caller's buffer, so keep calling with no new input
+ * until it returns 0 before feeding more. Nothing is allocated per frame on the Java side.
+ * A Xing/Info frame is consumed without output. The decoder is only part of the native
+ * library when it was built with the mpglib sources, see {@link #isSupported()}.
+ * <p>
+ * An instance must only be used by one thread at a time.
+ */
+public class Mp3Decoder implements Closeable {
+    /**
+     * pcm buffers must hold this many samples: one frame of 1152 samples, two channels
+     */
+    public static final int MAX_FRAME_PCM = 1152 * 2;
+
+    private static final int INFO_HEADER_PARSED = 0;
+    private static final int INFO_SAMPLE_RATE = 1;
+    private static final int INFO_CHANNELS = 2;
+    private static final int INFO_BIT_RATE = 3;
+    private static final int INFO_FRAME_SIZE = 4;
+
+    static {
+        LameLibrary.load();
+    }
+
+    private long mHandle;
+    /**
+     * 最近一次解码时的流参数,由native层填写
+     */
+    private final int[] mInfo = new int[5];
+
+    /**
+     * @return whether the loaded libmp3lame contains the mpglib decoder
+     */
+    public static boolean isSupported() {
+        return nativeIsSupported();
+    }
+
+    /**
+     * @throws IllegalStateException the native library was built without the decoder
+     */
+    public Mp3Decoder() {
+        if (!isSupported()) {
+            throw new IllegalStateException("libmp3lame was built without the mpglib decoder");
+        }
+        mHandle = nativeInit();
+        if (mHandle == 0) {
+            throw new IllegalStateException("hip_decode_init failed");
+        }
+    }
+
+    /**
+     * Queue mp3 bytes and decode at most one frame.
+     *
+     * @param mp3    mp3 bytes, null or length 0 to decode only what is already queued
+     * @param offset start in mp3
+     * @param length number of bytes
+     * @param pcm    receives the frame, interleaved if stereo; at least {@link #MAX_FRAME_PCM} long
+     * @return samples per channel written, 0 if more input is needed, -1 on a decode error
+     */
+    public int decode(byte[] mp3, int offset, int length, short[] pcm) {
+        if (pcm.length < MAX_FRAME_PCM) {
+            throw new IllegalArgumentException("pcm must hold " + MAX_FRAME_PCM + " samples");
+        }
+        if (mp3 != null && (offset < 0 || length < 0 || offset + length > mp3.length)) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + mp3.length);
+        }
+        return nativeDecode(handle(), mp3, offset, length, pcm, mInfo);
+    }
+
+    /**
+     * Same as {@link #decode(byte[], int, int, short[])} with direct buffers, so neither
+     * side is copied through a Java array. Positions and limits are ignored.
+     *
+     * @param mp3    direct buffer with mp3 bytes from index 0, null to decode what is queued
+     * @param length number of bytes
+     * @param pcm    direct buffer in native byte order, at least {@link #MAX_FRAME_PCM} shorts
+     * @return samples per channel written, 0 if more input is needed, -1 on a decode error
+     */
+    public int decodeDirect(ByteBuffer mp3, int length, ByteBuffer pcm) {
+        return nativeDecodeDirect(handle(), mp3, length, pcm, mInfo);
+    }
+
+    /**
+     * @return whether a frame header has been seen, the getters below are 0 before that
+     */
+    public boolean isHeaderParsed() {
+        return mInfo[INFO_HEADER_PARSED] != 0;
+    }
+
+    public int getSampleRate() {
+        return mInfo[INFO_SAMPLE_RATE];
+    }
+
+    public int getChannelCount() {
+        return mInfo[INFO_CHANNELS];
+    }
+
+    /**
+     * @return bit rate of the last frame in kbps
+     */
+    public int getBitRate() {
+        return mInfo[INFO_BIT_RATE];
+    }
+
+    /**
+     * @return samples per channel in one frame
+     */
+    public int getFrameSize() {
+        return mInfo[INFO_FRAME_SIZE];
+    }
+
+    public boolean isClosed() {
+        return mHandle == 0;
+    }
+
+    /**
+     * Free the native decoder. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (mHandle != 0) {
+            long handle = mHandle;
+            mHandle = 0;
+            nativeClose(handle);
+        }
+    }
+
+    private long handle() {
+        if (mHandle == 0) {
+            throw new IllegalStateException("Mp3Decoder is closed");
+        }
+        return mHandle;
+    }
+
+    private static native boolean nativeIsSupported();
+
+    private static native long nativeInit();
+
+    private static native int nativeDecode(long handle, byte[] mp3, int offset, int length, short[] pcm, int[] info);
+
+    private static native int nativeDecodeDirect(long handle, ByteBuffer mp3, int length, ByteBuffer pcm, int[] info);
+
+    private static native void nativeClose(long handle);
+}
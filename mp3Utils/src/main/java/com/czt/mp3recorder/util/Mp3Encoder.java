@@ -0,0 +1,326 @@
+package com.czt.mp3recorder.util;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * One LAME encoder instance, owning its own native state.
+ * <p>
+ * Separate instances may encode in parallel on separate threads; a single
+ * instance must only be used by one thread at a time. {@link #close()} frees
+ * the native encoder, after which every call throws {@link IllegalStateException}.
+ */
+public class Mp3Encoder implements Closeable {
+    /**
+     * Constant bit rate, every frame uses {@link Builder#setBitRate(int)}
+     */
+    public static final int VBR_OFF = 0;
+    /**
+     * Average bit rate: frame sizes vary around {@link Builder#setBitRate(int)}, so the
+     * file size is still predictable
+     */
+    public static final int VBR_ABR = 3;
+    /**
+     * Variable bit rate driven by {@link Builder#setVbrQuality(int)} (LAME's vbr_mtrh, as -V),
+     * quiet passages cost almost nothing but the file size depends on the content
+     */
+    public static final int VBR_MTRH = 4;
+
+    static {
+        LameLibrary.load();
+    }
+
+    private long mHandle;
+    private final int mChannelCount;
+    private final int mInSampleRate;
+
+    /**
+     * Create and initialize a LAME encoder.
+     *
+     * @param inSamplerate  input sample rate in Hz.
+     * @param inChannel     number of channels in input stream.
+     * @param outSamplerate output sample rate in Hz.
+     * @param outBitrate    brate compression ratio in KHz.
+     * @param quality       quality=0..9. 0=best (very slow). 9=worst.
+     * @throws IllegalArgumentException LAME rejected the parameters
+     */
+    public Mp3Encoder(int inSamplerate, int inChannel, int outSamplerate, int outBitrate, int quality) {
+        this(new Builder(inSamplerate, inChannel).setOutSampleRate(outSamplerate)
+                .setBitRate(outBitrate).setQuality(quality));
+    }
+
+    private Mp3Encoder(Builder builder) {
+        mHandle = nativeInit(builder.inSampleRate, builder.channelCount, builder.outSampleRate,
+                builder.bitRate, builder.quality, builder.vbrMode, builder.vbrQuality,
+                builder.minBitRate, builder.maxBitRate, builder.disableReservoir, builder.writeLameTag);
+        if (mHandle == 0) {
+            throw new IllegalArgumentException("LAME rejected " + builder);
+        }
+        mChannelCount = builder.channelCount;
+        mInSampleRate = builder.inSampleRate;
+    }
+
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    /**
+     * @return sample rate of the pcm passed to the encode methods, in Hz
+     */
+    public int getInSampleRate() {
+        return mInSampleRate;
+    }
+
+    /**
+     * @return samples per channel in one mp3 frame, 1152 for MPEG-1 and 576 for MPEG-2/2.5
+     */
+    public int getFrameSize() {
+        return nativeGetFrameSize(handle());
+    }
+
+    /**
+     * Encode buffer to mp3, see {@link LameUtil#encode(short[], short[], int, byte[])}.
+     */
+    public int encode(short[] bufferLeft, short[] bufferRight, int samples, byte[] mp3buf) {
+        return nativeEncode(handle(), bufferLeft, bufferRight, samples, mp3buf);
+    }
+
+    /**
+     * Encode a mono buffer to mp3, see {@link LameUtil#encodeMono(short[], int, byte[])}.
+     */
+    public int encodeMono(short[] buffer, int samples, byte[] mp3buf) {
+        return nativeEncodeMono(handle(), buffer, samples, mp3buf);
+    }
+
+    /**
+     * Encode interleaved stereo to mp3, see {@link LameUtil#encodeInterleaved(short[], int, byte[])}.
+     */
+    public int encodeInterleaved(short[] bufferInterleaved, int samples, byte[] mp3buf) {
+        return nativeEncodeInterleaved(handle(), bufferInterleaved, samples, mp3buf);
+    }
+
+    /**
+     * Encode PCM in a direct buffer, see {@link LameUtil#encodeDirect(ByteBuffer, int, ByteBuffer)}.
+     */
+    public int encodeDirect(ByteBuffer pcm, int samples, ByteBuffer mp3) {
+        return nativeEncodeDirect(handle(), pcm, samples, mp3);
+    }
+
+    /**
+     * Flush LAME buffer, see {@link LameUtil#flush(byte[])}.
+     */
+    public int flush(byte[] mp3buf) {
+        return nativeFlush(handle(), mp3buf);
+    }
+
+    /**
+     * End the current file without ending the stream: write out every complete frame but
+     * keep the pcm LAME still buffers and its encoder state, so the next file continues
+     * exactly where this one stops and the two play back without a gap. Call
+     * {@link #getLameTagFrame(byte[])} for the finished file, then
+     * {@link #startNextFile()} before encoding into the next one.
+     *
+     * @param mp3buf receives the remaining frames
+     * @return number of bytes written to mp3buf, negative on a LAME error
+     */
+    public int flushNoGap(byte[] mp3buf) {
+        return nativeFlushNoGap(handle(), mp3buf);
+    }
+
+    /**
+     * Begin a new file after {@link #flushNoGap(byte[])}: resets the frame counters and
+     * emits a fresh placeholder for the Xing/Info frame, if enabled.
+     */
+    public void startNextFile() {
+        nativeInitBitstream(handle());
+    }
+
+    /**
+     * The Xing/Info frame describing the whole stream: frame count, byte count, seek
+     * table and LAME's encoder delay/padding. Call after {@link #flush(byte[])} (or
+     * {@link #flushNoGap(byte[])} for one file of a gapless series) and write
+     * it over the placeholder frame LAME emitted at the start of the stream, see
+     * {@link Builder#setWriteLameTag(boolean)}.
+     *
+     * @param buffer receives the frame
+     * @return frame length; 0 if the tag is disabled or nothing was encoded. A result larger
+     * than the buffer means nothing was written and a buffer this large is needed.
+     */
+    public int getLameTagFrame(byte[] buffer) {
+        return nativeGetLameTagFrame(handle(), buffer);
+    }
+
+    public boolean isClosed() {
+        return mHandle == 0;
+    }
+
+    /**
+     * Free the native encoder. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (mHandle != 0) {
+            long handle = mHandle;
+            mHandle = 0;
+            nativeClose(handle);
+        }
+    }
+
+    /**
+     * Encoder settings beyond the basic ones of the {@link Mp3Encoder} constructor.
+     */
+    public static class Builder {
+        private final int inSampleRate;
+        private final int channelCount;
+        private int outSampleRate;
+        private int bitRate = 32;
+        private int quality = 7;
+        private int vbrMode = VBR_OFF;
+        private int vbrQuality = 4;
+        private int minBitRate;
+        private int maxBitRate;
+        private boolean disableReservoir;
+        private boolean writeLameTag = true;
+
+        /**
+         * @param inSampleRate input sample rate in Hz
+         * @param channelCount number of channels in input stream
+         */
+        public Builder(int inSampleRate, int channelCount) {
+            this.inSampleRate = inSampleRate;
+            this.channelCount = channelCount;
+        }
+
+        /**
+         * @param outSampleRate output sample rate in Hz, 0 lets LAME choose
+         */
+        public Builder setOutSampleRate(int outSampleRate) {
+            this.outSampleRate = outSampleRate;
+            return this;
+        }
+
+        /**
+         * @param bitRate CBR bit rate in kbps, or the mean bit rate for {@link #VBR_ABR}
+         */
+        public Builder setBitRate(int bitRate) {
+            this.bitRate = bitRate;
+            return this;
+        }
+
+        /**
+         * @param quality 0=best (very slow), 9=worst
+         */
+        public Builder setQuality(int quality) {
+            this.quality = quality;
+            return this;
+        }
+
+        /**
+         * @param vbrMode {@link #VBR_OFF} (default), {@link #VBR_ABR} or {@link #VBR_MTRH}
+         */
+        public Builder setVbrMode(int vbrMode) {
+            this.vbrMode = vbrMode;
+            return this;
+        }
+
+        /**
+         * @param vbrQuality {@link #VBR_MTRH} quality 0..9 like LAME's -V, 0=largest file, default 4
+         */
+        public Builder setVbrQuality(int vbrQuality) {
+            this.vbrQuality = vbrQuality;
+            return this;
+        }
+
+        /**
+         * @param minBitRate lowest frame bit rate in kbps for VBR/ABR, 0 for LAME's default.
+         *                   Digital silence may still use smaller frames.
+         */
+        public Builder setMinBitRate(int minBitRate) {
+            this.minBitRate = minBitRate;
+            return this;
+        }
+
+        /**
+         * @param maxBitRate highest frame bit rate in kbps for VBR/ABR, 0 for LAME's default
+         */
+        public Builder setMaxBitRate(int maxBitRate) {
+            this.maxBitRate = maxBitRate;
+            return this;
+        }
+
+        /**
+         * Without the bit reservoir every frame holds its own audio data, so frames of
+         * independently encoded pieces can be cut and joined at any frame boundary.
+         * Costs some quality at the same bit rate.
+         */
+        public Builder setDisableReservoir(boolean disableReservoir) {
+            this.disableReservoir = disableReservoir;
+            return this;
+        }
+
+        /**
+         * @param writeLameTag whether LAME starts the stream with an empty Xing/Info frame, default true;
+         *                     its content comes from {@link #getLameTagFrame(byte[])} at the end
+         */
+        public Builder setWriteLameTag(boolean writeLameTag) {
+            this.writeLameTag = writeLameTag;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException LAME rejected the parameters
+         */
+        public Mp3Encoder build() {
+            return new Mp3Encoder(this);
+        }
+
+        @Override
+        public String toString() {
+            String rate;
+            if (vbrMode == VBR_MTRH) {
+                rate = "V" + vbrQuality;
+            } else {
+                rate = (vbrMode == VBR_ABR ? "ABR " : "") + bitRate + "kbps";
+            }
+            if (vbrMode != VBR_OFF && (minBitRate > 0 || maxBitRate > 0)) {
+                rate += " [" + minBitRate + ".." + maxBitRate + "]";
+            }
+            return inSampleRate + "Hz/" + channelCount + "ch -> " + outSampleRate + "Hz "
+                    + rate + " q" + quality + (disableReservoir ? " no reservoir" : "");
+        }
+    }
+
+    private long handle() {
+        if (mHandle == 0) {
+            throw new IllegalStateException("Mp3Encoder is closed");
+        }
+        return mHandle;
+    }
+
+    private static native long nativeInit(int inSamplerate, int inChannel,
+                                          int outSamplerate, int outBitrate, int quality,
+                                          int vbrMode, int vbrQuality, int minBitrate, int maxBitrate,
+                                          boolean disableReservoir, boolean writeLameTag);
+
+    private static native int nativeGetFrameSize(long handle);
+
+    private static native int nativeEncode(long handle, short[] bufferLeft, short[] bufferRight,
+                                           int samples, byte[] mp3buf);
+
+    private static native int nativeEncodeMono(long handle, short[] buffer, int samples, byte[] mp3buf);
+
+    private static native int nativeEncodeInterleaved(long handle, short[] bufferInterleaved,
+                                                      int samples, byte[] mp3buf);
+
+    private static native int nativeEncodeDirect(long handle, ByteBuffer pcm, int samples, ByteBuffer mp3);
+
+    private static native int nativeFlush(long handle, byte[] mp3buf);
+
+    private static native int nativeFlushNoGap(long handle, byte[] mp3buf);
+
+    private static native void nativeInitBitstream(long handle);
+
+    private static native int nativeGetLameTagFrame(long handle, byte[] buffer);
+
+    private static native void nativeClose(long handle);
+}
@@ -0,0 +1,197 @@
+package com.czt.mp3recorder.util;
+
+/**
+ * Header of one MPEG audio Layer III frame, enough to walk a stream frame by frame.
+ */
+public class Mp3FrameHeader {
+    public static final int HEADER_SIZE = 4;
+
+    public static final int MPEG_1 = 3;
+    public static final int MPEG_2 = 2;
+    public static final int MPEG_2_5 = 0;
+
+    public static final int CHANNEL_MODE_STEREO = 0;
+    public static final int CHANNEL_MODE_JOINT_STEREO = 1;
+    public static final int CHANNEL_MODE_DUAL_CHANNEL = 2;
+    public static final int CHANNEL_MODE_MONO = 3;
+
+    private static final int[] BITRATES_V1 = {
+            0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    private static final int[] BITRATES_V2 = {
+            0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+    private static final int[] SAMPLE_RATES_V1 = {44100, 48000, 32000};
+
+    private final int mVersion;
+    private final int mBitRate;
+    private final int mSampleRate;
+    private final boolean mPadding;
+    private final boolean mCrc;
+    private final int mChannelMode;
+
+    private Mp3FrameHeader(int version, int bitRate, int sampleRate, boolean padding, boolean crc, int channelMode) {
+        mVersion = version;
+        mBitRate = bitRate;
+        mSampleRate = sampleRate;
+        mPadding = padding;
+        mCrc = crc;
+        mChannelMode = channelMode;
+    }
+
+    /**
+     * @param header the four header bytes, big-endian
+     * @return the header, or null if this is not the start of a Layer III frame with a
+     * bit rate (free format frames cannot be walked without searching for the next sync)
+     */
+    public static Mp3FrameHeader parse(int header) {
+        if (!isFrameHeader(header)) {
+            return null;
+        }
+        return new Mp3FrameHeader(version(header), bitRate(header), sampleRate(header), ((header >>> 9) & 1) != 0,
+                ((header >>> 16) & 1) == 0, (header >>> 6) & 3);
+    }
+
+    /**
+     * Allocation free check, for walking many frames.
+     *
+     * @param header the four header bytes, big-endian
+     * @return whether {@link #parse(int)} would return a header
+     */
+    public static boolean isFrameHeader(int header) {
+        if ((header & 0xFFE00000) != 0xFFE00000) {
+            return false;
+        }
+        int bitrateIndex = (header >>> 12) & 0xF;
+        return version(header) != 1 && ((header >>> 17) & 3) == 1
+                && bitrateIndex != 0 && bitrateIndex != 15 && ((header >>> 10) & 3) != 3;
+    }
+
+    /**
+     * Allocation free {@link #getFrameLength()}.
+     *
+     * @param header the four header bytes, big-endian
+     * @return frame length in bytes, 0 if this is not a frame header
+     */
+    public static int frameLength(int header) {
+        if (!isFrameHeader(header)) {
+            return 0;
+        }
+        int slots = version(header) == MPEG_1 ? 144 : 72;
+        return slots * bitRate(header) * 1000 / sampleRate(header) + ((header >>> 9) & 1);
+    }
+
+    /**
+     * @param header a valid frame header
+     * @return sample rate in Hz
+     */
+    public static int sampleRate(int header) {
+        int sampleRate = SAMPLE_RATES_V1[(header >>> 10) & 3];
+        int version = version(header);
+        if (version == MPEG_2) {
+            sampleRate >>= 1;
+        } else if (version == MPEG_2_5) {
+            sampleRate >>= 2;
+        }
+        return sampleRate;
+    }
+
+    /**
+     * @param header a valid frame header
+     * @return bit rate in kbps
+     */
+    public static int bitRate(int header) {
+        int bitrateIndex = (header >>> 12) & 0xF;
+        return version(header) == MPEG_1 ? BITRATES_V1[bitrateIndex] : BITRATES_V2[bitrateIndex];
+    }
+
+    /**
+     * @param header a valid frame header
+     * @return samples per channel in the frame
+     */
+    public static int samplesPerFrame(int header) {
+        return version(header) == MPEG_1 ? 1152 : 576;
+    }
+
+    private static int version(int header) {
+        return (header >>> 19) & 3;
+    }
+
+    /**
+     * @return the header of the frame starting at offset, or null
+     */
+    public static Mp3FrameHeader parse(byte[] data, int offset) {
+        if (offset < 0 || offset + HEADER_SIZE > data.length) {
+            return null;
+        }
+        return parse(((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF));
+    }
+
+    /**
+     * @return {@link #MPEG_1}, {@link #MPEG_2} or {@link #MPEG_2_5}
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return bit rate in kbps
+     */
+    public int getBitRate() {
+        return mBitRate;
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public boolean hasPadding() {
+        return mPadding;
+    }
+
+    public boolean hasCrc() {
+        return mCrc;
+    }
+
+    public int getChannelMode() {
+        return mChannelMode;
+    }
+
+    public int getChannelCount() {
+        return mChannelMode == CHANNEL_MODE_MONO ? 1 : 2;
+    }
+
+    /**
+     * @return samples per channel, 1152 for MPEG-1 and 576 for MPEG-2/2.5
+     */
+    public int getSamplesPerFrame() {
+        return mVersion == MPEG_1 ? 1152 : 576;
+    }
+
+    /**
+     * @return length of the whole frame in bytes, header included
+     */
+    public int getFrameLength() {
+        int slots = mVersion == MPEG_1 ? 144 : 72;
+        return slots * mBitRate * 1000 / mSampleRate + (mPadding ? 1 : 0);
+    }
+
+    /**
+     * @return offset of the side information's end, where a Xing/Info tag would start
+     */
+    public int getSideInfoEnd() {
+        int sideInfo;
+        if (mVersion == MPEG_1) {
+            sideInfo = mChannelMode == CHANNEL_MODE_MONO ? 17 : 32;
+        } else {
+            sideInfo = mChannelMode == CHANNEL_MODE_MONO ? 9 : 17;
+        }
+        return HEADER_SIZE + (mCrc ? 2 : 0) + sideInfo;
+    }
+
+    @Override
+    public String toString() {
+        return "MPEG-" + (mVersion == MPEG_1 ? "1" : mVersion == MPEG_2 ? "2" : "2.5") + " Layer III "
+                + mBitRate + "kbps " + mSampleRate + "Hz " + (getChannelCount() == 1 ? "mono" : "stereo")
+                + (mPadding ? " padded" : "");
+    }
+}
@@ -0,0 +1,551 @@
+package com.czt.mp3recorder.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Walks the frames of an mp3 file without decoding them: frame count, exact duration,
+ * bit rates and the byte offset of every frame.
+ * <p>
+ * The file is read sequentially through one reusable direct buffer and every frame is
+ * handled with {@link Mp3FrameHeader}'s static helpers, so the only allocations are the
+ * result and its offset table. Leading ID3v2 tags are skipped, a Xing/Info or VBRI frame
+ * is read for its counts (and LAME's encoder delay/padding) and not counted as audio,
+ * and damaged data is skipped by searching for the next two consecutive frames of the
+ * same stream. An instance reuses its buffer and must not scan on two threads at once.
+ */
+public class Mp3FrameScanner {
+    private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    /**
+     * header bits every frame of one stream shares: sync, version, layer and sample rate
+     */
+    private static final int STREAM_MASK = 0xFFFE0C00;
+    private static final int ID3V2_HEADER_SIZE = 10;
+    private static final int VBRI_OFFSET = Mp3FrameHeader.HEADER_SIZE + 32;
+
+    private final ByteBuffer mBuffer;
+    private boolean mCollectOffsets = true;
+    private boolean mTrustInfoTag;
+    private FileChannel mChannel;
+    private long mSize;
+    private long mBufferStart;
+    private int mBufferLength;
+
+    public Mp3FrameScanner() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize read buffer size in bytes, at least 4096
+     */
+    public Mp3FrameScanner(int bufferSize) {
+        if (bufferSize < 4096) {
+            throw new IllegalArgumentException("bufferSize must be at least 4096");
+        }
+        mBuffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * @param collectOffsets keep the offset of every frame, default true; without them a
+     *                       scan allocates nothing per frame at all
+     */
+    public Mp3FrameScanner setCollectOffsets(boolean collectOffsets) {
+        mCollectOffsets = collectOffsets;
+        return this;
+    }
+
+    /**
+     * @param trustInfoTag when the file has a Xing/Info or VBRI frame count, take it and
+     *                     stop after the first frame instead of walking the file. O(1),
+     *                     but no frame offsets and no check against a truncated file.
+     */
+    public Mp3FrameScanner setTrustInfoTag(boolean trustInfoTag) {
+        mTrustInfoTag = trustInfoTag;
+        return this;
+    }
+
+    /**
+     * @param file mp3 file
+     * @return what was found, a file without frames gives a frame count of 0
+     * @throws IOException read failed
+     */
+    public Result scan(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            return scan(in.getChannel());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Scan from the start of the channel. Reads are positional, the channel position
+     * is not changed.
+     *
+     * @param channel readable channel over the whole file
+     * @return what was found
+     * @throws IOException read failed
+     */
+    public Result scan(FileChannel channel) throws IOException {
+        mChannel = channel;
+        mSize = channel.size();
+        mBufferStart = 0;
+        mBufferLength = 0;
+        try {
+            return walk();
+        } finally {
+            mChannel = null;
+        }
+    }
+
+    private Result walk() throws IOException {
+        Result result = new Result();
+        long position = skipId3v2(0);
+        result.mDataOffset = position;
+        long first = sync(position, 0, mSize);
+        if (first < 0) {
+            result.mTrailingBytes = mSize - position;
+            return result;
+        }
+        result.mSkippedBytes = first - position;
+        int header = headerAt(first);
+        int stream = header & STREAM_MASK;
+        result.mHeader = Mp3FrameHeader.parse(header);
+        position = first;
+        if (readInfoTag(first, result)) {
+            position += result.mHeader.getFrameLength();
+            if (mTrustInfoTag && result.mInfoTagFrames > 0) {
+                result.mFrameCount = result.mInfoTagFrames;
+                result.mAudioBytes = result.mInfoTagBytes > 0
+                        ? result.mInfoTagBytes - (position - first) : mSize - position;
+                result.mFromInfoTag = true;
+                return result;
+            }
+        }
+        result.mFirstFrameOffset = position;
+        if (mCollectOffsets) {
+            result.mOffsets = new long[(int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max(16, (mSize - position) / result.mHeader.getFrameLength() + 16))];
+        }
+        while (position + Mp3FrameHeader.HEADER_SIZE <= mSize) {
+            header = headerAt(position);
+            int length = (header & STREAM_MASK) == stream ? Mp3FrameHeader.frameLength(header) : 0;
+            long next = position + length;
+            if (length > 0 && next > mSize) {
+                // 文件末尾不完整的帧,例如录音中断
+                result.mTruncatedBytes = mSize - position;
+                return result;
+            }
+            if (length > 0 && next + Mp3FrameHeader.HEADER_SIZE <= mSize
+                    && (headerAt(next) & STREAM_MASK) != stream) {
+                // 后面不是帧:若本帧范围内能重新同步,本帧头是损坏数据里的伪帧头
+                long resync = sync(position + 1, stream, next);
+                if (resync >= 0) {
+                    length = 0;
+                    next = resync;
+                }
+            } else if (length == 0) {
+                next = sync(position + 1, stream, mSize);
+                if (next < 0) {
+                    // ID3v1/APE标签或其他尾部数据
+                    break;
+                }
+            }
+            if (length > 0) {
+                result.addFrame(position, length, Mp3FrameHeader.bitRate(header));
+            } else {
+                result.mResyncCount++;
+                result.mSkippedBytes += next - position;
+            }
+            position = next;
+        }
+        result.mTrailingBytes = mSize - position;
+        return result;
+    }
+
+    /**
+     * @return position after any ID3v2 tags starting at position
+     */
+    private long skipId3v2(long position) throws IOException {
+        while (position + ID3V2_HEADER_SIZE <= mSize) {
+            ensure(position, ID3V2_HEADER_SIZE);
+            int base = (int) (position - mBufferStart);
+            if (mBuffer.get(base) != 'I' || mBuffer.get(base + 1) != 'D' || mBuffer.get(base + 2) != '3') {
+                break;
+            }
+            int flags = mBuffer.get(base + 5);
+            // syncsafe整数,每字节7位
+            long size = ((mBuffer.get(base + 6) & 0x7F) << 21) | ((mBuffer.get(base + 7) & 0x7F) << 14)
+                    | ((mBuffer.get(base + 8) & 0x7F) << 7) | (mBuffer.get(base + 9) & 0x7F);
+            position += ID3V2_HEADER_SIZE + size + ((flags & 0x10) != 0 ? ID3V2_HEADER_SIZE : 0);
+        }
+        return Math.min(position, mSize);
+    }
+
+    /**
+     * Find the next frame that is followed by another frame of the same stream (or ends
+     * exactly at the end of the file).
+     *
+     * @param stream {@link #STREAM_MASK} bits the frames must have, 0 for any stream
+     * @param limit  search frames starting before this offset only
+     * @return offset of the frame, -1 if there is none
+     */
+    private long sync(long position, int stream, long limit) throws IOException {
+        for (limit = Math.min(limit, mSize - Mp3FrameHeader.HEADER_SIZE + 1); position < limit; position++) {
+            int header = headerAt(position);
+            if ((header >>> 24) != 0xFF) {
+                continue;
+            }
+            int length = Mp3FrameHeader.frameLength(header);
+            if (length == 0 || (stream != 0 && (header & STREAM_MASK) != stream)) {
+                continue;
+            }
+            long next = position + length;
+            if (next == mSize) {
+                return position;
+            }
+            if (next + Mp3FrameHeader.HEADER_SIZE <= mSize) {
+                int nextHeader = headerAt(next);
+                if (Mp3FrameHeader.isFrameHeader(nextHeader)
+                        && (nextHeader & STREAM_MASK) == (header & STREAM_MASK)) {
+                    return position;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read a Xing/Info or VBRI header from the frame at position.
+     *
+     * @return whether the frame is a tag frame rather than audio
+     */
+    private boolean readInfoTag(long position, Result result) throws IOException {
+        Mp3FrameHeader header = result.mHeader;
+        int length = (int) Math.min(header.getFrameLength(), mSize - position);
+        ensure(position, length);
+        int base = (int) (position - mBufferStart);
+        int xing = header.getSideInfoEnd();
+        if (xing + 8 <= length && (matches(base + xing, "Xing") || matches(base + xing, "Info"))) {
+            result.mInfoTag = matches(base + xing, "Xing") ? "Xing" : "Info";
+            int flags = mBuffer.getInt(base + xing + 4);
+            int field = xing + 8;
+            if ((flags & 1) != 0 && field + 4 <= length) {
+                result.mInfoTagFrames = mBuffer.getInt(base + field) & 0xFFFFFFFFL;
+                field += 4;
+            }
+            if ((flags & 2) != 0 && field + 4 <= length) {
+                result.mInfoTagBytes = mBuffer.getInt(base + field) & 0xFFFFFFFFL;
+                field += 4;
+            }
+            if ((flags & 4) != 0) {
+                field += 100;// TOC
+            }
+            if ((flags & 8) != 0) {
+                field += 4;// quality
+            }
+            // LAME扩展头: 9字节版本字符串,偏移21处是12位编码延迟和12位尾部填充
+            if (field + 24 <= length && (matches(base + field, "LAME") || matches(base + field, "Lavc")
+                    || matches(base + field, "Lavf"))) {
+                int b21 = mBuffer.get(base + field + 21) & 0xFF;
+                int b22 = mBuffer.get(base + field + 22) & 0xFF;
+                int b23 = mBuffer.get(base + field + 23) & 0xFF;
+                result.mEncoderDelay = (b21 << 4) | (b22 >>> 4);
+                result.mEncoderPadding = ((b22 & 0x0F) << 8) | b23;
+            }
+            return true;
+        }
+        if (VBRI_OFFSET + 18 <= length && matches(base + VBRI_OFFSET, "VBRI")) {
+            result.mInfoTag = "VBRI";
+            result.mInfoTagBytes = mBuffer.getInt(base + VBRI_OFFSET + 10) & 0xFFFFFFFFL;
+            result.mInfoTagFrames = mBuffer.getInt(base + VBRI_OFFSET + 14) & 0xFFFFFFFFL;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean matches(int index, String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (mBuffer.get(index + i) != id.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int headerAt(long position) throws IOException {
+        ensure(position, Mp3FrameHeader.HEADER_SIZE);
+        return mBuffer.getInt((int) (position - mBufferStart));
+    }
+
+    /**
+     * Make the buffer hold [position, position + length), as far as the file goes.
+     */
+    private void ensure(long position, int length) throws IOException {
+        if (position >= mBufferStart && position + length <= mBufferStart + mBufferLength) {
+            return;
+        }
+        mBuffer.clear();
+        while (mBuffer.hasRemaining()) {
+            if (mChannel.read(mBuffer, position + mBuffer.position()) < 0) {
+                break;
+            }
+        }
+        mBufferStart = position;
+        mBufferLength = mBuffer.position();
+        if (mBufferLength < length) {
+            throw new IOException("Unexpected end of file at " + position);
+        }
+    }
+
+    /**
+     * Layout of one scanned file.
+     */
+    public static class Result {
+        private long mDataOffset;
+        private long mFirstFrameOffset = -1;
+        private Mp3FrameHeader mHeader;
+        private String mInfoTag;
+        private long mInfoTagFrames = -1;
+        private long mInfoTagBytes = -1;
+        private int mEncoderDelay;
+        private int mEncoderPadding;
+        private boolean mFromInfoTag;
+        private long mFrameCount;
+        private long mAudioBytes;
+        private long mEndOffset;
+        private int mMinBitRate;
+        private int mMaxBitRate;
+        private int mResyncCount;
+        private long mSkippedBytes;
+        private long mTruncatedBytes;
+        private long mTrailingBytes;
+        private long[] mOffsets;
+
+        Result() {
+        }
+
+        private void addFrame(long offset, int length, int bitRate) {
+            if (mOffsets != null) {
+                if (mFrameCount == mOffsets.length) {
+                    mOffsets = Arrays.copyOf(mOffsets, (int) Math.min(Integer.MAX_VALUE - 8, mFrameCount * 2));
+                }
+                if (mFrameCount < mOffsets.length) {
+                    mOffsets[(int) mFrameCount] = offset;
+                }
+            }
+            if (mFrameCount == 0 || bitRate < mMinBitRate) {
+                mMinBitRate = bitRate;
+            }
+            if (bitRate > mMaxBitRate) {
+                mMaxBitRate = bitRate;
+            }
+            mFrameCount++;
+            mAudioBytes += length;
+            mEndOffset = offset + length;
+        }
+
+        /**
+         * @return offset after any ID3v2 tags
+         */
+        public long getDataOffset() {
+            return mDataOffset;
+        }
+
+        /**
+         * @return offset of the first audio frame, -1 if it was not walked to
+         */
+        public long getFirstFrameOffset() {
+            return mFirstFrameOffset;
+        }
+
+        /**
+         * @return header of the first frame, null if the file has no frames
+         */
+        public Mp3FrameHeader getHeader() {
+            return mHeader;
+        }
+
+        /**
+         * @return "Xing", "Info" (the CBR form) or "VBRI", null if the file has no tag frame
+         */
+        public String getInfoTag() {
+            return mInfoTag;
+        }
+
+        /**
+         * @return audio frame count stored in the tag, -1 if none
+         */
+        public long getInfoTagFrameCount() {
+            return mInfoTagFrames;
+        }
+
+        /**
+         * @return stream length in bytes stored in the tag, -1 if none
+         */
+        public long getInfoTagByteCount() {
+            return mInfoTagBytes;
+        }
+
+        /**
+         * @return samples the encoder added at the start, from a LAME tag, else 0
+         */
+        public int getEncoderDelay() {
+            return mEncoderDelay;
+        }
+
+        /**
+         * @return samples the encoder added at the end, from a LAME tag, else 0
+         */
+        public int getEncoderPadding() {
+            return mEncoderPadding;
+        }
+
+        /**
+         * @return true if the counts come from the tag because the frames were not walked,
+         * see {@link #setTrustInfoTag(boolean)}
+         */
+        public boolean isFromInfoTag() {
+            return mFromInfoTag;
+        }
+
+        /**
+         * @return number of audio frames, the tag frame not included
+         */
+        public long getFrameCount() {
+            return mFrameCount;
+        }
+
+        /**
+         * @return bytes of audio frames, the tag frame not included
+         */
+        public long getAudioBytes() {
+            return mAudioBytes;
+        }
+
+        /**
+         * @return offset just after the last complete frame, 0 if the frames were not walked
+         */
+        public long getEndOffset() {
+            return mEndOffset;
+        }
+
+        public int getSampleRate() {
+            return mHeader == null ? 0 : mHeader.getSampleRate();
+        }
+
+        /**
+         * Samples per channel of the original audio: all frames less LAME's encoder delay and,
+         * if the file is complete, its padding.
+         *
+         * @return sample count
+         */
+        public long getSampleCount() {
+            if (mHeader == null) {
+                return 0;
+            }
+            long samples = mFrameCount * mHeader.getSamplesPerFrame() - mEncoderDelay;
+            // 文件被截断时尾部填充已不在文件中
+            if (mInfoTagFrames < 0 || mInfoTagFrames == mFrameCount) {
+                samples -= mEncoderPadding;
+            }
+            return Math.max(0, samples);
+        }
+
+        public long getDurationMicros() {
+            return mHeader == null ? 0 : getSampleCount() * 1000000L / mHeader.getSampleRate();
+        }
+
+        public long getDurationMillis() {
+            return getDurationMicros() / 1000;
+        }
+
+        /**
+         * @return lowest frame bit rate in kbps, 0 if the frames were not walked
+         */
+        public int getMinBitRate() {
+            return mMinBitRate;
+        }
+
+        /**
+         * @return highest frame bit rate in kbps, 0 if the frames were not walked
+         */
+        public int getMaxBitRate() {
+            return mMaxBitRate;
+        }
+
+        /**
+         * @return average bit rate in kbps over all audio frames
+         */
+        public double getAverageBitRate() {
+            if (mHeader == null || mFrameCount == 0) {
+                return 0;
+            }
+            double seconds = (double) mFrameCount * mHeader.getSamplesPerFrame() / mHeader.getSampleRate();
+            return mAudioBytes * 8 / seconds / 1000;
+        }
+
+        /**
+         * @return number of times damaged data had to be skipped between frames
+         */
+        public int getResyncCount() {
+            return mResyncCount;
+        }
+
+        /**
+         * @return bytes skipped before the first frame and while resyncing
+         */
+        public long getSkippedBytes() {
+            return mSkippedBytes;
+        }
+
+        /**
+         * @return bytes of an incomplete last frame, 0 if the file ends on a frame boundary
+         */
+        public long getTruncatedBytes() {
+            return mTruncatedBytes;
+        }
+
+        /**
+         * @return bytes after the last frame that are no frames, e.g. an ID3v1 tag
+         */
+        public long getTrailingBytes() {
+            return mTrailingBytes;
+        }
+
+        /**
+         * @return whether {@link #getFrameOffset(int)} is available
+         */
+        public boolean hasFrameOffsets() {
+            return mOffsets != null && mFrameCount <= mOffsets.length;
+        }
+
+        /**
+         * @param index audio frame index, the frame starts at index * samples per frame
+         * @return byte offset of the frame in the file
+         * @throws IllegalStateException offsets were not collected
+         */
+        public long getFrameOffset(int index) {
+            if (!hasFrameOffsets()) {
+                throw new IllegalStateException("frame offsets were not collected");
+            }
+            if (index < 0 || index >= mFrameCount) {
+                throw new IndexOutOfBoundsException("frame " + index + " of " + mFrameCount);
+            }
+            return mOffsets[index];
+        }
+
+        @Override
+        public String toString() {
+            return "Mp3FrameScanner.Result{" + (mHeader == null ? "no frames" : mHeader.toString())
+                    + ", frames=" + mFrameCount + ", duration=" + getDurationMillis() + "ms"
+                    + (mInfoTag != null ? ", tag=" + mInfoTag : "")
+                    + (mResyncCount > 0 ? ", resyncs=" + mResyncCount : "")
+                    + (mTruncatedBytes > 0 ? ", truncated" : "") + "}";
+        }
+    }
+}
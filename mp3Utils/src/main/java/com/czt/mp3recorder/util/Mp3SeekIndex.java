@@ -0,0 +1,527 @@
+package com.czt.mp3recorder.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Frame offsets of an mp3 file at a fixed time granularity, so a player can seek in a
+ * long recording with a binary search instead of a scan.
+ * <p>
+ * The index is kept next to the mp3 as a sidecar file, see {@link #sidecarFile(File)}.
+ * It is written by {@link Builder} while encoding, or derived from an existing file with
+ * {@link #fromScan(Mp3FrameScanner.Result, int)}. Sidecar layout, all numbers unsigned
+ * LEB128 varints:
+ * <pre>
+ * "MP3I" version(1 byte)
+ * sampleRate samplesPerFrame totalFrames endOffset entryCount
+ * entryCount x (frameIndex delta, byte offset delta)
+ * </pre>
+ * Entry frame indexes count audio frames only, a Xing/Info/VBRI frame at the start is
+ * skipped. The first entry is frame 0.
+ */
+public class Mp3SeekIndex {
+    private static final byte[] MAGIC = {'M', 'P', '3', 'I'};
+    private static final int VERSION = 1;
+    private static final String SIDECAR_SUFFIX = ".idx";
+
+    private final int mSampleRate;
+    private final int mSamplesPerFrame;
+    private final long mTotalFrames;
+    private final long mEndOffset;
+    private final int mCount;
+    private final long[] mFrames;
+    private final long[] mOffsets;
+
+    private Mp3SeekIndex(int sampleRate, int samplesPerFrame, long totalFrames, long endOffset,
+                         long[] frames, long[] offsets, int count) {
+        mSampleRate = sampleRate;
+        mSamplesPerFrame = samplesPerFrame;
+        mTotalFrames = totalFrames;
+        mEndOffset = endOffset;
+        mFrames = frames;
+        mOffsets = offsets;
+        mCount = count;
+    }
+
+    /**
+     * @param mp3 mp3 file
+     * @return where its index is kept, "name.mp3.idx"
+     */
+    public static File sidecarFile(File mp3) {
+        return new File(mp3.getPath() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Build an index from a scan, for files that were recorded without one.
+     *
+     * @param result            scan with frame offsets
+     * @param granularityMillis time between entries, 0 for every frame
+     * @return the index
+     * @throws IllegalArgumentException the scan has no frame offsets
+     */
+    public static Mp3SeekIndex fromScan(Mp3FrameScanner.Result result, int granularityMillis) {
+        if (result.getFrameCount() > 0 && !result.hasFrameOffsets()) {
+            throw new IllegalArgumentException("scan has no frame offsets");
+        }
+        Mp3FrameHeader header = result.getHeader();
+        if (header == null) {
+            return new Mp3SeekIndex(0, 0, 0, 0, new long[0], new long[0], 0);
+        }
+        int step = granularityFrames(granularityMillis, header.getSampleRate(), header.getSamplesPerFrame());
+        int count = (int) ((result.getFrameCount() + step - 1) / step);
+        long[] frames = new long[count];
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = (long) i * step;
+            offsets[i] = result.getFrameOffset((int) frames[i]);
+        }
+        return new Mp3SeekIndex(header.getSampleRate(), header.getSamplesPerFrame(),
+                result.getFrameCount(), result.getEndOffset(), frames, offsets, count);
+    }
+
+    private static int granularityFrames(int granularityMillis, int sampleRate, int samplesPerFrame) {
+        if (granularityMillis < 0) {
+            throw new IllegalArgumentException("granularityMillis must not be negative");
+        }
+        long frames = ((long) granularityMillis * sampleRate + 500L * samplesPerFrame) / (1000L * samplesPerFrame);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, frames));
+    }
+
+    /**
+     * @param file sidecar file
+     * @return the index
+     * @throws IOException unreadable, or not an index of this version
+     */
+    public static Mp3SeekIndex read(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Seek index too large: " + file);
+        }
+        byte[] data = new byte[(int) length];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return parse(ByteBuffer.wrap(data));
+    }
+
+    private static Mp3SeekIndex parse(ByteBuffer in) throws IOException {
+        try {
+            for (byte b : MAGIC) {
+                if (in.get() != b) {
+                    throw new IOException("Not a seek index");
+                }
+            }
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported seek index version " + version);
+            }
+            int sampleRate = (int) readVarint(in);
+            int samplesPerFrame = (int) readVarint(in);
+            long totalFrames = readVarint(in);
+            long endOffset = readVarint(in);
+            long count = readVarint(in);
+            // 每项至少2字节,用于在分配前拒绝损坏的数量
+            if (count > in.remaining() / 2) {
+                throw new IOException("Corrupt seek index: " + count + " entries");
+            }
+            long[] frames = new long[(int) count];
+            long[] offsets = new long[(int) count];
+            long frame = 0;
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                long frameDelta = readVarint(in);
+                long offsetDelta = readVarint(in);
+                if (i > 0 && (frameDelta == 0 || offsetDelta == 0)) {
+                    throw new IOException("Corrupt seek index: entries not ascending");
+                }
+                frame += frameDelta;
+                offset += offsetDelta;
+                frames[i] = frame;
+                offsets[i] = offset;
+            }
+            if (count > 0 && (sampleRate <= 0 || samplesPerFrame <= 0 || frames[0] != 0
+                    || frame >= totalFrames || offset >= endOffset)) {
+                throw new IOException("Corrupt seek index: entries out of range");
+            }
+            return new Mp3SeekIndex(sampleRate, samplesPerFrame, totalFrames, endOffset, frames, offsets, (int) count);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated seek index");
+        }
+    }
+
+    private static long readVarint(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt seek index: varint too long");
+    }
+
+    /**
+     * Write the index, replacing the file through a temporary file so a reader never
+     * sees a half-written index.
+     *
+     * @param file sidecar file
+     * @throws IOException write failed
+     */
+    public void write(File file) throws IOException {
+        VarintWriter out = new VarintWriter(16 + mCount * 4);
+        out.writeBytes(MAGIC);
+        out.writeByte(VERSION);
+        out.write(mSampleRate);
+        out.write(mSamplesPerFrame);
+        out.write(mTotalFrames);
+        out.write(mEndOffset);
+        out.write(mCount);
+        long frame = 0;
+        long offset = 0;
+        for (int i = 0; i < mCount; i++) {
+            out.write(mFrames[i] - frame);
+            out.write(mOffsets[i] - offset);
+            frame = mFrames[i];
+            offset = mOffsets[i];
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            stream.write(out.mData, 0, out.mSize);
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Entry to start decoding from for a time: the last entry at or before it.
+     * O(log n) binary search.
+     *
+     * @param timeMillis time from the start of the audio
+     * @return entry index, -1 if the index is empty
+     */
+    public int findEntry(long timeMillis) {
+        if (mCount == 0) {
+            return -1;
+        }
+        long frame = Math.max(0, timeMillis) * mSampleRate / (1000L * mSamplesPerFrame);
+        int index = Arrays.binarySearch(mFrames, 0, mCount, frame);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @param timeMillis time from the start of the audio
+     * @return byte offset of the frame at or just before the time, -1 if the index is empty
+     */
+    public long getOffsetForTime(long timeMillis) {
+        int index = findEntry(timeMillis);
+        return index < 0 ? -1 : mOffsets[index];
+    }
+
+    public int getEntryCount() {
+        return mCount;
+    }
+
+    /**
+     * @param index entry index
+     * @return audio frame index of the entry
+     */
+    public long getFrameIndex(int index) {
+        checkIndex(index);
+        return mFrames[index];
+    }
+
+    /**
+     * @param index entry index
+     * @return byte offset of the entry's frame in the file
+     */
+    public long getOffset(int index) {
+        checkIndex(index);
+        return mOffsets[index];
+    }
+
+    /**
+     * @param index entry index
+     * @return start time of the entry's frame, encoder delay not subtracted
+     */
+    public long getTimeMillis(int index) {
+        checkIndex(index);
+        return mFrames[index] * mSamplesPerFrame * 1000 / mSampleRate;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("entry " + index + " of " + mCount);
+        }
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getSamplesPerFrame() {
+        return mSamplesPerFrame;
+    }
+
+    /**
+     * @return number of audio frames in the file
+     */
+    public long getTotalFrames() {
+        return mTotalFrames;
+    }
+
+    /**
+     * @return offset just after the last frame
+     */
+    public long getEndOffset() {
+        return mEndOffset;
+    }
+
+    public long getDurationMillis() {
+        return mSampleRate == 0 ? 0 : mTotalFrames * mSamplesPerFrame * 1000 / mSampleRate;
+    }
+
+    @Override
+    public String toString() {
+        return "Mp3SeekIndex{" + mCount + " entries, " + mTotalFrames + " frames, " + getDurationMillis() + "ms}";
+    }
+
+    /**
+     * Growable byte array of varints. Also holds the entries of a {@link Builder},
+     * about 3 bytes per entry.
+     */
+    private static class VarintWriter {
+        private byte[] mData;
+        private int mSize;
+
+        VarintWriter(int capacity) {
+            mData = new byte[Math.max(16, capacity)];
+        }
+
+        void write(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                mData[mSize++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mData[mSize++] = (byte) value;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            mData[mSize++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, mData, mSize, bytes.length);
+            mSize += bytes.length;
+        }
+
+        private void ensure(int extra) {
+            if (mSize + extra > mData.length) {
+                mData = Arrays.copyOf(mData, Math.max(mData.length * 2, mSize + extra));
+            }
+        }
+    }
+
+    /**
+     * Collects the index while the mp3 is written: feed it every encoded buffer in file
+     * order. Only frame headers are looked at, buffers may split frames anywhere. If the
+     * stream stops being a chain of frames the index ends at the last good frame.
+     * Not thread-safe, use it on the encoding thread.
+     */
+    public static class Builder {
+        /**
+         * bytes read of the first frame, enough for the Xing/Info and VBRI magic
+         */
+        private static final int FIRST_FRAME_HEAD = 40;
+
+        private final int mGranularityMillis;
+        private final byte[] mHead = new byte[FIRST_FRAME_HEAD];
+        private int mHeadSize = FIRST_FRAME_HEAD;
+        private int mHeadFill;
+        private long mPosition;
+        private long mNextFrame;
+        private boolean mBroken;
+        private boolean mFirstFrame = true;
+        private int mSampleRate;
+        private int mSamplesPerFrame;
+        private int mStep;
+        private long mFrames;
+        private long mEndOffset;
+        private long mLastFrameStart;
+        private long mLastFrame;
+        private long mLastOffset;
+        private int mCount;
+        /**
+         * entries as (frame delta, offset delta) varints, decoded in {@link #build()}
+         */
+        private final VarintWriter mEntries = new VarintWriter(256);
+
+        /**
+         * @param granularityMillis time between entries, 0 for every frame
+         */
+        public Builder(int granularityMillis) {
+            if (granularityMillis < 0) {
+                throw new IllegalArgumentException("granularityMillis must not be negative");
+            }
+            mGranularityMillis = granularityMillis;
+        }
+
+        /**
+         * @param data   encoded bytes, the next ones of the file
+         * @param offset start in data
+         * @param length number of bytes
+         */
+        public void append(byte[] data, int offset, int length) {
+            consume(data, null, offset, length);
+        }
+
+        /**
+         * @param data   encoded bytes from index 0, position and limit are ignored
+         * @param length number of bytes
+         */
+        public void append(ByteBuffer data, int length) {
+            consume(null, data, 0, length);
+        }
+
+        private void consume(byte[] array, ByteBuffer buffer, int offset, int length) {
+            long end = mPosition + length;
+            // 只读取帧头字节,其余跳过
+            while (!mBroken && mNextFrame + mHeadFill < end) {
+                int index = (int) (mNextFrame + mHeadFill - mPosition);
+                int n = (int) Math.min(mHeadSize - mHeadFill, end - mNextFrame - mHeadFill);
+                for (int i = 0; i < n; i++) {
+                    mHead[mHeadFill + i] = array != null ? array[offset + index + i] : buffer.get(offset + index + i);
+                }
+                mHeadFill += n;
+                if (mHeadFill == mHeadSize) {
+                    onFrame();
+                }
+            }
+            mPosition = end;
+        }
+
+        private void onFrame() {
+            int header = ((mHead[0] & 0xFF) << 24) | ((mHead[1] & 0xFF) << 16)
+                    | ((mHead[2] & 0xFF) << 8) | (mHead[3] & 0xFF);
+            int length = Mp3FrameHeader.frameLength(header);
+            if (length == 0 || !mFirstFrame && Mp3FrameHeader.sampleRate(header) != mSampleRate) {
+                mBroken = true;
+                return;
+            }
+            if (mFirstFrame) {
+                mFirstFrame = false;
+                mHeadSize = Mp3FrameHeader.HEADER_SIZE;
+                mSampleRate = Mp3FrameHeader.sampleRate(header);
+                mSamplesPerFrame = Mp3FrameHeader.samplesPerFrame(header);
+                mStep = granularityFrames(mGranularityMillis, mSampleRate, mSamplesPerFrame);
+                if (isTagFrame(header, length)) {
+                    mNextFrame += length;
+                    mHeadFill = 0;
+                    return;
+                }
+            }
+            if (mFrames % mStep == 0) {
+                mEntries.write(mFrames - mLastFrame);
+                mEntries.write(mNextFrame - mLastOffset);
+                mLastFrame = mFrames;
+                mLastOffset = mNextFrame;
+                mCount++;
+            }
+            mFrames++;
+            mLastFrameStart = mNextFrame;
+            mNextFrame += length;
+            mEndOffset = mNextFrame;
+            mHeadFill = 0;
+        }
+
+        /**
+         * A Xing/Info/VBRI frame, or the placeholder LAME writes for it before the tag is
+         * filled in: nothing but zeros after the header, where an audio frame has its side info.
+         */
+        private boolean isTagFrame(int header, int length) {
+            int xing = Mp3FrameHeader.parse(header).getSideInfoEnd();
+            if (xing + 4 <= Math.min(length, FIRST_FRAME_HEAD)
+                    && (matches(xing, "Xing") || matches(xing, "Info"))
+                    || matches(FIRST_FRAME_HEAD - 4, "VBRI")) {
+                return true;
+            }
+            for (int i = Mp3FrameHeader.HEADER_SIZE; i < FIRST_FRAME_HEAD; i++) {
+                if (mHead[i] != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matches(int index, String id) {
+            for (int i = 0; i < id.length(); i++) {
+                if (mHead[index + i] != id.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return number of audio frames seen so far
+         */
+        public long getFrameCount() {
+            return mFrames;
+        }
+
+        /**
+         * @return the index of the complete frames appended so far
+         */
+        public Mp3SeekIndex build() {
+            long[] frames = new long[mCount];
+            long[] offsets = new long[mCount];
+            ByteBuffer in = ByteBuffer.wrap(mEntries.mData, 0, mEntries.mSize);
+            long frame = 0;
+            long offset = 0;
+            try {
+                for (int i = 0; i < mCount; i++) {
+                    frame += readVarint(in);
+                    offset += readVarint(in);
+                    frames[i] = frame;
+                    offsets[i] = offset;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            // 最后一帧可能还未完整写入
+            boolean complete = mEndOffset <= mPosition;
+            long total = complete ? mFrames : mFrames - 1;
+            int count = mCount;
+            if (count > 0 && frames[count - 1] >= total) {
+                count--;
+            }
+            return new Mp3SeekIndex(mSampleRate, mSamplesPerFrame, total,
+                    complete ? mEndOffset : mLastFrameStart, frames, offsets, count);
+        }
+    }
+}
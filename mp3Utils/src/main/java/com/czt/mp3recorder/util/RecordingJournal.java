@@ -0,0 +1,184 @@
+package com.czt.mp3recorder.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Tiny sidecar recording how much of an mp3 is known to be on disk, so a recording cut
+ * short by a crash can be repaired with {@link RecordingRecovery}.
+ * <p>
+ * Each {@link #write(long, long, int)} stores one checkpoint: the end of the data that
+ * was fsynced before it and the pcm sample count encoded by then. The file holds two
+ * fixed size slots written alternately, each with a sequence number and a CRC32, so a
+ * write torn by the crash leaves the previous checkpoint readable. Slot layout, big endian:
+ * <pre>
+ * "MP3J" version(int) sequence(long) offset(long) sampleCount(long) sampleRate(int) crc32(int)
+ * </pre>
+ * The journal exists only while recording; a recording that was finished cleanly has none.
+ */
+public class RecordingJournal implements Closeable {
+    private static final int MAGIC = 0x4D50334A;// "MP3J"
+    private static final int VERSION = 1;
+    private static final int SLOT_SIZE = 40;
+    private static final String SIDECAR_SUFFIX = ".journal";
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final ByteBuffer mSlot = ByteBuffer.allocate(SLOT_SIZE);
+    private final CRC32 mCrc = new CRC32();
+    private long mSequence;
+
+    /**
+     * Create an empty journal, replacing any old one.
+     *
+     * @param file journal file, usually {@link #journalFile(File)}
+     * @throws IOException the file could not be created
+     */
+    public RecordingJournal(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        try {
+            // 两个槽位的长度一次确定,之后的写入不再改变文件元数据
+            mFile.setLength(0);
+            mFile.setLength(2 * SLOT_SIZE);
+            mChannel.force(true);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param mp3 mp3 file
+     * @return where its journal is kept, "name.mp3.journal"
+     */
+    public static File journalFile(File mp3) {
+        return new File(mp3.getPath() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Store a checkpoint and fsync the journal. The mp3 data up to offset must already
+     * be synced.
+     *
+     * @param offset      end of the mp3 data known to be on disk
+     * @param sampleCount pcm samples per channel encoded when the checkpoint was taken
+     * @param sampleRate  rate of those samples in Hz
+     * @throws IOException write failed
+     */
+    public void write(long offset, long sampleCount, int sampleRate) throws IOException {
+        long sequence = ++mSequence;
+        mSlot.clear();
+        mSlot.putInt(MAGIC).putInt(VERSION).putLong(sequence).putLong(offset)
+                .putLong(sampleCount).putInt(sampleRate);
+        mCrc.reset();
+        mCrc.update(mSlot.array(), 0, mSlot.position());
+        mSlot.putInt((int) mCrc.getValue());
+        mSlot.flip();
+        long position = (sequence & 1) * SLOT_SIZE;
+        while (mSlot.hasRemaining()) {
+            mChannel.write(mSlot, position + mSlot.position());
+        }
+        mChannel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * @param file journal file
+     * @return the latest intact checkpoint, null if the file is missing or holds none
+     * @throws IOException read failed
+     */
+    public static Checkpoint read(File file) throws IOException {
+        RandomAccessFile in;
+        try {
+            in = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            byte[] data = new byte[(int) Math.min(in.length(), 2 * SLOT_SIZE)];
+            in.readFully(data);
+            Checkpoint latest = null;
+            for (int slot = 0; slot + SLOT_SIZE <= data.length; slot += SLOT_SIZE) {
+                Checkpoint checkpoint = parseSlot(data, slot);
+                if (checkpoint != null && (latest == null || checkpoint.mSequence > latest.mSequence)) {
+                    latest = checkpoint;
+                }
+            }
+            return latest;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Checkpoint parseSlot(byte[] data, int slot) {
+        ByteBuffer buffer = ByteBuffer.wrap(data, slot, SLOT_SIZE);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        long sequence = buffer.getLong();
+        long offset = buffer.getLong();
+        long sampleCount = buffer.getLong();
+        int sampleRate = buffer.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(data, slot, SLOT_SIZE - 4);
+        if (buffer.getInt() != (int) crc.getValue() || offset < 0 || sampleCount < 0 || sampleRate <= 0) {
+            return null;
+        }
+        return new Checkpoint(sequence, offset, sampleCount, sampleRate);
+    }
+
+    /**
+     * One checkpoint read back from a journal.
+     */
+    public static class Checkpoint {
+        private final long mSequence;
+        private final long mOffset;
+        private final long mSampleCount;
+        private final int mSampleRate;
+
+        Checkpoint(long sequence, long offset, long sampleCount, int sampleRate) {
+            mSequence = sequence;
+            mOffset = offset;
+            mSampleCount = sampleCount;
+            mSampleRate = sampleRate;
+        }
+
+        /**
+         * @return end of the mp3 data that was synced to disk
+         */
+        public long getOffset() {
+            return mOffset;
+        }
+
+        /**
+         * @return pcm samples per channel encoded at the checkpoint; the frames up to
+         * {@link #getOffset()} hold slightly less, LAME keeps up to about two frames buffered
+         */
+        public long getSampleCount() {
+            return mSampleCount;
+        }
+
+        public int getSampleRate() {
+            return mSampleRate;
+        }
+
+        public long getDurationMillis() {
+            return mSampleCount * 1000 / mSampleRate;
+        }
+
+        @Override
+        public String toString() {
+            return "Checkpoint{offset=" + mOffset + ", samples=" + mSampleCount + "@" + mSampleRate + "}";
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.czt.mp3recorder.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Repairs a recording that was never finished, e.g. because the process was killed:
+ * the file is cut back to its last complete frame, which also drops any preallocated
+ * zeros, and the Xing/Info frame at its start is rebuilt from the frames actually there.
+ * A frame followed by zeros instead of the next frame may have been written only in part,
+ * so it is dropped as well.
+ * <p>
+ * Both happen in one pass over the frame headers with {@link Mp3FrameScanner}, nothing is
+ * decoded. The rebuilt tag holds the frame count, byte count and seek table; a LAME extension
+ * with encoder delay and padding is not rewritten, the padding of a cut recording is unknown.
+ * A recording whose tag already matches its frames is left alone.
+ */
+public class RecordingRecovery {
+    private static final int XING_FRAMES = 1;
+    private static final int XING_BYTES = 2;
+    private static final int XING_TOC = 4;
+    private static final int TOC_SIZE = 100;
+
+    private RecordingRecovery() {
+    }
+
+    /**
+     * @param mp3 recording
+     * @return whether it was left unfinished, i.e. its {@link RecordingJournal} still exists
+     */
+    public static boolean needsRecovery(File mp3) {
+        return RecordingJournal.journalFile(mp3).exists();
+    }
+
+    /**
+     * Repair the recording in place and delete its journal.
+     *
+     * @param mp3 recording, with or without a journal
+     * @return what was found and done
+     * @throws IOException read or write failed
+     */
+    public static Report recover(File mp3) throws IOException {
+        File journal = RecordingJournal.journalFile(mp3);
+        RecordingJournal.Checkpoint checkpoint = RecordingJournal.read(journal);
+        RandomAccessFile file = new RandomAccessFile(mp3, "rw");
+        Report report;
+        try {
+            report = recover(file.getChannel(), checkpoint);
+        } finally {
+            file.close();
+        }
+        if (journal.exists() && !journal.delete()) {
+            throw new IOException("Cannot delete " + journal);
+        }
+        return report;
+    }
+
+    private static Report recover(FileChannel channel, RecordingJournal.Checkpoint checkpoint) throws IOException {
+        Report report = new Report();
+        report.mCheckpoint = checkpoint;
+        report.mOriginalLength = channel.size();
+        Mp3FrameScanner.Result scan = new Mp3FrameScanner().scan(channel);
+        report.mSkippedBytes = scan.getSkippedBytes();
+        Mp3FrameHeader header = scan.getHeader();
+        long end = scan.getDataOffset();
+        if (header != null) {
+            // 标签帧:扫描时识别出的Xing/Info/VBRI帧,或LAME在写入标签前留下的全零占位帧
+            long tagOffset = -1;
+            int firstAudio = 0;
+            if (scan.getInfoTag() != null) {
+                tagOffset = scan.getFirstFrameOffset() - header.getFrameLength();
+            } else if (scan.getFrameCount() > 0 && isPlaceholder(channel, scan.getFrameOffset(0), header)) {
+                tagOffset = scan.getFrameOffset(0);
+                firstAudio = 1;
+            }
+            long frames = scan.getFrameCount() - firstAudio;
+            end = scan.getFrameCount() > 0 ? scan.getEndOffset() : tagOffset + header.getFrameLength();
+            if (frames > 0 && scan.getTrailingBytes() > 0 && read(channel, end, 1).get(0) == 0) {
+                // 后面是零(预分配的空间):最后一帧可能只写了帧头附近的一部分,不保留
+                frames--;
+                end = scan.getFrameOffset((int) (firstAudio + frames));
+            }
+            if (tagOffset >= 0 && (scan.getInfoTagFrameCount() != frames
+                    || scan.getInfoTagByteCount() >= 0 && scan.getInfoTagByteCount() != end - tagOffset)) {
+                report.mTagRebuilt = writeTag(channel, tagOffset, header, scan, firstAudio, frames, end);
+            }
+            report.mFrameCount = frames;
+            report.mDurationMillis = frames * header.getSamplesPerFrame() * 1000 / header.getSampleRate();
+        }
+        if (channel.size() > end) {
+            channel.truncate(end);
+        }
+        channel.force(true);
+        report.mLength = end;
+        return report;
+    }
+
+    /**
+     * @return whether the frame holds nothing but zeros after its header
+     */
+    private static boolean isPlaceholder(FileChannel channel, long offset, Mp3FrameHeader header) throws IOException {
+        ByteBuffer frame = read(channel, offset, header.getFrameLength());
+        for (int i = Mp3FrameHeader.HEADER_SIZE; i < frame.limit(); i++) {
+            if (frame.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replace the tag frame's payload with a Xing/Info header for the frames found.
+     *
+     * @return false if the frame is too small for even the counts
+     */
+    private static boolean writeTag(FileChannel channel, long tagOffset, Mp3FrameHeader header,
+                                    Mp3FrameScanner.Result scan, int firstAudio, long frames, long end)
+            throws IOException {
+        int length = header.getFrameLength();
+        int xing = header.getSideInfoEnd();
+        if (xing + 16 > length) {
+            return false;
+        }
+        ByteBuffer frame = read(channel, tagOffset, length);
+        for (int i = Mp3FrameHeader.HEADER_SIZE; i < length; i++) {
+            frame.put(i, (byte) 0);
+        }
+        long bytes = end - tagOffset;
+        boolean toc = xing + 16 + TOC_SIZE <= length && frames > 0;
+        // 所有音频帧码率相同即CBR,按LAME的习惯用"Info"
+        boolean cbr = isConstantBitRate(channel, scan, firstAudio, frames);
+        frame.position(xing);
+        frame.put((byte) (cbr ? 'I' : 'X')).put((byte) (cbr ? 'n' : 'i'))
+                .put((byte) (cbr ? 'f' : 'n')).put((byte) (cbr ? 'o' : 'g'));
+        frame.putInt(XING_FRAMES | XING_BYTES | (toc ? XING_TOC : 0));
+        frame.putInt((int) frames);
+        frame.putInt((int) bytes);
+        if (toc) {
+            // 第i项:第i%处的帧在流中的位置,以流长度的1/256为单位
+            for (int i = 0; i < TOC_SIZE; i++) {
+                long offset = scan.getFrameOffset(firstAudio + (int) (i * frames / TOC_SIZE)) - tagOffset;
+                frame.put((byte) Math.min(255, offset * 256 / bytes));
+            }
+        }
+        frame.clear();
+        while (frame.hasRemaining()) {
+            channel.write(frame, tagOffset + frame.position());
+        }
+        return true;
+    }
+
+    /**
+     * Compare the bit rates of the audio frames kept. The scanner's minimum and maximum
+     * also count the placeholder tag frame, which LAME gives whatever bit rate fits the
+     * tag, and a cut off last frame.
+     */
+    private static boolean isConstantBitRate(FileChannel channel, Mp3FrameScanner.Result scan, int firstAudio,
+                                             long frames) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Mp3FrameHeader.HEADER_SIZE);
+        int bitRate = -1;
+        for (int i = firstAudio; i < firstAudio + frames; i++) {
+            header.clear();
+            while (header.hasRemaining()) {
+                if (channel.read(header, scan.getFrameOffset(i) + header.position()) < 0) {
+                    throw new IOException("Unexpected end of file at " + scan.getFrameOffset(i));
+                }
+            }
+            int rate = Mp3FrameHeader.bitRate(header.getInt(0));
+            if (bitRate >= 0 && rate != bitRate) {
+                return false;
+            }
+            bitRate = rate;
+        }
+        return true;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file at " + (offset + buffer.position()));
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Outcome of {@link #recover(File)}.
+     */
+    public static class Report {
+        private RecordingJournal.Checkpoint mCheckpoint;
+        private long mOriginalLength;
+        private long mLength;
+        private long mFrameCount;
+        private long mDurationMillis;
+        private long mSkippedBytes;
+        private boolean mTagRebuilt;
+
+        Report() {
+        }
+
+        /**
+         * @return the last checkpoint in the journal, null if there was none
+         */
+        public RecordingJournal.Checkpoint getCheckpoint() {
+            return mCheckpoint;
+        }
+
+        public long getOriginalLength() {
+            return mOriginalLength;
+        }
+
+        /**
+         * @return file length after recovery
+         */
+        public long getLength() {
+            return mLength;
+        }
+
+        /**
+         * @return bytes cut off the end: a partial frame, preallocated zeros or other junk
+         */
+        public long getRemovedBytes() {
+            return mOriginalLength - mLength;
+        }
+
+        /**
+         * @return audio frames kept
+         */
+        public long getFrameCount() {
+            return mFrameCount;
+        }
+
+        /**
+         * @return duration of the frames kept
+         */
+        public long getDurationMillis() {
+            return mDurationMillis;
+        }
+
+        /**
+         * @return damaged bytes inside the file that were skipped over but kept
+         */
+        public long getSkippedBytes() {
+            return mSkippedBytes;
+        }
+
+        /**
+         * @return whether less is left than the last checkpoint promised, data that had
+         * been synced was lost anyway
+         */
+        public boolean isCheckpointLost() {
+            return mCheckpoint != null && mLength < mCheckpoint.getOffset();
+        }
+
+        /**
+         * @return whether the Xing/Info frame was rewritten
+         */
+        public boolean isTagRebuilt() {
+            return mTagRebuilt;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{length " + mOriginalLength + " -> " + mLength + ", frames=" + mFrameCount
+                    + ", duration=" + mDurationMillis + "ms, tagRebuilt=" + mTagRebuilt
+                    + ", checkpoint=" + mCheckpoint + "}";
+        }
+    }
+}
@@ -5,6 +5,38 @@ include $(CLEAR_VARS)
 LAME_LIBMP3_DIR := lame_3.99.5_libmp3lame
 
 LOCAL_MODULE    := mp3lame
-LOCAL_SRC_FILES := $(LAME_LIBMP3_DIR)/bitstream.c $(LAME_LIBMP3_DIR)/fft.c $(LAME_LIBMP3_DIR)/id3tag.c $(LAME_LIBMP3_DIR)/mpglib_interface.c $(LAME_LIBMP3_DIR)/presets.c $(LAME_LIBMP3_DIR)/quantize.c $(LAME_LIBMP3_DIR)/reservoir.c $(LAME_LIBMP3_DIR)/tables.c $(LAME_LIBMP3_DIR)/util.c $(LAME_LIBMP3_DIR)/VbrTag.c $(LAME_LIBMP3_DIR)/encoder.c $(LAME_LIBMP3_DIR)/gain_analysis.c $(LAME_LIBMP3_DIR)/lame.c $(LAME_LIBMP3_DIR)/newmdct.c $(LAME_LIBMP3_DIR)/psymodel.c $(LAME_LIBMP3_DIR)/quantize_pvt.c $(LAME_LIBMP3_DIR)/set_get.c $(LAME_LIBMP3_DIR)/takehiro.c $(LAME_LIBMP3_DIR)/vbrquantize.c $(LAME_LIBMP3_DIR)/version.c lame_util.c
+LOCAL_SRC_FILES := $(LAME_LIBMP3_DIR)/bitstream.c $(LAME_LIBMP3_DIR)/fft.c $(LAME_LIBMP3_DIR)/id3tag.c $(LAME_LIBMP3_DIR)/mpglib_interface.c $(LAME_LIBMP3_DIR)/presets.c $(LAME_LIBMP3_DIR)/quantize.c $(LAME_LIBMP3_DIR)/reservoir.c $(LAME_LIBMP3_DIR)/tables.c $(LAME_LIBMP3_DIR)/util.c $(LAME_LIBMP3_DIR)/VbrTag.c $(LAME_LIBMP3_DIR)/encoder.c $(LAME_LIBMP3_DIR)/gain_analysis.c $(LAME_LIBMP3_DIR)/lame.c $(LAME_LIBMP3_DIR)/newmdct.c $(LAME_LIBMP3_DIR)/psymodel.c $(LAME_LIBMP3_DIR)/quantize_pvt.c $(LAME_LIBMP3_DIR)/set_get.c $(LAME_LIBMP3_DIR)/takehiro.c $(LAME_LIBMP3_DIR)/vbrquantize.c $(LAME_LIBMP3_DIR)/version.c lame_util.c mp3_decoder.c
+
+# SIMD kernels per ABI. x86 ABIs always have SSE2; armeabi-v7a only may have NEON, so
+# the NEON kernels are built with -mfpu=neon (the .neon suffix) and chosen at runtime
+# through cpufeatures, arm64-v8a always has it. armeabi/mips keep the plain C build.
+ifneq ($(filter x86 x86_64,$(TARGET_ARCH_ABI)),)
+LOCAL_SRC_FILES += $(LAME_LIBMP3_DIR)/vector/xmm_quantize_sub.c
+LOCAL_CFLAGS += -O3 -DHAVE_XMMINTRIN_H -DMIN_ARCH_SSE -msse2
+endif
+ifeq ($(TARGET_ARCH_ABI),armeabi-v7a)
+LOCAL_ARM_MODE := arm
+LOCAL_SRC_FILES += $(LAME_LIBMP3_DIR)/vector/neon_quantize_sub.c.neon
+LOCAL_CFLAGS += -O3 -DHAVE_NEON
+LOCAL_STATIC_LIBRARIES := cpufeatures
+endif
+ifeq ($(TARGET_ARCH_ABI),arm64-v8a)
+LOCAL_SRC_FILES += $(LAME_LIBMP3_DIR)/vector/neon_quantize_sub.c
+LOCAL_CFLAGS += -O3 -DHAVE_NEON
+endif
+
+# Decoder for Mp3Decoder: LAME 3.99.5's mpglib/ directory is not shipped here. Copied to
+# jni/lame_3.99.5_mpglib it is built in and mpglib_interface.c gets HAVE_MPGLIB; without
+# it Mp3Decoder.isSupported() returns false.
+LAME_MPGLIB_DIR := lame_3.99.5_mpglib
+ifneq ($(wildcard $(LOCAL_PATH)/$(LAME_MPGLIB_DIR)/interface.c),)
+LOCAL_SRC_FILES += $(addprefix $(LAME_MPGLIB_DIR)/,common.c dct64_i386.c decode_i386.c interface.c layer1.c layer2.c layer3.c tabinit.c)
+LOCAL_C_INCLUDES += $(LOCAL_PATH)/$(LAME_LIBMP3_DIR) $(LOCAL_PATH)/$(LAME_MPGLIB_DIR)
+LOCAL_CFLAGS += -DHAVE_MPGLIB
+else
+$(warning $(LAME_MPGLIB_DIR) not found, building without Mp3Decoder)
+endif
 
 include $(BUILD_SHARED_LIBRARY)
+
+$(call import-module,android/cpufeatures)
@@ -0,0 +1,65 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_czt_mp3recorder_util_Mp3Decoder */
+
+#ifndef _Included_com_czt_mp3recorder_util_Mp3Decoder
+#define _Included_com_czt_mp3recorder_util_Mp3Decoder
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef com_czt_mp3recorder_util_Mp3Decoder_MAX_FRAME_PCM
+#define com_czt_mp3recorder_util_Mp3Decoder_MAX_FRAME_PCM 2304L
+#undef com_czt_mp3recorder_util_Mp3Decoder_INFO_HEADER_PARSED
+#define com_czt_mp3recorder_util_Mp3Decoder_INFO_HEADER_PARSED 0L
+#undef com_czt_mp3recorder_util_Mp3Decoder_INFO_SAMPLE_RATE
+#define com_czt_mp3recorder_util_Mp3Decoder_INFO_SAMPLE_RATE 1L
+#undef com_czt_mp3recorder_util_Mp3Decoder_INFO_CHANNELS
+#define com_czt_mp3recorder_util_Mp3Decoder_INFO_CHANNELS 2L
+#undef com_czt_mp3recorder_util_Mp3Decoder_INFO_BIT_RATE
+#define com_czt_mp3recorder_util_Mp3Decoder_INFO_BIT_RATE 3L
+#undef com_czt_mp3recorder_util_Mp3Decoder_INFO_FRAME_SIZE
+#define com_czt_mp3recorder_util_Mp3Decoder_INFO_FRAME_SIZE 4L
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Decoder
+ * Method:    nativeIsSupported
+ * Signature: ()Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeIsSupported
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Decoder
+ * Method:    nativeInit
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeInit
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Decoder
+ * Method:    nativeDecode
+ * Signature: (J[BII[S[I)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeDecode
+  (JNIEnv *, jclass, jlong, jbyteArray, jint, jint, jshortArray, jintArray);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Decoder
+ * Method:    nativeDecodeDirect
+ * Signature: (JLjava/nio/ByteBuffer;ILjava/nio/ByteBuffer;[I)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeDecodeDirect
+  (JNIEnv *, jclass, jlong, jobject, jint, jobject, jintArray);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Decoder
+ * Method:    nativeClose
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeClose
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
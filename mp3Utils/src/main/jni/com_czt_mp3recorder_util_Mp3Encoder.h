@@ -0,0 +1,107 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class com_czt_mp3recorder_util_Mp3Encoder */
+
+#ifndef _Included_com_czt_mp3recorder_util_Mp3Encoder
+#define _Included_com_czt_mp3recorder_util_Mp3Encoder
+#ifdef __cplusplus
+extern "C" {
+#endif
+#undef com_czt_mp3recorder_util_Mp3Encoder_VBR_OFF
+#define com_czt_mp3recorder_util_Mp3Encoder_VBR_OFF 0L
+#undef com_czt_mp3recorder_util_Mp3Encoder_VBR_ABR
+#define com_czt_mp3recorder_util_Mp3Encoder_VBR_ABR 3L
+#undef com_czt_mp3recorder_util_Mp3Encoder_VBR_MTRH
+#define com_czt_mp3recorder_util_Mp3Encoder_VBR_MTRH 4L
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeInit
+ * Signature: (IIIIIIIIIZZ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeInit
+  (JNIEnv *, jclass, jint, jint, jint, jint, jint, jint, jint, jint, jint, jboolean, jboolean);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeGetFrameSize
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeGetFrameSize
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeEncode
+ * Signature: (J[S[SI[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeEncode
+  (JNIEnv *, jclass, jlong, jshortArray, jshortArray, jint, jbyteArray);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeEncodeMono
+ * Signature: (J[SI[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeEncodeMono
+  (JNIEnv *, jclass, jlong, jshortArray, jint, jbyteArray);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeEncodeInterleaved
+ * Signature: (J[SI[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeEncodeInterleaved
+  (JNIEnv *, jclass, jlong, jshortArray, jint, jbyteArray);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeEncodeDirect
+ * Signature: (JLjava/nio/ByteBuffer;ILjava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeEncodeDirect
+  (JNIEnv *, jclass, jlong, jobject, jint, jobject);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeFlush
+ * Signature: (J[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeFlush
+  (JNIEnv *, jclass, jlong, jbyteArray);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeFlushNoGap
+ * Signature: (J[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeFlushNoGap
+  (JNIEnv *, jclass, jlong, jbyteArray);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeInitBitstream
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeInitBitstream
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeGetLameTagFrame
+ * Signature: (J[B)I
+ */
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeGetLameTagFrame
+  (JNIEnv *, jclass, jlong, jbyteArray);
+
+/*
+ * Class:     com_czt_mp3recorder_util_Mp3Encoder
+ * Method:    nativeClose
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeClose
+  (JNIEnv *, jclass, jlong);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -253,6 +253,33 @@ IsVbrTag(const unsigned char *buf)
 
 #define SHIFT_IN_BITS_VALUE(x,n,v) ( x = (x << (n)) | ( (v) & ~(-1 << (n)) ) )
 
+/*
+ * Bitrate of the frame holding the tag. CBR streams use their own bitrate,
+ * unless its frames are too small for the LAME header (e.g. 32 kbps at
+ * 44.1 kHz); then the tag frame alone gets the VBR header bitrate.
+ */
+static int
+lameTagBitrate(SessionConfig_t const *cfg)
+{
+    int     bitrate;
+    if (1 == cfg->version) {
+        bitrate = XING_BITRATE1;
+    }
+    else {
+        if (cfg->samplerate_out < 16000)
+            bitrate = XING_BITRATE25;
+        else
+            bitrate = XING_BITRATE2;
+    }
+
+    if (cfg->vbr == vbr_off) {
+        int const frame_size = ((cfg->version + 1) * 72000 * cfg->avg_bitrate) / cfg->samplerate_out;
+        if (cfg->free_format || frame_size >= cfg->sideinfo_len + LAMEHEADERSIZE)
+            bitrate = cfg->avg_bitrate;
+    }
+    return bitrate;
+}
+
 static void
 setLameTagFrameHeader(lame_internal_flags const *gfc, unsigned char *buffer)
 {
@@ -285,19 +312,7 @@ setLameTagFrameHeader(lame_internal_flags const *gfc, unsigned char *buffer)
     buffer[0] = (uint8_t) 0xff;
     abyte = (buffer[1] & (unsigned char) 0xf1);
     {
-        int     bitrate;
-        if (1 == cfg->version) {
-            bitrate = XING_BITRATE1;
-        }
-        else {
-            if (cfg->samplerate_out < 16000)
-                bitrate = XING_BITRATE25;
-            else
-                bitrate = XING_BITRATE2;
-        }
-
-        if (cfg->vbr == vbr_off)
-            bitrate = cfg->avg_bitrate;
+        int const bitrate = lameTagBitrate(cfg);
 
         if (cfg->free_format)
             bbyte = 0x00;
@@ -513,18 +528,7 @@ InitVbrTag(lame_global_flags * gfp)
      */
 
 
-    if (1 == cfg->version) {
-        kbps_header = XING_BITRATE1;
-    }
-    else {
-        if (cfg->samplerate_out < 16000)
-            kbps_header = XING_BITRATE25;
-        else
-            kbps_header = XING_BITRATE2;
-    }
-
-    if (cfg->vbr == vbr_off)
-        kbps_header = cfg->avg_bitrate;
+    kbps_header = lameTagBitrate(cfg);
 
     /** make sure LAME Header fits into Frame
      */
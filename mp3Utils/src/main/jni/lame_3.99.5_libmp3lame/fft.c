@@ -45,6 +45,9 @@
 #include "fft.h"
 
 #include "vector/lame_intrin.h"
+#ifdef HAVE_NEON
+#include "vector/lame_neon.h"
+#endif
 
 
 
@@ -325,5 +328,9 @@ init_fft(lame_internal_flags * const gfc)
     gfc->fft_fht = fht_SSE2;
 #endif
 #endif
+#ifdef HAVE_NEON
+    if (gfc->CPU_features.NEON)
+        gfc->fft_fht = fht_neon;
+#endif
 #endif
 }
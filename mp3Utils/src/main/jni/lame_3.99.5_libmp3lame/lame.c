@@ -578,6 +578,8 @@ lame_init_params(lame_global_flags * gfp)
         gfc->CPU_features.SSE2 = 0;
     }
 
+    gfc->CPU_features.NEON = has_NEON();
+
 
     if (NULL == gfc->ATH)
         gfc->ATH = calloc(1, sizeof(ATH_t));
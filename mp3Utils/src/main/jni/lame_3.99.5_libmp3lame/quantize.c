@@ -40,6 +40,9 @@
 #ifdef HAVE_XMMINTRIN_H
 #include "vector/lame_intrin.h"
 #endif
+#ifdef HAVE_NEON
+#include "vector/lame_neon.h"
+#endif
 
 
 
@@ -103,6 +106,10 @@ init_xrpow_core_init(lame_internal_flags * const gfc)
     gfc->init_xrpow_core = init_xrpow_core_sse;
 #endif
 #endif
+#if defined(HAVE_NEON)
+    if (gfc->CPU_features.NEON)
+        gfc->init_xrpow_core = init_xrpow_core_neon;
+#endif
 }
 
 
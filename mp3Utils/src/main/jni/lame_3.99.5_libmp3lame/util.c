@@ -30,6 +30,9 @@
 #include "machine.h"
 #include "encoder.h"
 #include "util.h"
+#if defined( HAVE_NEON ) && defined( __ANDROID__ ) && defined( __arm__ )
+#include <cpu-features.h>
+#endif
 #include "tables.h"
 
 #define PRECOMPUTE
@@ -821,6 +824,22 @@ has_SSE2(void)
 #endif
 }
 
+int
+has_NEON(void)
+{
+#if defined( HAVE_NEON )
+#if defined( __ANDROID__ ) && defined( __arm__ )
+    /* NEON is optional on armeabi-v7a */
+    return android_getCpuFamily() == ANDROID_CPU_FAMILY_ARM
+        && (android_getCpuFeatures() & ANDROID_CPU_ARM_FEATURE_NEON) != 0;
+#else
+    return 1;           /* mandatory on aarch64 */
+#endif
+#else
+    return 0;
+#endif
+}
+
 void
 disable_FPE(void)
 {
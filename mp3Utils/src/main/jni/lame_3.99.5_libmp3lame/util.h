@@ -520,7 +520,8 @@ extern  "C" {
             unsigned int AMD_3DNow:1; /* K6-2, K6-III, Athlon      */
             unsigned int SSE:1; /* Pentium III, Pentium 4    */
             unsigned int SSE2:1; /* Pentium 4, K8             */
-            unsigned int _unused:28;
+            unsigned int NEON:1; /* ARMv7 with NEON, ARMv8   */
+            unsigned int _unused:27;
         } CPU_features;
 
 
@@ -592,6 +593,7 @@ extern  "C" {
     extern int has_3DNow(void);
     extern int has_SSE(void);
     extern int has_SSE2(void);
+    extern int has_NEON(void);
 
 
 
@@ -0,0 +1,251 @@
+/*
+ * MP3 quantization and FFT, NEON intrinsics functions
+ *
+ * Ports of init_xrpow_core_sse and fht_SSE2 (xmm_quantize_sub.c) to ARM NEON.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.     See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+
+#ifdef HAVE_CONFIG_H
+# include <config.h>
+#endif
+
+#include "lame.h"
+#include "machine.h"
+#include "encoder.h"
+#include "util.h"
+#include "lame_neon.h"
+
+
+
+#ifdef HAVE_NEON
+
+#include <arm_neon.h>
+
+#if defined(__aarch64__)
+#define NEON_HAVE_VSQRT
+#define NEON_HAVE_ACROSS_VECTOR
+#endif
+
+#define TRI_SIZE (5-1)  /* 1024 =  4**5 */
+static const FLOAT costab[TRI_SIZE * 2] = {
+    9.238795325112867e-01, 3.826834323650898e-01,
+    9.951847266721969e-01, 9.801714032956060e-02,
+    9.996988186962042e-01, 2.454122852291229e-02,
+    9.999811752826011e-01, 6.135884649154475e-03
+};
+
+
+static inline float32x4_t
+sqrt_f32x4(float32x4_t x)
+{
+#ifdef NEON_HAVE_VSQRT
+    return vsqrtq_f32(x);
+#else
+    /* ARMv7 has no vector square root: x * 1/sqrt(x), the estimate refined by two
+       Newton-Raphson steps, and forced to 0 where x is 0 (the estimate is infinite there) */
+    float32x4_t e = vrsqrteq_f32(x);
+    e = vmulq_f32(e, vrsqrtsq_f32(vmulq_f32(x, e), e));
+    e = vmulq_f32(e, vrsqrtsq_f32(vmulq_f32(x, e), e));
+    return vreinterpretq_f32_u32(vandq_u32(vreinterpretq_u32_f32(vmulq_f32(x, e)),
+                                           vcgtq_f32(x, vdupq_n_f32(0))));
+#endif
+}
+
+static inline float
+sum_f32x4(float32x4_t v)
+{
+#ifdef NEON_HAVE_ACROSS_VECTOR
+    return vaddvq_f32(v);
+#else
+    float32x2_t s = vadd_f32(vget_low_f32(v), vget_high_f32(v));
+    return vget_lane_f32(vpadd_f32(s, s), 0);
+#endif
+}
+
+static inline float
+max_f32x4(float32x4_t v)
+{
+#ifdef NEON_HAVE_ACROSS_VECTOR
+    return vmaxvq_f32(v);
+#else
+    float32x2_t m = vmax_f32(vget_low_f32(v), vget_high_f32(v));
+    return vget_lane_f32(vpmax_f32(m, m), 0);
+#endif
+}
+
+
+void
+init_xrpow_core_neon(gr_info * const cod_info, FLOAT xrpow[576], int upper, FLOAT * sum)
+{
+    int     i;
+    int const count = upper + 1; /* upper is the last nonzero coefficient, inclusive */
+    int const count4 = (count / 4) * 4;
+    float32x4_t vec_sum = vdupq_n_f32(0);
+    float32x4_t vec_max = vdupq_n_f32(0);
+    float   tmp_sum;
+    float   tmp_max;
+
+    for (i = 0; i < count4; i += 4) {
+        float32x4_t tmp = vabsq_f32(vld1q_f32(&cod_info->xr[i]));
+        vec_sum = vaddq_f32(vec_sum, tmp);
+        tmp = sqrt_f32x4(vmulq_f32(tmp, sqrt_f32x4(tmp)));
+        vec_max = vmaxq_f32(vec_max, tmp);
+        vst1q_f32(&xrpow[i], tmp);
+    }
+    if (i < count) {
+        float   rest[4] = { 0, 0, 0, 0 };
+        float32x4_t tmp;
+        int     j;
+        for (j = 0; i + j < count; ++j)
+            rest[j] = cod_info->xr[i + j];
+        tmp = vabsq_f32(vld1q_f32(rest));
+        vec_sum = vaddq_f32(vec_sum, tmp);
+        tmp = sqrt_f32x4(vmulq_f32(tmp, sqrt_f32x4(tmp)));
+        vec_max = vmaxq_f32(vec_max, tmp);
+        vst1q_f32(rest, tmp);
+        for (j = 0; i + j < count; ++j)
+            xrpow[i + j] = rest[j];
+    }
+    tmp_sum = sum_f32x4(vec_sum);
+    tmp_max = max_f32x4(vec_max);
+    cod_info->xrpow_max = tmp_max;
+    *sum = tmp_sum;
+}
+
+
+static inline float32x4_t
+load4(float f0, float f1, float f2, float f3)
+{
+    float   f[4];
+    f[0] = f0;
+    f[1] = f1;
+    f[2] = f2;
+    f[3] = f3;
+    return vld1q_f32(f);
+}
+
+static inline void
+store4(float32x4_t v, float *f0, float *f1, float *f2, float *f3)
+{
+    float   f[4];
+    vst1q_f32(f, v);
+    *f0 = f[0];
+    *f1 = f[1];
+    *f2 = f[2];
+    *f3 = f[3];
+}
+
+/* {v3, v2, v1, v0} */
+static inline float32x4_t
+reverse_f32x4(float32x4_t v)
+{
+    v = vrev64q_f32(v);
+    return vcombine_f32(vget_high_f32(v), vget_low_f32(v));
+}
+
+
+void
+fht_neon(FLOAT * fz, int n)
+{
+    const FLOAT *tri = costab;
+    int     k4;
+    FLOAT  *fi, *gi;
+    FLOAT const *fn;
+
+    n <<= 1;            /* to get BLKSIZE, because of 3DNow! ASM routine */
+    fn = fz + n;
+    k4 = 4;
+    do {
+        FLOAT   s1, c1;
+        int     i, k1, k2, k3, kx;
+        kx = k4 >> 1;
+        k1 = k4;
+        k2 = k4 << 1;
+        k3 = k2 + k1;
+        k4 = k2 << 1;
+        fi = fz;
+        gi = fi + kx;
+        do {
+            FLOAT   f0, f1, f2, f3;
+            f1 = fi[0] - fi[k1];
+            f0 = fi[0] + fi[k1];
+            f3 = fi[k2] - fi[k3];
+            f2 = fi[k2] + fi[k3];
+            fi[k2] = f0 - f2;
+            fi[0] = f0 + f2;
+            fi[k3] = f1 - f3;
+            fi[k1] = f1 + f3;
+            f1 = gi[0] - gi[k1];
+            f0 = gi[0] + gi[k1];
+            f3 = SQRT2 * gi[k3];
+            f2 = SQRT2 * gi[k2];
+            gi[k2] = f0 - f2;
+            gi[0] = f0 + f2;
+            gi[k3] = f1 - f3;
+            gi[k1] = f1 + f3;
+            gi += k4;
+            fi += k4;
+        } while (fi < fn);
+        c1 = tri[0];
+        s1 = tri[1];
+        for (i = 1; i < kx; i++) {
+            float32x4_t v_c1, v_s1, v_c2;
+            FLOAT   c2, s2, s1_2 = s1 + s1;
+            c2 = 1 - s1_2 * s1;
+            s2 = s1_2 * c1;
+            fi = fz + i;
+            gi = fz + k1 - i;
+            v_c1 = load4(-c1, c1, c1, c1);
+            v_s1 = load4(s1, -s1, s1, s1);
+            v_c2 = load4(c2, c2, -c2, -c2);
+            do {
+                float32x4_t p, q, r;
+                float32x4x2_t pq;
+
+                q = load4(fi[k1], fi[k3], gi[k1], gi[k3]);      /* Q := {fi_k1,fi_k3,gi_k1,gi_k3} */
+                p = vmulq_n_f32(q, s2);                         /* P := s2 * Q */
+                q = vmulq_f32(v_c2, q);                         /* Q := c2 * Q */
+                q = vcombine_f32(vget_high_f32(q), vget_low_f32(q)); /* Q := {-c2*gi_k1,-c2*gi_k3,c2*fi_k1,c2*fi_k3} */
+                p = vaddq_f32(p, q);
+
+                r = load4(gi[0], gi[k2], fi[0], fi[k2]);        /* R := {gi_0,gi_k2,fi_0,fi_k2} */
+                q = vsubq_f32(r, p);                            /* Q := {gi_0-p0,gi_k2-p1,fi_0-p2,fi_k2-p3} */
+                r = vaddq_f32(r, p);                            /* R := {gi_0+p0,gi_k2+p1,fi_0+p2,fi_k2+p3} */
+                p = vtrnq_f32(q, r).val[0];                     /* P := {q0,r0,q2,r2} */
+                pq = vuzpq_f32(q, r);
+                q = pq.val[1];                                  /* Q := {q1,q3,r1,r3} */
+                r = vmulq_f32(v_c1, q);
+                q = vmulq_f32(v_s1, q);
+                q = reverse_f32x4(q);                           /* Q := {q3,q2,q1,q0} */
+                q = vaddq_f32(q, r);
+
+                store4(vsubq_f32(p, q), &gi[k3], &gi[k2], &fi[k3], &fi[k2]);
+                store4(vaddq_f32(p, q), &gi[k1], &gi[0], &fi[k1], &fi[0]);
+
+                gi += k4;
+                fi += k4;
+            } while (fi < fn);
+            c2 = c1;
+            c1 = c2 * tri[0] - s1 * tri[1];
+            s1 = c2 * tri[1] + s1 * tri[0];
+        }
+        tri += 2;
+    } while (k4 < n);
+}
+
+#endif	/* HAVE_NEON */
@@ -1,59 +1,209 @@
 #include "lame_3.99.5_libmp3lame/lame.h"
-#include "com_czt_mp3recorder_util_LameUtil.h"
+#include "com_czt_mp3recorder_util_Mp3Encoder.h"
 #include <stdio.h>
+#include <stdint.h>
+#include <pthread.h>
 #include <jni.h>
 
-static lame_global_flags *lame = NULL;
+/*
+ * 每个Mp3Encoder持有自己的lame_global_flags指针(jlong句柄),不同实例可以在不同线程并行编码。
+ * LAME在lame_init/lame_init_params中会初始化几张进程全局的查找表(pow43, fft窗口等),
+ * 写入的值总是相同的,但为避免并发写,初始化和关闭串行执行。
+ */
+static pthread_mutex_t init_lock = PTHREAD_MUTEX_INITIALIZER;
 
-JNIEXPORT void JNICALL Java_com_czt_mp3recorder_util_LameUtil_init(
-		JNIEnv *env, jclass cls, jint inSamplerate, jint inChannel, jint outSamplerate, jint outBitrate, jint quality) {
+static lame_global_flags *to_lame(jlong handle) {
+	return (lame_global_flags *) (intptr_t) handle;
+}
+
+static void throw_illegal_argument(JNIEnv *env, const char *message) {
+	jclass iae = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+	if (iae != NULL) {
+		(*env)->ThrowNew(env, iae, message);
+	}
+}
+
+JNIEXPORT jlong JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeInit(
+		JNIEnv *env, jclass cls, jint inSamplerate, jint inChannel, jint outSamplerate, jint outBitrate, jint quality,
+		jint vbrMode, jint vbrQuality, jint minBitrate, jint maxBitrate,
+		jboolean disableReservoir, jboolean writeLameTag) {
+	pthread_mutex_lock(&init_lock);
+	lame_global_flags *lame = lame_init();
 	if (lame != NULL) {
-		lame_close(lame);
-		lame = NULL;
+		lame_set_in_samplerate(lame, inSamplerate);
+		lame_set_num_channels(lame, inChannel);//输入流的声道
+		lame_set_out_samplerate(lame, outSamplerate);
+		lame_set_quality(lame, quality);
+		int ok = lame_set_VBR(lame, (vbr_mode) vbrMode) == 0;
+		if (vbrMode == vbr_off) {
+			lame_set_brate(lame, outBitrate);
+		} else {
+			//ABR以outBitrate为平均码率,VBR由vbrQuality决定码率
+			if (vbrMode == vbr_abr) {
+				lame_set_VBR_mean_bitrate_kbps(lame, outBitrate);
+			} else {
+				ok = ok && lame_set_VBR_q(lame, vbrQuality) == 0;
+			}
+			if (minBitrate > 0) {
+				lame_set_VBR_min_bitrate_kbps(lame, minBitrate);
+			}
+			if (maxBitrate > 0) {
+				lame_set_VBR_max_bitrate_kbps(lame, maxBitrate);
+			}
+		}
+		//关闭比特池后每帧的数据都在帧内,可以在帧边界切分和拼接
+		lame_set_disable_reservoir(lame, disableReservoir ? 1 : 0);
+		lame_set_bWriteVbrTag(lame, writeLameTag ? 1 : 0);
+		if (!ok || lame_init_params(lame) < 0) {
+			lame_close(lame);
+			lame = NULL;
+		}
 	}
-	lame = lame_init();
-	lame_set_in_samplerate(lame, inSamplerate);
-	lame_set_num_channels(lame, inChannel);//输入流的声道
-	lame_set_out_samplerate(lame, outSamplerate);
-	lame_set_brate(lame, outBitrate);
-	lame_set_quality(lame, quality);
-	lame_init_params(lame);
+	pthread_mutex_unlock(&init_lock);
+	return (jlong) (intptr_t) lame;
+}
+
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeGetFrameSize(
+		JNIEnv *env, jclass cls, jlong handle) {
+	return lame_get_framesize(to_lame(handle));
 }
 
-JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_LameUtil_encode(
-		JNIEnv *env, jclass cls, jshortArray buffer_l, jshortArray buffer_r,
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeEncode(
+		JNIEnv *env, jclass cls, jlong handle, jshortArray buffer_l, jshortArray buffer_r,
 		jint samples, jbyteArray mp3buf) {
 	jshort* j_buffer_l = (*env)->GetShortArrayElements(env, buffer_l, NULL);
 
-	jshort* j_buffer_r = (*env)->GetShortArrayElements(env, buffer_r, NULL);
+	//左右声道是同一个数组时只取一次
+	const jboolean same = (*env)->IsSameObject(env, buffer_l, buffer_r);
+	jshort* j_buffer_r = same ? j_buffer_l
+			: (*env)->GetShortArrayElements(env, buffer_r, NULL);
+
+	const jsize mp3buf_size = (*env)->GetArrayLength(env, mp3buf);
+	jbyte* j_mp3buf = (*env)->GetByteArrayElements(env, mp3buf, NULL);
+
+	int result = lame_encode_buffer(to_lame(handle), j_buffer_l, j_buffer_r,
+			samples, (unsigned char*) j_mp3buf, mp3buf_size);
+
+	//输入数据未被修改,不需要写回
+	(*env)->ReleaseShortArrayElements(env, buffer_l, j_buffer_l, JNI_ABORT);
+	if (!same) {
+		(*env)->ReleaseShortArrayElements(env, buffer_r, j_buffer_r, JNI_ABORT);
+	}
+	(*env)->ReleaseByteArrayElements(env, mp3buf, j_mp3buf, 0);
+
+	return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeEncodeMono(
+		JNIEnv *env, jclass cls, jlong handle, jshortArray buffer, jint samples, jbyteArray mp3buf) {
+	const jsize mp3buf_size = (*env)->GetArrayLength(env, mp3buf);
+	//lame_encode_buffer不会回调JVM,可以在critical区域内完成编码,避免数组拷贝
+	jshort* j_buffer = (*env)->GetPrimitiveArrayCritical(env, buffer, NULL);
+	jbyte* j_mp3buf = (*env)->GetPrimitiveArrayCritical(env, mp3buf, NULL);
+	if (j_buffer == NULL || j_mp3buf == NULL) {
+		if (j_buffer != NULL) {
+			(*env)->ReleasePrimitiveArrayCritical(env, buffer, j_buffer, JNI_ABORT);
+		}
+		return -2;
+	}
+
+	//单声道输入,右声道传NULL
+	int result = lame_encode_buffer(to_lame(handle), j_buffer, NULL,
+			samples, (unsigned char*) j_mp3buf, mp3buf_size);
+
+	(*env)->ReleasePrimitiveArrayCritical(env, mp3buf, j_mp3buf, 0);
+	(*env)->ReleasePrimitiveArrayCritical(env, buffer, j_buffer, JNI_ABORT);
+
+	return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeEncodeInterleaved(
+		JNIEnv *env, jclass cls, jlong handle, jshortArray buffer, jint samples, jbyteArray mp3buf) {
+	jshort* j_buffer = (*env)->GetShortArrayElements(env, buffer, NULL);
+
+	const jsize mp3buf_size = (*env)->GetArrayLength(env, mp3buf);
+	jbyte* j_mp3buf = (*env)->GetByteArrayElements(env, mp3buf, NULL);
+
+	int result = lame_encode_buffer_interleaved(to_lame(handle), j_buffer,
+			samples, (unsigned char*) j_mp3buf, mp3buf_size);
+
+	//输入数据未被修改,不需要写回
+	(*env)->ReleaseShortArrayElements(env, buffer, j_buffer, JNI_ABORT);
+	(*env)->ReleaseByteArrayElements(env, mp3buf, j_mp3buf, 0);
+
+	return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeEncodeDirect(
+		JNIEnv *env, jclass cls, jlong handle, jobject pcm, jint samples, jobject mp3) {
+	lame_global_flags *lame = to_lame(handle);
+	//直接访问ByteBuffer的内存,不经过Java数组拷贝
+	short int* j_pcm = (short int*) (*env)->GetDirectBufferAddress(env, pcm);
+	unsigned char* j_mp3 = (unsigned char*) (*env)->GetDirectBufferAddress(env, mp3);
+	if (j_pcm == NULL || j_mp3 == NULL) {
+		throw_illegal_argument(env, "encodeDirect requires direct buffers");
+		return -1;
+	}
+	const jlong pcm_capacity = (*env)->GetDirectBufferCapacity(env, pcm);
+	const jlong mp3_capacity = (*env)->GetDirectBufferCapacity(env, mp3);
+	const int channels = lame_get_num_channels(lame);
+	if ((jlong) samples * channels * 2 > pcm_capacity) {
+		throw_illegal_argument(env, "samples exceed pcm buffer capacity");
+		return -1;
+	}
+
+	if (channels == 2) {
+		return lame_encode_buffer_interleaved(lame, j_pcm, samples, j_mp3, (int) mp3_capacity);
+	}
+	return lame_encode_buffer(lame, j_pcm, NULL, samples, j_mp3, (int) mp3_capacity);
+}
 
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeFlush(
+		JNIEnv *env, jclass cls, jlong handle, jbyteArray mp3buf) {
 	const jsize mp3buf_size = (*env)->GetArrayLength(env, mp3buf);
 	jbyte* j_mp3buf = (*env)->GetByteArrayElements(env, mp3buf, NULL);
 
-	int result = lame_encode_buffer(lame, j_buffer_l, j_buffer_r,
-			samples, j_mp3buf, mp3buf_size);
+	int result = lame_encode_flush(to_lame(handle), (unsigned char*) j_mp3buf, mp3buf_size);
 
-	(*env)->ReleaseShortArrayElements(env, buffer_l, j_buffer_l, 0);
-	(*env)->ReleaseShortArrayElements(env, buffer_r, j_buffer_r, 0);
 	(*env)->ReleaseByteArrayElements(env, mp3buf, j_mp3buf, 0);
 
 	return result;
 }
 
-JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_LameUtil_flush(
-		JNIEnv *env, jclass cls, jbyteArray mp3buf) {
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeFlushNoGap(
+		JNIEnv *env, jclass cls, jlong handle, jbyteArray mp3buf) {
 	const jsize mp3buf_size = (*env)->GetArrayLength(env, mp3buf);
 	jbyte* j_mp3buf = (*env)->GetByteArrayElements(env, mp3buf, NULL);
 
-	int result = lame_encode_flush(lame, j_mp3buf, mp3buf_size);
+	//只输出已完成的帧,未编码的pcm留在LAME中接着编入下一个文件
+	int result = lame_encode_flush_nogap(to_lame(handle), (unsigned char*) j_mp3buf, mp3buf_size);
 
 	(*env)->ReleaseByteArrayElements(env, mp3buf, j_mp3buf, 0);
 
 	return result;
 }
 
-JNIEXPORT void JNICALL Java_com_czt_mp3recorder_util_LameUtil_close
-(JNIEnv *env, jclass cls) {
-	lame_close(lame);
-	lame = NULL;
+JNIEXPORT void JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeInitBitstream(
+		JNIEnv *env, jclass cls, jlong handle) {
+	lame_init_bitstream(to_lame(handle));
+}
+
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeGetLameTagFrame(
+		JNIEnv *env, jclass cls, jlong handle, jbyteArray buffer) {
+	const jsize size = (*env)->GetArrayLength(env, buffer);
+	jbyte* j_buffer = (*env)->GetByteArrayElements(env, buffer, NULL);
+
+	//缓冲区不够大时不写入,只返回需要的长度
+	size_t result = lame_get_lametag_frame(to_lame(handle), (unsigned char*) j_buffer, size);
+
+	(*env)->ReleaseByteArrayElements(env, buffer, j_buffer, 0);
+
+	return (jint) result;
+}
+
+JNIEXPORT void JNICALL Java_com_czt_mp3recorder_util_Mp3Encoder_nativeClose
+(JNIEnv *env, jclass cls, jlong handle) {
+	pthread_mutex_lock(&init_lock);
+	lame_close(to_lame(handle));
+	pthread_mutex_unlock(&init_lock);
 }
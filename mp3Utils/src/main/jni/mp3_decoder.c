@@ -0,0 +1,171 @@
+#include "lame_3.99.5_libmp3lame/lame.h"
+#include "com_czt_mp3recorder_util_Mp3Decoder.h"
+#include <stdint.h>
+#include <string.h>
+#include <jni.h>
+
+/*
+ * Mp3Decoder的JNI部分,基于LAME的hip_*接口(mpglib)。
+ * mpglib源码不随本工程提供,放入jni/lame_3.99.5_mpglib后由Android.mk/CMakeLists.txt
+ * 加上HAVE_MPGLIB编译;否则这里只编译出返回"不支持"的空实现。
+ */
+
+/* 一帧最多1152个采样,每声道 */
+#define MAX_FRAME_SAMPLES (com_czt_mp3recorder_util_Mp3Decoder_MAX_FRAME_PCM / 2)
+
+/* Mp3Decoder.mInfo的下标 */
+#define INFO_HEADER_PARSED com_czt_mp3recorder_util_Mp3Decoder_INFO_HEADER_PARSED
+#define INFO_SAMPLE_RATE com_czt_mp3recorder_util_Mp3Decoder_INFO_SAMPLE_RATE
+#define INFO_CHANNELS com_czt_mp3recorder_util_Mp3Decoder_INFO_CHANNELS
+#define INFO_BIT_RATE com_czt_mp3recorder_util_Mp3Decoder_INFO_BIT_RATE
+#define INFO_FRAME_SIZE com_czt_mp3recorder_util_Mp3Decoder_INFO_FRAME_SIZE
+#define INFO_LENGTH (INFO_FRAME_SIZE + 1)
+
+JNIEXPORT jboolean JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeIsSupported(
+		JNIEnv *env, jclass cls) {
+#ifdef HAVE_MPGLIB
+	return JNI_TRUE;
+#else
+	return JNI_FALSE;
+#endif
+}
+
+#ifdef HAVE_MPGLIB
+
+static void throw_illegal_argument(JNIEnv *env, const char *message) {
+	jclass iae = (*env)->FindClass(env, "java/lang/IllegalArgumentException");
+	if (iae != NULL) {
+		(*env)->ThrowNew(env, iae, message);
+	}
+}
+
+static hip_t to_hip(jlong handle) {
+	return (hip_t) (intptr_t) handle;
+}
+
+/*
+ * 解码至多一帧,写入交错的pcm。mp3为NULL时只解码已缓存的数据。
+ * 返回每声道采样数,0表示需要更多数据,-1表示出错
+ */
+static int decode_frame(hip_t hip, unsigned char *mp3, int length, short *pcm, mp3data_struct *data) {
+	short left[MAX_FRAME_SAMPLES];
+	short right[MAX_FRAME_SAMPLES];
+	unsigned char empty = 0;
+	int i;
+	int samples = hip_decode1_headers(hip, mp3 != NULL ? mp3 : &empty, length, left, right, data);
+	if (samples <= 0) {
+		return samples;
+	}
+	if (data->stereo == 2) {
+		for (i = 0; i < samples; i++) {
+			pcm[2 * i] = left[i];
+			pcm[2 * i + 1] = right[i];
+		}
+	} else {
+		memcpy(pcm, left, samples * sizeof(short));
+	}
+	return samples;
+}
+
+static void store_info(JNIEnv *env, jintArray info, const mp3data_struct *data) {
+	jint values[INFO_LENGTH];
+	values[INFO_HEADER_PARSED] = data->header_parsed;
+	values[INFO_SAMPLE_RATE] = data->samplerate;
+	values[INFO_CHANNELS] = data->stereo;
+	values[INFO_BIT_RATE] = data->bitrate;
+	values[INFO_FRAME_SIZE] = data->framesize;
+	(*env)->SetIntArrayRegion(env, info, 0, INFO_LENGTH, values);
+}
+
+JNIEXPORT jlong JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeInit(
+		JNIEnv *env, jclass cls) {
+	return (jlong) (intptr_t) hip_decode_init();
+}
+
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeDecode(
+		JNIEnv *env, jclass cls, jlong handle, jbyteArray mp3, jint offset, jint length,
+		jshortArray pcm, jintArray info) {
+	mp3data_struct data;
+	jbyte *j_mp3 = NULL;
+	jshort *j_pcm;
+	int result;
+	memset(&data, 0, sizeof(data));
+	//hip_decode1_headers不会回调JVM,可以在critical区域内解码
+	if (mp3 != NULL && length > 0) {
+		j_mp3 = (*env)->GetPrimitiveArrayCritical(env, mp3, NULL);
+		if (j_mp3 == NULL) {
+			return -1;
+		}
+	}
+	j_pcm = (*env)->GetPrimitiveArrayCritical(env, pcm, NULL);
+	if (j_pcm == NULL) {
+		if (j_mp3 != NULL) {
+			(*env)->ReleasePrimitiveArrayCritical(env, mp3, j_mp3, JNI_ABORT);
+		}
+		return -1;
+	}
+
+	result = decode_frame(to_hip(handle), j_mp3 != NULL ? (unsigned char *) j_mp3 + offset : NULL,
+			j_mp3 != NULL ? length : 0, j_pcm, &data);
+
+	(*env)->ReleasePrimitiveArrayCritical(env, pcm, j_pcm, 0);
+	if (j_mp3 != NULL) {
+		(*env)->ReleasePrimitiveArrayCritical(env, mp3, j_mp3, JNI_ABORT);
+	}
+	store_info(env, info, &data);
+	return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeDecodeDirect(
+		JNIEnv *env, jclass cls, jlong handle, jobject mp3, jint length, jobject pcm, jintArray info) {
+	mp3data_struct data;
+	unsigned char *j_mp3 = NULL;
+	short *j_pcm = (short *) (*env)->GetDirectBufferAddress(env, pcm);
+	int result;
+	if (mp3 != NULL && length > 0) {
+		j_mp3 = (unsigned char *) (*env)->GetDirectBufferAddress(env, mp3);
+		if (j_mp3 == NULL || length > (*env)->GetDirectBufferCapacity(env, mp3)) {
+			throw_illegal_argument(env, "mp3 must be a direct buffer holding length bytes");
+			return -1;
+		}
+	}
+	if (j_pcm == NULL || (*env)->GetDirectBufferCapacity(env, pcm) < (jlong) (2 * MAX_FRAME_SAMPLES * sizeof(short))) {
+		throw_illegal_argument(env, "pcm must be a direct buffer of at least one stereo frame");
+		return -1;
+	}
+	memset(&data, 0, sizeof(data));
+
+	result = decode_frame(to_hip(handle), j_mp3, j_mp3 != NULL ? length : 0, j_pcm, &data);
+
+	store_info(env, info, &data);
+	return result;
+}
+
+JNIEXPORT void JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeClose(
+		JNIEnv *env, jclass cls, jlong handle) {
+	hip_decode_exit(to_hip(handle));
+}
+
+#else
+
+JNIEXPORT jlong JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeInit(
+		JNIEnv *env, jclass cls) {
+	return 0;
+}
+
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeDecode(
+		JNIEnv *env, jclass cls, jlong handle, jbyteArray mp3, jint offset, jint length,
+		jshortArray pcm, jintArray info) {
+	return -1;
+}
+
+JNIEXPORT jint JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeDecodeDirect(
+		JNIEnv *env, jclass cls, jlong handle, jobject mp3, jint length, jobject pcm, jintArray info) {
+	return -1;
+}
+
+JNIEXPORT void JNICALL Java_com_czt_mp3recorder_util_Mp3Decoder_nativeClose(
+		JNIEnv *env, jclass cls, jlong handle) {
+}
+
+#endif
@@ -0,0 +1,173 @@
+package com.czt.mp3recorder;
+
+import com.czt.mp3recorder.util.Mp3FrameScanner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Transcodes small generated files with the host build of libmp3lame.
+ */
+public class BatchTranscoderTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return 16 bit little endian sine, frames samples per channel
+     */
+    private static ByteBuffer sine(int frames, int channels) {
+        ByteBuffer pcm = ByteBuffer.allocate(frames * channels * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+            for (int c = 0; c < channels; c++) {
+                pcm.putShort(sample);
+            }
+        }
+        return pcm;
+    }
+
+    private File raw(String name, int frames) throws Exception {
+        File file = folder.newFile(name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(sine(frames, 1).array());
+        out.close();
+        return file;
+    }
+
+    private File wav(String name, int frames) throws Exception {
+        ByteBuffer data = sine(frames, 2);
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x46464952).putInt(36 + data.capacity()).putInt(0x45564157);
+        header.putInt(0x20746d66).putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 4).putShort((short) 4).putShort((short) 16);
+        header.putInt(0x61746164).putInt(data.capacity());
+        File file = folder.newFile(name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(header.array());
+        out.write(data.array());
+        out.close();
+        return file;
+    }
+
+    private File output(String name) {
+        return new File(folder.getRoot(), name);
+    }
+
+    @Test
+    public void transcode_reportsResultsAndProgress() throws Exception {
+        List<BatchTranscoder.Job> jobs = Arrays.asList(
+                BatchTranscoder.Job.raw(raw("a.pcm", 10 * SAMPLE_RATE), output("a.mp3"), SAMPLE_RATE, 1),
+                BatchTranscoder.Job.wav(wav("b.wav", 3 * SAMPLE_RATE), output("b.mp3")),
+                BatchTranscoder.Job.wav(output("missing.wav"), output("missing.mp3")));
+        final Map<BatchTranscoder.Job, List<Double>> progress = new HashMap<>();
+        final List<BatchTranscoder.Result> finished = Collections.synchronizedList(new ArrayList<BatchTranscoder.Result>());
+        List<BatchTranscoder.Result> results = new BatchTranscoder(RecorderConfig.SPEECH_LOW_CPU, 2).transcode(jobs,
+                new BatchTranscoder.Listener() {
+                    @Override
+                    public void onProgress(BatchTranscoder.Job job, long framesDone, long totalFrames) {
+                        synchronized (progress) {
+                            List<Double> values = progress.get(job);
+                            if (values == null) {
+                                values = new ArrayList<>();
+                                progress.put(job, values);
+                            }
+                            values.add((double) framesDone / totalFrames);
+                        }
+                    }
+
+                    @Override
+                    public void onJobFinished(BatchTranscoder.Result result) {
+                        finished.add(result);
+                    }
+                });
+
+        assertEquals(3, results.size());
+        assertEquals(3, finished.size());
+        long[] frames = {10 * SAMPLE_RATE, 3 * SAMPLE_RATE};
+        for (int i = 0; i < 2; i++) {
+            BatchTranscoder.Result result = results.get(i);
+            assertTrue(result.toString(), result.isSuccessful());
+            assertEquals(frames[i], result.getFrames());
+            assertEquals(frames[i] * 1000 / SAMPLE_RATE, result.getAudioDurationMillis());
+            assertEquals(jobs.get(i).getOutput().length(), result.getBytesWritten());
+            // 16kHz语音编码远快于实时,但不会快到不合理
+            double factor = result.getRealtimeFactor();
+            assertTrue(result.toString(), factor > 1 && factor < 100000);
+            assertTrue(result.getElapsedMillis() <= result.getAudioDurationMillis() / factor + 1);
+            assertEquals(0, new Mp3FrameScanner().scan(jobs.get(i).getOutput()).getTrailingBytes());
+
+            List<Double> values = progress.get(jobs.get(i));
+            assertNotNull(values);
+            for (int j = 1; j < values.size(); j++) {
+                assertTrue(values.toString(), values.get(j) >= values.get(j - 1));
+            }
+            assertEquals(1.0, values.get(values.size() - 1), 0);
+        }
+        // 坏的输入只影响自己的结果
+        BatchTranscoder.Result missing = results.get(2);
+        assertFalse(missing.isSuccessful());
+        assertFalse(missing.isCancelled());
+        assertNotNull(missing.getError());
+        assertNull(progress.get(jobs.get(2)));
+    }
+
+    @Test
+    public void cancel_skipsRemainingJobsAndDeletesPartialOutput() throws Exception {
+        final List<BatchTranscoder.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            jobs.add(BatchTranscoder.Job.raw(raw(i + ".pcm", 30 * SAMPLE_RATE), output(i + ".mp3"), SAMPLE_RATE, 1));
+        }
+        final BatchTranscoder.Batch[] batch = new BatchTranscoder.Batch[1];
+        final Object lock = new Object();
+        BatchTranscoder transcoder = new BatchTranscoder(RecorderConfig.SPEECH_LOW_CPU, 1);
+        synchronized (lock) {
+            batch[0] = transcoder.start(jobs, new BatchTranscoder.Listener() {
+                @Override
+                public void onProgress(BatchTranscoder.Job job, long framesDone, long totalFrames) {
+                    // 第一个文件编码到一部分时取消
+                    synchronized (lock) {
+                        batch[0].cancel();
+                    }
+                }
+
+                @Override
+                public void onJobFinished(BatchTranscoder.Result result) {
+                }
+            });
+        }
+        List<BatchTranscoder.Result> results = batch[0].await();
+
+        assertTrue(batch[0].isCancelled());
+        BatchTranscoder.Result first = results.get(0);
+        assertTrue(first.isCancelled());
+        assertTrue(first.getFrames() > 0 && first.getFrames() < 30 * SAMPLE_RATE);
+        for (int i = 0; i < jobs.size(); i++) {
+            assertTrue(results.get(i).isCancelled());
+            assertFalse(results.get(i).isSuccessful());
+            assertFalse(jobs.get(i).getOutput().exists());
+        }
+        for (int i = 1; i < jobs.size(); i++) {
+            assertEquals(0, results.get(i).getFrames());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.czt.mp3recorder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for {@link BlockHandoff}.
+ */
+public class BlockHandoffTest {
+
+    @Test
+    public void obtain_allocatesUpToBlockCountThenReusesRecycledBlocks() throws Exception {
+        BlockHandoff handoff = new BlockHandoff(2, false, Thread.currentThread());
+        ByteBuffer first = handoff.obtain(16);
+        ByteBuffer second = handoff.obtain(16);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(handoff.obtain(16));
+
+        first.put((byte) 1);
+        handoff.submit(first);
+        assertFalse(handoff.isEmpty());
+        ByteBuffer polled = handoff.poll();
+        assertSame(first, polled);
+        assertEquals(1, polled.remaining());
+        handoff.recycle(polled);
+
+        ByteBuffer reused = handoff.obtain(16);
+        assertSame(first, reused);
+        assertEquals(0, reused.position());
+        handoff.submit(reused);
+        handoff.recycle(handoff.poll());
+        // 回收的块太小时换成新块,块的总数不变
+        ByteBuffer larger = handoff.obtain(64);
+        assertTrue(larger.capacity() >= 64);
+        assertNull(handoff.obtain(16));
+    }
+
+    @Test
+    public void isFinished_onlyAfterEveryBlockSubmittedBeforeFinishWasPolled() throws Exception {
+        BlockHandoff handoff = new BlockHandoff(2, true, Thread.currentThread());
+        ByteBuffer block = handoff.obtain(8);
+        assertTrue(block.isDirect());
+        handoff.submit(block);
+        assertFalse(handoff.isFinished());
+        handoff.finish();
+        assertFalse(handoff.isFinished());
+        assertSame(block, handoff.poll());
+        assertTrue(handoff.isFinished());
+    }
+
+    @Test
+    public void consumerThread_receivesEverythingInOrder() throws Exception {
+        final int count = 100000;
+        final long[] sum = new long[1];
+        final int[] errors = new int[1];
+        final BlockHandoff[] handoff = new BlockHandoff[1];
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                int expected = 0;
+                while (true) {
+                    ByteBuffer block = handoff[0].poll();
+                    if (block == null) {
+                        if (handoff[0].isFinished()) {
+                            break;
+                        }
+                        handoff[0].await(1000000);
+                        continue;
+                    }
+                    while (block.hasRemaining()) {
+                        int value = block.getInt();
+                        if (value != expected++) {
+                            errors[0]++;
+                        }
+                        sum[0] += value;
+                    }
+                    handoff[0].recycle(block);
+                }
+            }
+        };
+        handoff[0] = new BlockHandoff(4, false, consumer);
+        consumer.start();
+        ByteBuffer block = null;
+        for (int i = 0; i < count; i++) {
+            while (block == null) {
+                block = handoff[0].obtain(64);
+            }
+            block.putInt(i);
+            if (!block.hasRemaining()) {
+                handoff[0].submit(block);
+                block = null;
+            }
+        }
+        if (block != null) {
+            handoff[0].submit(block);
+        }
+        handoff[0].finish();
+        consumer.join(10000);
+
+        assertFalse(consumer.isAlive());
+        assertEquals(0, errors[0]);
+        assertEquals((long) count * (count - 1) / 2, sum[0]);
+    }
+}
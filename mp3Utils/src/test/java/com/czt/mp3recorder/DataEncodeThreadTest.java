@@ -0,0 +1,322 @@
+package com.czt.mp3recorder;
+
+import com.czt.mp3recorder.util.LameUtil;
+import com.czt.mp3recorder.util.Mp3Encoder;
+import com.czt.mp3recorder.util.Mp3FrameHeader;
+import com.czt.mp3recorder.util.Mp3FrameScanner;
+import com.czt.mp3recorder.util.Mp3SeekIndex;
+import com.czt.mp3recorder.util.RecordingJournal;
+import com.czt.mp3recorder.util.RecordingRecovery;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Encodes through {@link DataEncodeThread} with the host build of libmp3lame.
+ */
+public class DataEncodeThreadTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHUNK = 4096;
+    /**
+     * record(DataEncodeThread)写入的采样数
+     */
+    private static final int RECORDED_SAMPLES = 2 * SAMPLE_RATE / CHUNK * CHUNK;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File record(Mp3Encoder encoder) throws Exception {
+        return record(encoder, false);
+    }
+
+    private File record(Mp3Encoder encoder, boolean seekIndex) throws Exception {
+        File file = folder.newFile();
+        DataEncodeThread thread = new DataEncodeThread(file, encoder, CHUNK, 8, false);
+        if (seekIndex) {
+            thread.setSeekIndex(Mp3SeekIndex.sidecarFile(file), 250);
+        }
+        record(thread);
+        return file;
+    }
+
+    private void record(DataEncodeThread thread) throws Exception {
+        thread.start();
+        short[] pcm = new short[CHUNK];
+        int phase = 0;
+        for (int chunk = 0; chunk < RECORDED_SAMPLES / CHUNK; chunk++) {
+            for (int i = 0; i < CHUNK; i++, phase++) {
+                // 前一秒正弦波,后一秒静音
+                pcm[i] = phase < SAMPLE_RATE ? (short) (8000 * Math.sin(2 * Math.PI * 440 * phase / SAMPLE_RATE)) : 0;
+            }
+            while (thread.getQueueDepth() == thread.getQueueCapacity()) {
+                Thread.sleep(1);
+            }
+            thread.addTask(pcm, CHUNK);
+        }
+        thread.sendStopMessage();
+        thread.join();
+    }
+
+    private static byte[] read(File file) throws Exception {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return frames after the first one
+     */
+    private static int countAudioFrames(byte[] mp3) {
+        return countFrames(mp3, Mp3FrameHeader.parse(mp3, 0).getFrameLength());
+    }
+
+    private static int countFrames(byte[] mp3) {
+        return countFrames(mp3, 0);
+    }
+
+    private static int countFrames(byte[] mp3, int offset) {
+        int frames = 0;
+        while (offset < mp3.length) {
+            Mp3FrameHeader header = Mp3FrameHeader.parse(mp3, offset);
+            assertNotNull("no frame at " + offset, header);
+            offset += header.getFrameLength();
+            frames++;
+        }
+        assertEquals(mp3.length, offset);
+        return frames;
+    }
+
+    private static void assertLameTag(byte[] mp3, String id) {
+        Mp3FrameHeader first = Mp3FrameHeader.parse(mp3, 0);
+        assertNotNull(first);
+        ByteBuffer tag = ByteBuffer.wrap(mp3, first.getSideInfoEnd(), 16);
+        byte[] magic = new byte[4];
+        tag.get(magic);
+        assertEquals(id, new String(magic));
+        assertEquals("frames and bytes present", 3, tag.getInt() & 3);
+        assertEquals(countAudioFrames(mp3), tag.getInt());
+        assertEquals(mp3.length, tag.getInt());
+    }
+
+    @Test
+    public void cbrFile_startsWithFilledInInfoTag() throws Exception {
+        assertLameTag(read(record(new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7))), "Info");
+    }
+
+    @Test
+    public void vbrFile_startsWithFilledInXingTag() throws Exception {
+        Mp3Encoder encoder = new Mp3Encoder.Builder(SAMPLE_RATE, 1)
+                .setVbrMode(Mp3Encoder.VBR_MTRH).setVbrQuality(7).build();
+        assertLameTag(read(record(encoder)), "Xing");
+    }
+
+    @Test
+    public void seekIndex_isWrittenNextToTheFile() throws Exception {
+        File file = record(new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7), true);
+        Mp3SeekIndex index = Mp3SeekIndex.read(Mp3SeekIndex.sidecarFile(file));
+        Mp3FrameScanner.Result scan = new Mp3FrameScanner().scan(file);
+
+        assertEquals(scan.getFrameCount(), index.getTotalFrames());
+        assertEquals(file.length(), index.getEndOffset());
+        // 44.1kHz每帧1152采样,250ms约10帧一项
+        assertEquals(10, index.getFrameIndex(1));
+        for (int i = 0; i < index.getEntryCount(); i++) {
+            assertEquals(scan.getFrameOffset((int) index.getFrameIndex(i)), index.getOffset(i));
+        }
+    }
+
+    @Test
+    public void checkpoints_areJournaledAndJournalRemovedWhenFinished() throws Exception {
+        File file = folder.newFile();
+        File journal = RecordingJournal.journalFile(file);
+        DataEncodeThread thread = new DataEncodeThread(file, new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7),
+                CHUNK, 8, false);
+        thread.setCheckpoints(journal, 1);
+        record(thread);
+
+        assertTrue(thread.getWriter().getCheckpointCount() > 0);
+        assertFalse(journal.exists());
+        assertFalse(RecordingRecovery.recover(file).isTagRebuilt());
+    }
+
+    @Test
+    public void segments_splitGaplesslyAndAreListedInManifest() throws Exception {
+        File whole = record(new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7));
+        long wholeFrames = new Mp3FrameScanner().scan(whole).getFrameCount();
+
+        SegmentManifest manifest = new SegmentManifest(new File(folder.getRoot(), "talk.mp3"));
+        DataEncodeThread thread = new DataEncodeThread(manifest.getSegmentFile(0),
+                new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7), CHUNK, 8, false);
+        thread.setSegments(manifest, 500, 0);
+        record(thread);
+
+        SegmentManifest read = SegmentManifest.read(new File(folder.getRoot(), "talk.mp3"));
+        assertEquals(SAMPLE_RATE, read.getSampleRate());
+        // 两秒,每段约半秒(按4096采样的块切换)
+        assertTrue(read.getSegments().size() >= 4);
+        long frames = 0;
+        long start = 0;
+        long samples = 0;
+        for (int i = 0; i < read.getSegments().size(); i++) {
+            SegmentManifest.Segment segment = read.getSegments().get(i);
+            File file = manifest.getSegmentFile(i);
+            assertEquals(file.getName(), segment.getName());
+            assertEquals(file.length(), segment.getByteCount());
+            assertEquals(start, segment.getStartSample());
+            // 每段都有自己的Info帧,帧数与实际一致
+            Mp3FrameScanner.Result scan = new Mp3FrameScanner().scan(file);
+            assertEquals("Info", scan.getInfoTag());
+            assertEquals(scan.getFrameCount(), scan.getInfoTagFrameCount());
+            assertEquals(scan.getFrameCount() * 1152, segment.getSampleCount());
+            assertEquals(0, scan.getTrailingBytes() + scan.getTruncatedBytes());
+            // 只有第一段带编码延迟
+            assertEquals(i == 0 ? 576 : 0, scan.getEncoderDelay());
+            frames += scan.getFrameCount();
+            start += segment.getSampleCount();
+            samples += scan.getSampleCount();
+        }
+        // 分段不增减帧:与不分段时帧数相同
+        assertEquals(wholeFrames, frames);
+        // 各段按标签去掉延迟和填充后正好拼回输入
+        assertEquals(RECORDED_SAMPLES, samples);
+        assertEquals(read.getSampleCount(), manifest.getSampleCount());
+    }
+
+    @Test
+    public void sinks_getTheFileStreamWithoutItsTagFrame() throws Exception {
+        File file = folder.newFile();
+        ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        ByteArrayOutputStream async = new ByteArrayOutputStream();
+        DataEncodeThread thread = new DataEncodeThread(file, new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7),
+                CHUNK, 8, true);
+        thread.setSink(new TeeSink(new OutputStreamSink(direct, false),
+                new AsyncSink(new OutputStreamSink(async, false), 1 << 20, AsyncSink.OverflowPolicy.DROP_NEWEST)));
+        record(thread);
+
+        byte[] mp3 = read(file);
+        int tag = Mp3FrameHeader.parse(mp3, 0).getFrameLength();
+        byte[] expected = Arrays.copyOfRange(mp3, tag, mp3.length);
+        assertArrayEquals(expected, direct.toByteArray());
+        assertArrayEquals(expected, async.toByteArray());
+
+        // 只有sink时得到同样的流
+        ByteArrayOutputStream only = new ByteArrayOutputStream();
+        record(new DataEncodeThread(new OutputStreamSink(only, false),
+                new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7), CHUNK, 8, false));
+        assertArrayEquals(expected, only.toByteArray());
+    }
+
+    @Test
+    public void sinks_getWholeFramesSoOverflowDropsLeaveAParsableStream() throws Exception {
+        for (AsyncSink.OverflowPolicy policy : new AsyncSink.OverflowPolicy[]{
+                AsyncSink.OverflowPolicy.DROP_NEWEST, AsyncSink.OverflowPolicy.DROP_BACKLOG}) {
+            final ByteArrayOutputStream received = new ByteArrayOutputStream();
+            final int[] writes = new int[1];
+            EncodedSink slow = new EncodedSink() {
+                @Override
+                public void write(ByteBuffer frames) throws IOException {
+                    byte[] bytes = new byte[frames.remaining()];
+                    frames.get(bytes);
+                    // 每次写入都是完整的帧
+                    countFrames(bytes);
+                    received.write(bytes, 0, bytes.length);
+                    writes[0]++;
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            AsyncSink async = new AsyncSink(slow, 1024, policy);
+            record(new DataEncodeThread(async, new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 128, 7), CHUNK, 8, false));
+
+            assertTrue(async.toString(), async.getOverflowCount() > 0);
+            assertTrue(writes[0] > 0);
+            File file = folder.newFile();
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(received.toByteArray());
+            out.close();
+            Mp3FrameScanner.Result scan = new Mp3FrameScanner().scan(file);
+            assertEquals(0, scan.getResyncCount());
+            assertEquals(0, scan.getSkippedBytes());
+            assertEquals(0, scan.getTrailingBytes());
+            assertEquals(countFrames(received.toByteArray()), scan.getFrameCount());
+        }
+    }
+
+    @Test
+    public void addTask_rejectsMoreThanAChunkAndReportsAFullQueue() throws Exception {
+        DataEncodeThread thread = new DataEncodeThread(folder.newFile(),
+                new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7), CHUNK, 8, false);
+        short[] pcm = new short[CHUNK + 1];
+        try {
+            thread.addTask(pcm, CHUNK + 1);
+            fail("readSize above the chunk size must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        // 线程未启动,没有消费者
+        for (int i = 0; i < thread.getQueueCapacity(); i++) {
+            assertTrue(thread.addTask(pcm, CHUNK));
+        }
+        assertFalse(thread.addTask(pcm, CHUNK));
+        assertFalse(thread.addTask(pcm, CHUNK));
+        assertEquals(2, thread.getQueueOverflowCount());
+        assertEquals(thread.getQueueCapacity(), thread.getQueueDepth());
+        thread.release();
+    }
+
+    @Test
+    public void release_closesEncoderAndSinkOfUnstartedThread() throws Exception {
+        Mp3Encoder encoder = new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7);
+        final boolean[] closed = new boolean[1];
+        DataEncodeThread thread = new DataEncodeThread(folder.newFile(), encoder, CHUNK, 8, false);
+        thread.setSink(new OutputStreamSink(new ByteArrayOutputStream(), false) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        });
+        thread.release();
+
+        assertTrue(encoder.isClosed());
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    public void legacyConstructor_clearsLameUtilWhenClosingItsEncoder() throws Exception {
+        LameUtil.init(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7);
+        Mp3Encoder shared = LameUtil.getEncoder();
+        record(new DataEncodeThread(folder.newFile(), CHUNK));
+
+        assertTrue(shared.isClosed());
+        assertNull(LameUtil.getEncoder());
+    }
+}
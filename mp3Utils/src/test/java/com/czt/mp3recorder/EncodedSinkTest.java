@@ -0,0 +1,121 @@
+package com.czt.mp3recorder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EncodedSinkTest {
+    private static final int WRITE = 1000;
+
+    /**
+     * Collects writes, blocking until released.
+     */
+    private static class SlowSink implements EncodedSink {
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final ByteArrayOutputStream mData = new ByteArrayOutputStream();
+        volatile boolean mClosed;
+
+        @Override
+        public void write(ByteBuffer frames) throws IOException {
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            byte[] bytes = new byte[frames.remaining()];
+            frames.get(bytes);
+            mData.write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void close() {
+            mClosed = true;
+        }
+    }
+
+    private static ByteBuffer frames(int value) {
+        byte[] data = new byte[WRITE];
+        Arrays.fill(data, (byte) value);
+        return ByteBuffer.wrap(data);
+    }
+
+    @Test
+    public void asyncSink_slowSinkDropsWholeWritesWithoutBlocking() throws Exception {
+        SlowSink slow = new SlowSink();
+        AsyncSink sink = new AsyncSink(slow, 1, AsyncSink.OverflowPolicy.DROP_NEWEST);
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            sink.write(frames(i));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertTrue(sink.getOverflowCount() > 0);
+        slow.mRelease.countDown();
+        sink.close();
+
+        assertTrue(slow.mClosed);
+        byte[] data = slow.mData.toByteArray();
+        assertEquals(200 * WRITE, data.length + sink.getDroppedBytes());
+        // 只丢整次写入,留下的按顺序
+        int last = -1;
+        for (int i = 0; i < data.length; i += WRITE) {
+            int value = data[i] & 0xFF;
+            assertTrue(value > last);
+            for (int j = 1; j < WRITE; j++) {
+                assertEquals(data[i], data[i + j]);
+            }
+            last = value;
+        }
+    }
+
+    @Test
+    public void asyncSink_disconnectPolicyClosesTheSink() throws Exception {
+        SlowSink slow = new SlowSink();
+        AsyncSink sink = new AsyncSink(slow, 1, AsyncSink.OverflowPolicy.DISCONNECT);
+        for (int i = 0; i < 200; i++) {
+            sink.write(frames(i));
+        }
+        assertTrue(sink.isDisconnected());
+        slow.mRelease.countDown();
+        sink.close();
+        assertTrue(slow.mClosed);
+        assertTrue(slow.mData.size() < 200 * WRITE);
+    }
+
+    @Test
+    public void teeSink_dropsFailingSinkAndFeedsTheRest() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EncodedSink failing = new EncodedSink() {
+            @Override
+            public void write(ByteBuffer frames) throws IOException {
+                throw new IOException("broken pipe");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        TeeSink tee = new TeeSink(failing, new OutputStreamSink(out, false));
+        ByteBuffer direct = ByteBuffer.allocateDirect(WRITE);
+        direct.put(frames(7));
+        direct.flip();
+        tee.write(direct);
+        tee.write(frames(8));
+        assertEquals(1, tee.getSinkCount());
+        tee.close();
+
+        byte[] expected = new byte[2 * WRITE];
+        Arrays.fill(expected, 0, WRITE, (byte) 7);
+        Arrays.fill(expected, WRITE, 2 * WRITE, (byte) 8);
+        assertArrayEquals(expected, out.toByteArray());
+        assertEquals(0, direct.remaining());
+    }
+}
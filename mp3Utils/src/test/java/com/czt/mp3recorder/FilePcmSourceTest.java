@@ -0,0 +1,55 @@
+package com.czt.mp3recorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests for {@link FilePcmSource}.
+ */
+public class FilePcmSourceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void wav_skipsUnknownChunksAndReadsSamples() throws Exception {
+        File file = folder.newFile("tone.wav");
+        short[] samples = {1, -2, 3, -4, 5, -6, 7};
+        ByteBuffer wav = ByteBuffer.allocate(12 + 8 + 3 + 1 + 8 + 16 + 8 + samples.length * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        wav.putInt(0x46464952).putInt(wav.capacity() - 8).putInt(0x45564157);
+        // odd sized LIST chunk with its pad byte
+        wav.putInt(0x5453494c).putInt(3).put((byte) 1).put((byte) 2).put((byte) 3).put((byte) 0);
+        wav.putInt(0x20746d66).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(16000).putInt(32000).putShort((short) 2).putShort((short) 16);
+        wav.putInt(0x61746164).putInt(samples.length * 2);
+        for (short sample : samples) {
+            wav.putShort(sample);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(wav.array());
+        out.close();
+
+        FilePcmSource source = FilePcmSource.wav(file, 4);
+        assertEquals(16000, source.getSampleRate());
+        assertEquals(1, source.getChannelCount());
+        assertEquals(samples.length, source.getTotalSamples());
+
+        source.start();
+        short[] buffer = new short[8];
+        assertEquals(4, source.read(buffer, 0, 8));
+        assertEquals(3, source.read(buffer, 4, 4));
+        assertEquals(PcmSource.END_OF_STREAM, source.read(buffer, 0, 4));
+        source.release();
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(samples[i], buffer[i]);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.czt.mp3recorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records a synthetic source with the host build of libmp3lame.
+ */
+public class MP3RecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void duration_isCountedFromRecordedSamples() throws Exception {
+        // 1.5秒立体声,非实时数据源不会丢块
+        SyntheticPcmSource source = new SyntheticPcmSource(16000, 2, 440, 0.3, 0.01, 24000, false);
+        MP3Recorder recorder = new MP3Recorder(folder.newFile(), source);
+        final List<Long> reports = Collections.synchronizedList(new ArrayList<Long>());
+        recorder.setDurationListener(new MP3Recorder.DurationListener() {
+            @Override
+            public void onDurationChanged(long durationMillis) {
+                reports.add(durationMillis);
+            }
+        }, 0);
+        recorder.startRecording();
+        recorder.waitForCompletion();
+
+        assertEquals(24000, recorder.getRecordedFrames());
+        assertEquals(1500, recorder.getDurationMillis());
+        assertTrue(reports.size() > 1);
+        assertEquals(1500L, (long) reports.get(reports.size() - 1));
+        for (int i = 1; i < reports.size(); i++) {
+            assertTrue(reports.toString(), reports.get(i) >= reports.get(i - 1));
+        }
+    }
+}
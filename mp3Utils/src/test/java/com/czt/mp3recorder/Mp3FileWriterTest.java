@@ -0,0 +1,125 @@
+package com.czt.mp3recorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Mp3FileWriterTest {
+    private static final int BLOCK = 2 * Mp3FileWriter.ALIGNMENT;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] read(File file) throws Exception {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void awaitWritten(Mp3FileWriter writer, long bytes) throws InterruptedException {
+        for (int i = 0; i < 500 && writer.getBytesWritten() < bytes; i++) {
+            Thread.sleep(2);
+        }
+        assertEquals(bytes, writer.getBytesWritten());
+    }
+
+    @Test
+    public void coalescesSmallAppendsIntoBlockWrites() throws Exception {
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        Mp3FileWriter writer = new Mp3FileWriter(out.getChannel(), 0, BLOCK, 4, 60000);
+        writer.start();
+        byte[] expected = new byte[10 * BLOCK + 123];
+        new Random(1).nextBytes(expected);
+        ByteBuffer direct = ByteBuffer.allocateDirect(1000);
+        Random sizes = new Random(2);
+        int offset = 0;
+        while (offset < expected.length) {
+            int n = Math.min(expected.length - offset, 1 + sizes.nextInt(700));
+            if (sizes.nextBoolean()) {
+                writer.append(expected, offset, n);
+            } else {
+                direct.clear();
+                direct.put(expected, offset, n);
+                writer.append(direct, n);
+            }
+            offset += n;
+        }
+        writer.finish();
+        out.close();
+
+        assertArrayEquals(expected, read(file));
+        // 10个整块加最后的123字节
+        assertEquals(11, writer.getWriteCount());
+        assertEquals(expected.length, writer.getBytesWritten());
+        assertTrue(writer.getMaxWriteNanos() > 0);
+    }
+
+    @Test
+    public void flushIfDue_writesPartialBlockThenRealigns() throws Exception {
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        Mp3FileWriter writer = new Mp3FileWriter(out.getChannel(), 0, BLOCK, 4, 20);
+        writer.start();
+        writer.append(new byte[1000], 0, 1000);
+        writer.flushIfDue();
+        assertEquals(0, writer.getBytesWritten());
+        Thread.sleep(30);
+        writer.flushIfDue();
+        awaitWritten(writer, 1000);
+
+        // 下一块缩短到文件块边界,填满即写
+        writer.append(new byte[BLOCK - 1000], 0, BLOCK - 1000);
+        awaitWritten(writer, BLOCK);
+        assertEquals(2, writer.getWriteCount());
+        writer.finish();
+        out.close();
+        assertEquals(BLOCK, file.length());
+    }
+
+    @Test
+    public void preallocation_extendsAheadAndTruncatesAtFinish() throws Exception {
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        Mp3FileWriter writer = new Mp3FileWriter(out.getChannel(), 0, BLOCK, 4, 60000);
+        final AtomicLong warnedSeconds = new AtomicLong(-1);
+        // 4000字节/秒,预分配10秒;警告阈值大到必然触发
+        writer.setPreallocation(file, 4000, 10, Long.MAX_VALUE, new Mp3FileWriter.SpaceListener() {
+            @Override
+            public void onLowSpace(long usableBytes, long secondsLeft) {
+                warnedSeconds.set(secondsLeft);
+            }
+        });
+        writer.start();
+        byte[] data = new byte[3 * BLOCK + 500];
+        new Random(3).nextBytes(data);
+        writer.append(data, 0, 3 * BLOCK);
+        awaitWritten(writer, 3 * BLOCK);
+        for (int i = 0; i < 500 && file.length() < 3 * BLOCK + 20000; i++) {
+            Thread.sleep(2);
+        }
+        assertTrue(file.length() >= 3 * BLOCK + 20000);
+        writer.append(data, 3 * BLOCK, 500);
+        writer.finish();
+        out.close();
+
+        assertArrayEquals(data, read(file));
+        assertTrue(warnedSeconds.get() >= 0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.czt.mp3recorder;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Local unit tests for {@link PcmChunkPool}.
+ */
+public class PcmChunkPoolTest {
+
+    @Test
+    public void obtainAndRecycle_reusesChunks() throws Exception {
+        PcmChunkPool pool = new PcmChunkPool(2, 16);
+        PcmChunk first = pool.obtain();
+        pool.recycle(first);
+        pool.obtain();
+        assertSame(first, pool.obtain());
+        assertEquals(0, pool.getMissCount());
+    }
+
+    @Test
+    public void exhaustedPool_allocatesAndDiscardsExtraChunk() throws Exception {
+        PcmChunkPool pool = new PcmChunkPool(1, 16);
+        PcmChunk pooled = pool.obtain();
+        PcmChunk extra = pool.obtain();
+        assertNotSame(pooled, extra);
+        assertEquals(1, pool.getMissCount());
+
+        pool.recycle(pooled);
+        pool.recycle(extra);
+        assertEquals(1, pool.getFreeCount());
+        assertSame(pooled, pool.obtain());
+    }
+
+    @Test
+    public void steadyState_allocatesNothing() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        PcmChunkPool pool = new PcmChunkPool(8, 1920);
+        ArrayDeque<PcmChunk> queue = new ArrayDeque<>(8);
+        // warm up so the JIT and the queue are settled
+        runCaptureEncodeCycles(pool, queue, 20000);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        long sum = runCaptureEncodeCycles(pool, queue, 100000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(sum != 0);
+        // one chunk is 3.8KB, allow a little slack for the measurement itself
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+        assertEquals(0, pool.getMissCount());
+    }
+
+    /**
+     * Mimics the capture thread filling chunks and the encoder draining and
+     * recycling them, keeping a few chunks in flight.
+     */
+    private static long runCaptureEncodeCycles(PcmChunkPool pool, ArrayDeque<PcmChunk> queue, int cycles) {
+        long sum = 0;
+        for (int i = 0; i < cycles; i++) {
+            PcmChunk chunk = pool.obtain();
+            short[] data = chunk.getData();
+            data[0] = (short) i;
+            chunk.setReadSize(data.length);
+            queue.addLast(chunk);
+            if (queue.size() > 4) {
+                PcmChunk done = queue.pollFirst();
+                sum += done.getData()[0] + done.getReadSize();
+                pool.recycle(done);
+            }
+        }
+        while (!queue.isEmpty()) {
+            pool.recycle(queue.pollFirst());
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,82 @@
+package com.czt.mp3recorder;
+
+import com.czt.mp3recorder.util.Mp3Encoder;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link RecorderConfig#estimateBytesPerSecond()} against the host build of libmp3lame.
+ */
+public class RecorderConfigTest {
+
+    @Test
+    public void estimateBytesPerSecond_usesTheFormatCeilingForUnboundedVbr() {
+        assertEquals(32 * 1000 / 8, RecorderConfig.DEFAULT.estimateBytesPerSecond());
+        // 16kHz是MPEG-2,上限160kbps
+        assertEquals(160 * 1000 / 8, RecorderConfig.SPEECH_VBR.estimateBytesPerSecond());
+        RecorderConfig vbr = new RecorderConfig.Builder(RecorderConfig.DEFAULT)
+                .setVbrMode(Mp3Encoder.VBR_MTRH).build();
+        assertEquals(320 * 1000 / 8, vbr.estimateBytesPerSecond());
+        RecorderConfig bounded = new RecorderConfig.Builder(RecorderConfig.SPEECH_VBR).setMaxBitRate(48).build();
+        assertEquals(48 * 1000 / 8, bounded.estimateBytesPerSecond());
+    }
+
+    @Test
+    public void estimateBytesPerSecond_leavesHeadroomAboveTheAbrMean() {
+        RecorderConfig abr = new RecorderConfig.Builder(RecorderConfig.SPEECH)
+                .setVbrMode(Mp3Encoder.VBR_ABR).setBitRate(32).build();
+        assertTrue(abr.estimateBytesPerSecond() > 32 * 1000 / 8);
+        assertTrue(abr.estimateBytesPerSecond() <= 160 * 1000 / 8);
+        RecorderConfig capped = new RecorderConfig.Builder(abr).setMaxBitRate(36).build();
+        assertEquals(36 * 1000 / 8, capped.estimateBytesPerSecond());
+    }
+
+    @Test
+    public void estimateBytesPerSecond_boundsEncodedNoise() {
+        RecorderConfig[] configs = {
+                RecorderConfig.SPEECH,
+                RecorderConfig.SPEECH_VBR,
+                new RecorderConfig.Builder(RecorderConfig.SPEECH).setVbrMode(Mp3Encoder.VBR_ABR).build(),
+                new RecorderConfig.Builder(RecorderConfig.MUSIC_HQ).setVbrMode(Mp3Encoder.VBR_ABR).build(),
+                new RecorderConfig.Builder(RecorderConfig.MUSIC_HQ).setVbrMode(Mp3Encoder.VBR_MTRH)
+                        .setVbrQuality(0).build(),
+        };
+        for (RecorderConfig config : configs) {
+            // 白噪声是最难压缩的输入,码率接近上限
+            long bytes = encodeNoise(config, 3);
+            assertTrue(config + ": " + bytes / 3 + " B/s", bytes / 3 <= config.estimateBytesPerSecond());
+        }
+    }
+
+    /**
+     * @return mp3 bytes produced while encoding, without the final flush
+     */
+    private static long encodeNoise(RecorderConfig config, int seconds) {
+        int rate = config.getSampleRate();
+        int channels = config.getChannelCount();
+        Mp3Encoder encoder = config.newEncoderBuilder(rate, channels).build();
+        try {
+            Random random = new Random(1);
+            int frames = rate / 10;
+            short[] pcm = new short[frames * channels];
+            byte[] mp3 = new byte[(int) (1.25 * frames + 7200)];
+            long bytes = 0;
+            for (int i = 0; i < seconds * 10; i++) {
+                for (int j = 0; j < pcm.length; j++) {
+                    pcm[j] = (short) (random.nextGaussian() * 8000);
+                }
+                bytes += channels == 2 ? encoder.encodeInterleaved(pcm, frames, mp3)
+                        : encoder.encodeMono(pcm, frames, mp3);
+            }
+            // flush只补齐编码延迟的帧,不计入
+            return bytes;
+        } finally {
+            encoder.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.czt.mp3recorder;
+
+import com.czt.mp3recorder.util.Mp3Encoder;
+import com.czt.mp3recorder.util.Mp3FrameScanner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares segment parallel encodes with a serial encode, using the host build of libmp3lame.
+ */
+public class SegmentParallelTranscoderTest {
+    private static final RecorderConfig[] PRESETS = {
+            RecorderConfig.SPEECH_LOW_CPU, RecorderConfig.SPEECH, RecorderConfig.SPEECH_VBR,
+            RecorderConfig.DEFAULT, RecorderConfig.MUSIC_HQ,
+    };
+    private static final int[] SEGMENT_FRAMES = {150, 400};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 语音一样的起伏:带包络的噪声、谐波和静音段交替,拼接处的帧类型和码率都在变化
+     */
+    private static short[] signal(int frames, int channels, int sampleRate) {
+        Random random = new Random(7);
+        short[] pcm = new short[frames * channels];
+        double phase = 0;
+        for (int i = 0; i < frames; i++) {
+            int syllable = i / (sampleRate / 5);
+            double envelope = syllable % 7 == 3 ? 0 : 0.5 + 0.5 * Math.sin(syllable * 1.3);
+            phase += 2 * Math.PI * (120 + 80 * Math.sin(i * 0.00004)) / sampleRate;
+            double value = 0;
+            for (int k = 1; k <= 6; k++) {
+                value += Math.sin(phase * k) / k;
+            }
+            value = (value * 0.3 + random.nextGaussian() * (syllable % 3 == 0 ? 0.3 : 0.02)) * envelope;
+            for (int c = 0; c < channels; c++) {
+                pcm[i * channels + c] = (short) Math.max(-32768, Math.min(32767, value * (c == 0 ? 12000 : 9000)));
+            }
+        }
+        return pcm;
+    }
+
+    private File raw(short[] pcm) throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        data.asShortBuffer().put(pcm);
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data.array());
+        out.close();
+        return file;
+    }
+
+    /**
+     * One encoder over the whole input with the reservoir disabled, tag written like DataEncodeThread does.
+     */
+    private static byte[] serial(RecorderConfig config, short[] pcm, int channels) throws Exception {
+        Mp3Encoder encoder = config.newEncoderBuilder(config.getSampleRate(), channels)
+                .setDisableReservoir(true).build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int chunk = 4096;
+        byte[] mp3 = new byte[(int) (7200 + chunk * 1.25)];
+        try {
+            short[] buffer = new short[chunk * channels];
+            int frames = pcm.length / channels;
+            for (int offset = 0; offset < frames; offset += chunk) {
+                int n = Math.min(chunk, frames - offset);
+                System.arraycopy(pcm, offset * channels, buffer, 0, n * channels);
+                out.write(mp3, 0, channels == 2 ? encoder.encodeInterleaved(buffer, n, mp3)
+                        : encoder.encodeMono(buffer, n, mp3));
+            }
+            out.write(mp3, 0, encoder.flush(mp3));
+            byte[] stream = out.toByteArray();
+            int tag = encoder.getLameTagFrame(mp3);
+            System.arraycopy(mp3, 0, stream, 0, tag);
+            return stream;
+        } finally {
+            encoder.close();
+        }
+    }
+
+    private static byte[] read(File file) throws Exception {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void transcode_matchesSerialEncodeIncludingTag() throws Exception {
+        for (RecorderConfig config : PRESETS) {
+            int rate = config.getSampleRate();
+            int channels = config.getChannelCount();
+            // 长度不是帧或填充周期的整数倍
+            int frames = 25 * rate + 1234;
+            short[] pcm = signal(frames, channels, rate);
+            File input = raw(pcm);
+            byte[] expected = serial(config, pcm, channels);
+            for (int segmentFrames : SEGMENT_FRAMES) {
+                SegmentParallelTranscoder transcoder = new SegmentParallelTranscoder(config, 3);
+                transcoder.setSegmentFrames(segmentFrames);
+                File output = folder.newFile();
+                BatchTranscoder.Result result = transcoder.transcode(
+                        BatchTranscoder.Job.raw(input, output, rate, channels), null);
+                String name = config.getName() + " segments of " + segmentFrames;
+                assertTrue(name + ": " + result, result.isSuccessful());
+                assertEquals(name, frames, result.getFrames());
+                assertEquals(name, expected.length, output.length());
+                assertArrayEquals(name, expected, read(output));
+
+                // 标签里的延迟和填充让播放器正好还原输入的长度
+                Mp3FrameScanner.Result scan = new Mp3FrameScanner().scan(output);
+                assertNotNull(name, scan.getInfoTag());
+                assertEquals(name, frames, scan.getSampleCount());
+            }
+        }
+    }
+
+    @Test
+    public void transcode_shortOverlapStillJoinsWholeFramesGaplessly() throws Exception {
+        RecorderConfig config = RecorderConfig.SPEECH;
+        int rate = config.getSampleRate();
+        int frames = 12 * rate + 77;
+        File input = raw(signal(frames, 1, rate));
+        SegmentParallelTranscoder transcoder = new SegmentParallelTranscoder(config, 2);
+        transcoder.setSegmentFrames(100);
+        transcoder.setOverlapFrames(2);
+        File output = folder.newFile();
+        BatchTranscoder.Result result = transcoder.transcode(BatchTranscoder.Job.raw(input, output, rate, 1), null);
+
+        assertTrue(result.toString(), result.isSuccessful());
+        Mp3FrameScanner.Result scan = new Mp3FrameScanner().scan(output);
+        assertEquals(0, scan.getTrailingBytes());
+        assertEquals(0, scan.getSkippedBytes());
+        assertEquals(frames, scan.getSampleCount());
+        assertEquals(output.length(), scan.getInfoTagByteCount());
+    }
+}
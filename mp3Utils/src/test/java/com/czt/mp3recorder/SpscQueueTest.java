@@ -0,0 +1,78 @@
+package com.czt.mp3recorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for {@link SpscQueue}.
+ */
+public class SpscQueueTest {
+
+    @Test
+    public void offerAndPoll_keepFifoOrder() throws Exception {
+        SpscQueue<Integer> queue = new SpscQueue<>(4);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(3, queue.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void fullQueue_countsOverflowAndHighWaterMark() throws Exception {
+        SpscQueue<Integer> queue = new SpscQueue<>(3);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+        assertEquals(1, queue.getOverflowCount());
+        assertEquals(3, queue.getHighWaterMark());
+
+        queue.poll();
+        assertTrue(queue.offer(5));
+        assertEquals(3, queue.size());
+        assertEquals(3, queue.getHighWaterMark());
+    }
+
+    @Test
+    public void producerAndConsumerThreads_transferEverythingInOrder() throws Exception {
+        final int count = 1000000;
+        final SpscQueue<Integer> queue = new SpscQueue<>(64);
+        final long[] overflowRetries = new long[1];
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    Integer value = i;
+                    while (!queue.offer(value)) {
+                        overflowRetries[0]++;
+                        Thread.yield();
+                    }
+                }
+            }
+        };
+        producer.start();
+        int expected = 0;
+        while (expected < count) {
+            Integer value = queue.poll();
+            if (value == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(expected, value.intValue());
+            expected++;
+        }
+        producer.join();
+        assertTrue(queue.isEmpty());
+        assertEquals(overflowRetries[0], queue.getOverflowCount());
+        assertTrue(queue.getHighWaterMark() <= 64);
+    }
+}
@@ -0,0 +1,67 @@
+package com.czt.mp3recorder.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the host build of libmp3lame; decoding needs it built with the mpglib sources.
+ */
+public class Mp3DecoderTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    @Test
+    public void constructor_failsWithoutDecoder() {
+        assumeTrue(!Mp3Decoder.isSupported());
+        try {
+            new Mp3Decoder();
+            fail("decoder created without mpglib");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void decode_roundTripsEncodedSine() {
+        assumeTrue(Mp3Decoder.isSupported());
+        short[] pcm = new short[SAMPLE_RATE];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        }
+        Mp3Encoder encoder = new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 128, 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[(int) (7200 + pcm.length * 1.25)];
+        out.write(buffer, 0, encoder.encodeMono(pcm, pcm.length, buffer));
+        out.write(buffer, 0, encoder.flush(buffer));
+        encoder.close();
+        byte[] mp3 = out.toByteArray();
+
+        Mp3Decoder decoder = new Mp3Decoder();
+        short[] frame = new short[Mp3Decoder.MAX_FRAME_PCM];
+        long samples = 0;
+        double energy = 0;
+        // 每次喂入1000字节,任意切分
+        for (int offset = 0; offset < mp3.length; offset += 1000) {
+            int n = decoder.decode(mp3, offset, Math.min(1000, mp3.length - offset), frame);
+            while (n > 0) {
+                for (int i = 0; i < n; i++) {
+                    energy += (double) frame[i] * frame[i];
+                }
+                samples += n;
+                n = decoder.decode(null, 0, 0, frame);
+            }
+            assertTrue(n == 0);
+        }
+        assertEquals(SAMPLE_RATE, decoder.getSampleRate());
+        assertEquals(1, decoder.getChannelCount());
+        decoder.close();
+        // 编码延迟和尾部填充使解码结果略长于输入
+        assertTrue(samples >= SAMPLE_RATE && samples < SAMPLE_RATE + 3 * 1152);
+        double rms = Math.sqrt(energy / samples);
+        assertEquals(8000 / Math.sqrt(2), rms, 400);
+    }
+}
@@ -0,0 +1,118 @@
+package com.czt.mp3recorder.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the host build of libmp3lame, see {@link LameLibrary}.
+ */
+public class Mp3EncoderTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    private static short[] sine(int samples) {
+        short[] pcm = new short[samples];
+        for (int i = 0; i < samples; i++) {
+            pcm[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        }
+        return pcm;
+    }
+
+    private static byte[] encodeMono(short[] pcm, int chunk) {
+        return encodeMono(new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7), pcm, chunk);
+    }
+
+    private static byte[] encodeMono(Mp3Encoder encoder, short[] pcm, int chunk) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] mp3 = new byte[(int) (7200 + chunk * 1.25)];
+        short[] buffer = new short[chunk];
+        for (int i = 0; i < pcm.length; i += chunk) {
+            int n = Math.min(chunk, pcm.length - i);
+            System.arraycopy(pcm, i, buffer, 0, n);
+            out.write(mp3, 0, encoder.encodeMono(buffer, n, mp3));
+        }
+        out.write(mp3, 0, encoder.flush(mp3));
+        encoder.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void encodeMono_writesWholeFramesCoveringTheInput() {
+        byte[] mp3 = encodeMono(sine(SAMPLE_RATE), 4096);
+        int offset = 0;
+        int frames = 0;
+        while (offset < mp3.length) {
+            Mp3FrameHeader header = Mp3FrameHeader.parse(mp3, offset);
+            assertNotNull("no frame at " + offset, header);
+            assertEquals(SAMPLE_RATE, header.getSampleRate());
+            assertEquals(1, header.getChannelCount());
+            offset += header.getFrameLength();
+            frames++;
+        }
+        assertEquals(mp3.length, offset);
+        // one second plus the Info frame and encoder delay
+        assertTrue("frames " + frames, frames >= SAMPLE_RATE / 1152 + 1);
+    }
+
+    @Test
+    public void encodeDirect_matchesArrayPath() {
+        short[] pcm = sine(SAMPLE_RATE / 2);
+        byte[] expected = encodeMono(pcm, pcm.length);
+
+        Mp3Encoder encoder = new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7);
+        ByteBuffer in = ByteBuffer.allocateDirect(pcm.length * 2).order(ByteOrder.nativeOrder());
+        in.asShortBuffer().put(pcm);
+        ByteBuffer out = ByteBuffer.allocateDirect(expected.length + 7200);
+        int size = encoder.encodeDirect(in, pcm.length, out);
+        byte[] actual = new byte[size];
+        out.get(actual);
+        byte[] flush = new byte[7200];
+        int flushed = encoder.flush(flush);
+        encoder.close();
+
+        byte[] all = Arrays.copyOf(actual, size + flushed);
+        System.arraycopy(flush, 0, all, size, flushed);
+        assertArrayEquals(expected, all);
+    }
+
+    @Test
+    public void vbr_spendsFewerBitsOnSilence() {
+        Mp3Encoder encoder = new Mp3Encoder.Builder(SAMPLE_RATE, 1)
+                .setVbrMode(Mp3Encoder.VBR_MTRH).setVbrQuality(7).setWriteLameTag(false).build();
+        // 一秒正弦波后接一秒静音
+        byte[] mp3 = encodeMono(encoder, Arrays.copyOf(sine(SAMPLE_RATE), SAMPLE_RATE * 2), 4096);
+        int offset = 0;
+        int minBitRate = Integer.MAX_VALUE;
+        int maxBitRate = 0;
+        while (offset < mp3.length) {
+            Mp3FrameHeader header = Mp3FrameHeader.parse(mp3, offset);
+            assertNotNull("no frame at " + offset, header);
+            minBitRate = Math.min(minBitRate, header.getBitRate());
+            maxBitRate = Math.max(maxBitRate, header.getBitRate());
+            offset += header.getFrameLength();
+        }
+        assertEquals(mp3.length, offset);
+        assertTrue(minBitRate + ".." + maxBitRate, minBitRate < maxBitRate);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void build_rejectsUnknownVbrQuality() {
+        new Mp3Encoder.Builder(SAMPLE_RATE, 1).setVbrMode(Mp3Encoder.VBR_MTRH).setVbrQuality(10).build();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void close_isIdempotentAndRejectsFurtherUse() {
+        Mp3Encoder encoder = new Mp3Encoder(SAMPLE_RATE, 1, SAMPLE_RATE, 32, 7);
+        encoder.close();
+        encoder.close();
+        encoder.flush(new byte[7200]);
+    }
+}
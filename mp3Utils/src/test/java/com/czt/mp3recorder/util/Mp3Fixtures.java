@@ -0,0 +1,77 @@
+package com.czt.mp3recorder.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Mono test streams encoded with the host build of libmp3lame, shared by the util tests.
+ */
+public class Mp3Fixtures {
+
+    private Mp3Fixtures() {
+    }
+
+    /**
+     * @return a 440Hz sine
+     */
+    public static short[] sine(int samples, int sampleRate) {
+        short[] pcm = new short[samples];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / sampleRate));
+        }
+        return pcm;
+    }
+
+    /**
+     * @return {@link #sine(int, int)} for the first half of every second, silence for the
+     * second half, so VBR frame lengths change along the stream
+     */
+    public static short[] sineAndSilence(int samples, int sampleRate) {
+        short[] pcm = sine(samples, sampleRate);
+        for (int i = 0; i < pcm.length; i++) {
+            if (i % sampleRate >= sampleRate / 2) {
+                pcm[i] = 0;
+            }
+        }
+        return pcm;
+    }
+
+    /**
+     * @param builder mono encoder settings
+     * @param pcm     samples to encode in one call
+     * @return the whole stream, with the filled-in LAME tag in front unless the builder
+     * turned it off
+     */
+    public static byte[] encode(Mp3Encoder.Builder builder, short[] pcm) {
+        Mp3Encoder encoder = builder.build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] mp3 = new byte[(int) (7200 + pcm.length * 1.25)];
+        try {
+            out.write(mp3, 0, encoder.encodeMono(pcm, pcm.length, mp3));
+            out.write(mp3, 0, encoder.flush(mp3));
+            byte[] data = out.toByteArray();
+            int tag = encoder.getLameTagFrame(mp3);
+            System.arraycopy(mp3, 0, data, 0, tag);
+            return data;
+        } finally {
+            encoder.close();
+        }
+    }
+
+    /**
+     * @return file, holding the parts one after another
+     */
+    public static File write(File file, byte[]... parts) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (byte[] part : parts) {
+                out.write(part);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,50 @@
+package com.czt.mp3recorder.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for {@link Mp3FrameHeader}.
+ */
+public class Mp3FrameHeaderTest {
+    @Test
+    public void parse_mpeg1Stereo128Padded() {
+        // MPEG-1 Layer III, no CRC, 128kbps, 44.1kHz, padded, joint stereo
+        Mp3FrameHeader header = Mp3FrameHeader.parse(new byte[]{(byte) 0xFF, (byte) 0xFB, (byte) 0x92, 0x64}, 0);
+        assertEquals(Mp3FrameHeader.MPEG_1, header.getVersion());
+        assertEquals(128, header.getBitRate());
+        assertEquals(44100, header.getSampleRate());
+        assertTrue(header.hasPadding());
+        assertFalse(header.hasCrc());
+        assertEquals(2, header.getChannelCount());
+        assertEquals(1152, header.getSamplesPerFrame());
+        assertEquals(418, header.getFrameLength());
+        assertEquals(36, header.getSideInfoEnd());
+    }
+
+    @Test
+    public void parse_mpeg2Mono() {
+        // MPEG-2 Layer III, no CRC, 32kbps, 16kHz, mono
+        Mp3FrameHeader header = Mp3FrameHeader.parse(0xFFF348C4);
+        assertEquals(Mp3FrameHeader.MPEG_2, header.getVersion());
+        assertEquals(32, header.getBitRate());
+        assertEquals(16000, header.getSampleRate());
+        assertEquals(1, header.getChannelCount());
+        assertEquals(576, header.getSamplesPerFrame());
+        assertEquals(144, header.getFrameLength());
+        assertEquals(13, header.getSideInfoEnd());
+    }
+
+    @Test
+    public void parse_rejectsNonLayer3AndBadFields() {
+        assertNull(Mp3FrameHeader.parse(0x00000000));
+        assertNull(Mp3FrameHeader.parse(0xFFFD9064));// layer II
+        assertNull(Mp3FrameHeader.parse(0xFFFB0064));// free format
+        assertNull(Mp3FrameHeader.parse(0xFFFB9C64));// reserved sample rate
+        assertNull(Mp3FrameHeader.parse(new byte[]{(byte) 0xFF, (byte) 0xFB}, 0));
+    }
+}
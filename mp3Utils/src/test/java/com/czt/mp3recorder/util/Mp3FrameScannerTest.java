@@ -0,0 +1,118 @@
+package com.czt.mp3recorder.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scans files written by the host build of libmp3lame.
+ */
+public class Mp3FrameScannerTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return one second of a sine, with the filled-in LAME tag in front if writeLameTag
+     */
+    private static byte[] encode(Mp3Encoder.Builder builder) {
+        return Mp3Fixtures.encode(builder.setOutSampleRate(SAMPLE_RATE), Mp3Fixtures.sine(SAMPLE_RATE, SAMPLE_RATE));
+    }
+
+    private File write(byte[]... parts) throws Exception {
+        return Mp3Fixtures.write(folder.newFile(), parts);
+    }
+
+    @Test
+    public void lameTag_givesExactSampleCount() throws Exception {
+        byte[] mp3 = encode(new Mp3Encoder.Builder(SAMPLE_RATE, 1).setVbrMode(Mp3Encoder.VBR_MTRH));
+        Mp3FrameScanner.Result result = new Mp3FrameScanner().scan(write(mp3));
+
+        assertEquals("Xing", result.getInfoTag());
+        assertEquals(result.getInfoTagFrameCount(), result.getFrameCount());
+        assertEquals(SAMPLE_RATE, result.getSampleCount());
+        assertEquals(1000, result.getDurationMillis());
+        assertTrue(result.getMinBitRate() < result.getMaxBitRate());
+        assertEquals(0, result.getResyncCount());
+        // 每个偏移处都是一帧,最后一帧结束于文件末尾
+        long end = result.getFrameOffset((int) result.getFrameCount() - 1);
+        end += Mp3FrameHeader.parse(mp3, (int) end).getFrameLength();
+        assertEquals(mp3.length, end);
+        assertEquals(mp3.length - result.getFirstFrameOffset(), result.getAudioBytes());
+    }
+
+    @Test
+    public void trustInfoTag_skipsTheWalk() throws Exception {
+        byte[] mp3 = encode(new Mp3Encoder.Builder(SAMPLE_RATE, 1));
+        Mp3FrameScanner.Result walked = new Mp3FrameScanner().scan(write(mp3));
+        Mp3FrameScanner.Result trusted = new Mp3FrameScanner().setTrustInfoTag(true).scan(write(mp3));
+
+        assertEquals("Info", walked.getInfoTag());
+        assertTrue(trusted.isFromInfoTag());
+        assertFalse(trusted.hasFrameOffsets());
+        assertEquals(walked.getFrameCount(), trusted.getFrameCount());
+        assertEquals(walked.getAudioBytes(), trusted.getAudioBytes());
+        assertEquals(SAMPLE_RATE, trusted.getSampleCount());
+    }
+
+    @Test
+    public void skipsId3v2AndResyncsOverDamage() throws Exception {
+        byte[] mp3 = encode(new Mp3Encoder.Builder(SAMPLE_RATE, 1).setWriteLameTag(false));
+        int split = 0;
+        for (int i = 0; i < 10; i++) {
+            split += Mp3FrameHeader.parse(mp3, split).getFrameLength();
+        }
+        // ID3v2.4: 10字节头 + syncsafe长度300
+        byte[] id3 = new byte[310];
+        id3[0] = 'I';
+        id3[1] = 'D';
+        id3[2] = '3';
+        id3[3] = 4;
+        id3[8] = 300 >> 7;
+        id3[9] = 300 & 0x7F;
+        byte[] junk = {(byte) 0xFF, (byte) 0xFB, 0x12, 0x34, (byte) 0xFF, 0x00, 0x55};
+        byte[] id3v1 = new byte[128];
+        id3v1[0] = 'T';
+        id3v1[1] = 'A';
+        id3v1[2] = 'G';
+        byte[] head = new byte[split];
+        byte[] tail = new byte[mp3.length - split];
+        System.arraycopy(mp3, 0, head, 0, split);
+        System.arraycopy(mp3, split, tail, 0, tail.length);
+
+        Mp3FrameScanner.Result result = new Mp3FrameScanner().scan(write(id3, head, junk, tail, id3v1));
+        Mp3FrameScanner.Result clean = new Mp3FrameScanner().scan(write(mp3));
+
+        assertNull(result.getInfoTag());
+        assertEquals(310, result.getDataOffset());
+        assertEquals(310, result.getFirstFrameOffset());
+        assertEquals(1, result.getResyncCount());
+        assertEquals(junk.length, result.getSkippedBytes());
+        assertEquals(128, result.getTrailingBytes());
+        assertEquals(clean.getFrameCount(), result.getFrameCount());
+        assertEquals(310 + split + junk.length, result.getFrameOffset(10));
+    }
+
+    @Test
+    public void truncatedFile_countsWholeFramesOnly() throws Exception {
+        byte[] mp3 = encode(new Mp3Encoder.Builder(SAMPLE_RATE, 1).setVbrMode(Mp3Encoder.VBR_MTRH));
+        Mp3FrameScanner.Result full = new Mp3FrameScanner().scan(write(mp3));
+        byte[] cut = new byte[mp3.length - 50];
+        System.arraycopy(mp3, 0, cut, 0, cut.length);
+        Mp3FrameScanner.Result result = new Mp3FrameScanner().setCollectOffsets(false).scan(write(cut));
+
+        assertEquals(full.getFrameCount() - 1, result.getFrameCount());
+        assertTrue(result.getTruncatedBytes() > 0);
+        // 尾部填充已被截掉,只减去编码延迟
+        assertEquals(result.getFrameCount() * 1152 - result.getEncoderDelay(), result.getSampleCount());
+        assertFalse(result.hasFrameOffsets());
+    }
+}
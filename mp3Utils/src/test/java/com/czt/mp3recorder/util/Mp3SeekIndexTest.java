@@ -0,0 +1,132 @@
+package com.czt.mp3recorder.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Indexes streams written by the host build of libmp3lame.
+ */
+public class Mp3SeekIndexTest {
+    private static final int SAMPLE_RATE = 16000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return 10 seconds of VBR with the filled-in Xing frame in front
+     */
+    private static byte[] encode() {
+        // 每秒一半正弦一半静音,帧长随之变化
+        short[] pcm = Mp3Fixtures.sineAndSilence(SAMPLE_RATE * 10, SAMPLE_RATE);
+        return Mp3Fixtures.encode(new Mp3Encoder.Builder(SAMPLE_RATE, 1).setOutSampleRate(SAMPLE_RATE)
+                .setVbrMode(Mp3Encoder.VBR_MTRH).setVbrQuality(7), pcm);
+    }
+
+    private File write(byte[] data, int length) throws IOException {
+        return Mp3Fixtures.write(folder.newFile(), Arrays.copyOf(data, length));
+    }
+
+    private static Mp3SeekIndex.Builder feed(byte[] mp3, int length, int granularityMillis, int piece) {
+        Mp3SeekIndex.Builder builder = new Mp3SeekIndex.Builder(granularityMillis);
+        for (int i = 0; i < length; i += piece) {
+            builder.append(mp3, i, Math.min(piece, length - i));
+        }
+        return builder;
+    }
+
+    private static void assertSameIndex(Mp3SeekIndex expected, Mp3SeekIndex actual) {
+        assertEquals(expected.getEntryCount(), actual.getEntryCount());
+        assertEquals(expected.getTotalFrames(), actual.getTotalFrames());
+        assertEquals(expected.getEndOffset(), actual.getEndOffset());
+        for (int i = 0; i < expected.getEntryCount(); i++) {
+            assertEquals(expected.getFrameIndex(i), actual.getFrameIndex(i));
+            assertEquals(expected.getOffset(i), actual.getOffset(i));
+        }
+    }
+
+    @Test
+    public void builder_matchesScanWhateverTheBufferSplits() throws Exception {
+        byte[] mp3 = encode();
+        Mp3FrameScanner.Result scan = new Mp3FrameScanner().scan(write(mp3, mp3.length));
+        Mp3SeekIndex scanned = Mp3SeekIndex.fromScan(scan, 1000);
+
+        assertEquals(scan.getFirstFrameOffset(), scanned.getOffset(0));
+        // 16kHz每帧576采样,1秒约28帧一项
+        assertEquals(28, scanned.getFrameIndex(1));
+        assertEquals((scan.getFrameCount() + 27) / 28, scanned.getEntryCount());
+        for (int piece : new int[]{1, 7, 4096, mp3.length}) {
+            assertSameIndex(scanned, feed(mp3, mp3.length, 1000, piece).build());
+        }
+    }
+
+    @Test
+    public void findEntry_returnsFrameAtOrBeforeTime() throws Exception {
+        byte[] mp3 = encode();
+        Mp3SeekIndex index = feed(mp3, mp3.length, 0, 4096).build();
+        RandomAccessFile file = new RandomAccessFile(write(mp3, mp3.length), "r");
+        try {
+            for (long time = 0; time < index.getDurationMillis(); time += 333) {
+                int entry = index.findEntry(time);
+                assertTrue(index.getTimeMillis(entry) <= time);
+                assertTrue(entry == index.getEntryCount() - 1 || index.getTimeMillis(entry + 1) > time);
+                file.seek(index.getOffsetForTime(time));
+                assertTrue(Mp3FrameHeader.isFrameHeader(file.readInt()));
+            }
+        } finally {
+            file.close();
+        }
+        assertEquals(index.getEntryCount() - 1, index.findEntry(Long.MAX_VALUE / SAMPLE_RATE));
+    }
+
+    @Test
+    public void writeAndRead_roundTrip() throws Exception {
+        byte[] mp3 = encode();
+        Mp3SeekIndex index = feed(mp3, mp3.length, 500, 4096).build();
+        File sidecar = Mp3SeekIndex.sidecarFile(folder.newFile("a.mp3"));
+        index.write(sidecar);
+
+        assertEquals("a.mp3.idx", sidecar.getName());
+        // 每项约3字节
+        assertTrue(sidecar.length() < 20 + index.getEntryCount() * 4);
+        Mp3SeekIndex read = Mp3SeekIndex.read(sidecar);
+        assertSameIndex(index, read);
+        assertEquals(SAMPLE_RATE, read.getSampleRate());
+        assertEquals(576, read.getSamplesPerFrame());
+    }
+
+    @Test
+    public void truncatedStream_endsAtLastCompleteFrame() throws Exception {
+        byte[] mp3 = encode();
+        int length = mp3.length - 30;
+        Mp3SeekIndex index = feed(mp3, length, 0, 4096).build();
+        Mp3FrameScanner.Result scan = new Mp3FrameScanner().scan(write(mp3, length));
+
+        assertSameIndex(Mp3SeekIndex.fromScan(scan, 0), index);
+    }
+
+    @Test
+    public void read_rejectsCorruptFile() throws Exception {
+        byte[] mp3 = encode();
+        File sidecar = folder.newFile();
+        feed(mp3, mp3.length, 1000, 4096).build().write(sidecar);
+        byte[] data = new byte[(int) sidecar.length()];
+        RandomAccessFile file = new RandomAccessFile(sidecar, "r");
+        file.readFully(data);
+        file.close();
+        try {
+            Mp3SeekIndex.read(write(data, data.length - 3));
+            fail("truncated index accepted");
+        } catch (IOException expected) {
+        }
+    }
+}
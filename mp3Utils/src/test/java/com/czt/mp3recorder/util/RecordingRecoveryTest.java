@@ -0,0 +1,142 @@
+package com.czt.mp3recorder.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Repairs damaged copies of files written by the host build of libmp3lame.
+ */
+public class RecordingRecoveryTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return two seconds of a sine with the filled-in LAME tag in front, VBR
+     */
+    private static byte[] encode() {
+        return encode(new Mp3Encoder.Builder(SAMPLE_RATE, 1).setOutSampleRate(SAMPLE_RATE)
+                .setVbrMode(Mp3Encoder.VBR_MTRH));
+    }
+
+    private static byte[] encode(Mp3Encoder.Builder builder) {
+        return Mp3Fixtures.encode(builder, Mp3Fixtures.sine(2 * SAMPLE_RATE, SAMPLE_RATE));
+    }
+
+    private File write(byte[] data) throws Exception {
+        return Mp3Fixtures.write(folder.newFile("recording.mp3"), data);
+    }
+
+    /**
+     * 崩溃时的样子:标签仍是全零占位帧,keep处的帧只写了一半,后面是预分配的零
+     */
+    private File damage(byte[] mp3, long keep) throws Exception {
+        int tagLength = Mp3FrameHeader.parse(mp3, 0).getFrameLength();
+        byte[] damaged = Arrays.copyOf(mp3, (int) keep + 50 + 64 * 1024);
+        Arrays.fill(damaged, Mp3FrameHeader.HEADER_SIZE, tagLength, (byte) 0);
+        Arrays.fill(damaged, (int) keep + 50, damaged.length, (byte) 0);
+        File file = folder.newFile("damaged.mp3");
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.write(damaged);
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void killedRecording_isCutToLastFrameAndTagRebuilt() throws Exception {
+        byte[] mp3 = encode();
+        Mp3FrameScanner.Result intact = new Mp3FrameScanner().scan(write(mp3));
+        int tagLength = Mp3FrameHeader.parse(mp3, 0).getFrameLength();
+        long keep = intact.getFrameOffset((int) intact.getFrameCount() - 10);
+        File file = damage(mp3, keep);
+        long damagedLength = file.length();
+        RecordingJournal journal = new RecordingJournal(RecordingJournal.journalFile(file));
+        journal.write(tagLength, 0, SAMPLE_RATE);
+        journal.write(keep, 100000, SAMPLE_RATE);
+        journal.close();
+
+        assertTrue(RecordingRecovery.needsRecovery(file));
+        RecordingRecovery.Report report = RecordingRecovery.recover(file);
+
+        assertFalse(RecordingRecovery.needsRecovery(file));
+        assertEquals(keep, file.length());
+        assertEquals(keep, report.getLength());
+        assertEquals(damagedLength - keep, report.getRemovedBytes());
+        assertEquals(intact.getFrameCount() - 10, report.getFrameCount());
+        assertTrue(report.isTagRebuilt());
+        assertFalse(report.isCheckpointLost());
+        assertEquals(100000, report.getCheckpoint().getSampleCount());
+
+        Mp3FrameScanner.Result recovered = new Mp3FrameScanner().scan(file);
+        assertEquals("Xing", recovered.getInfoTag());
+        assertEquals(report.getFrameCount(), recovered.getFrameCount());
+        assertEquals(recovered.getFrameCount(), recovered.getInfoTagFrameCount());
+        assertEquals(keep, recovered.getInfoTagByteCount());
+        assertEquals(0, recovered.getTrailingBytes());
+    }
+
+    @Test
+    public void killedCbrRecording_getsInfoTag() throws Exception {
+        // 32kbps的帧放不下LAME标签,LAME给标签帧更高的码率
+        byte[] mp3 = encode(new Mp3Encoder.Builder(SAMPLE_RATE, 1).setOutSampleRate(SAMPLE_RATE)
+                .setBitRate(32));
+        Mp3FrameScanner.Result intact = new Mp3FrameScanner().scan(write(mp3));
+        File file = damage(mp3, intact.getFrameOffset((int) intact.getFrameCount() - 10));
+
+        RecordingRecovery.Report report = RecordingRecovery.recover(file);
+
+        assertTrue(report.isTagRebuilt());
+        Mp3FrameScanner.Result recovered = new Mp3FrameScanner().scan(file);
+        assertEquals("Info", recovered.getInfoTag());
+        assertEquals(recovered.getFrameCount(), recovered.getInfoTagFrameCount());
+        assertEquals(32, recovered.getMinBitRate());
+        assertEquals(32, recovered.getMaxBitRate());
+    }
+
+    @Test
+    public void finishedRecording_isLeftAlone() throws Exception {
+        byte[] mp3 = encode();
+        File file = write(mp3);
+        RecordingRecovery.Report report = RecordingRecovery.recover(file);
+
+        assertFalse(report.isTagRebuilt());
+        assertEquals(0, report.getRemovedBytes());
+        assertNull(report.getCheckpoint());
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        byte[] data = new byte[(int) in.length()];
+        in.readFully(data);
+        in.close();
+        assertTrue(Arrays.equals(mp3, data));
+    }
+
+    @Test
+    public void journal_tornWriteKeepsPreviousCheckpoint() throws Exception {
+        File file = folder.newFile("x.journal");
+        RecordingJournal journal = new RecordingJournal(file);
+        journal.write(1000, 1152, SAMPLE_RATE);
+        journal.write(2000, 2304, SAMPLE_RATE);
+        journal.close();
+        assertEquals(2000, RecordingJournal.read(file).getOffset());
+
+        // 两个槽位交替写入,第二次写入在第一个槽位,破坏它
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(20);
+        raf.write(0x55);
+        raf.close();
+        RecordingJournal.Checkpoint checkpoint = RecordingJournal.read(file);
+        assertEquals(1000, checkpoint.getOffset());
+        assertEquals(1152, checkpoint.getSampleCount());
+        assertNull(RecordingJournal.read(new File(folder.getRoot(), "missing.journal")));
+    }
+}